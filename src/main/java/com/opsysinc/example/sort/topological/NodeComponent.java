@@ -0,0 +1,153 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node component.
+ * <p>
+ * A set of nodes with no edges (before/after relationships) to nodes outside it, e.g., one or more
+ * weakly-connected components of a node graph, that may be sorted and ranked independently of
+ * (and concurrently with) other components.
+ * <p>
+ * Nodes are held in the order the overall sort visits them, and sorted output is kept in chunks,
+ * one per visited node, so results for several components can be merged back into the exact
+ * order a single-graph sort would produce.
+ * <p>
+ * Supports NodeUtil.findNodesSorted().
+ */
+class NodeComponent {
+
+    /**
+     * Node id's, in visit order.
+     */
+    private final List<String> nodeIds;
+
+    /**
+     * Sorted node id's.
+     */
+    private final List<String> sortedNodeIds;
+
+    /**
+     * Ranks, by node id.
+     */
+    private final Map<String, Long> nodeRanks;
+
+    /**
+     * Critical (rank-setting) node id's, by node id (only if traced).
+     */
+    private final Map<String, String> criticalNodeIds;
+
+    /**
+     * Per visited node, end of the chunk of sorted node id's added when it was visited.
+     */
+    private int[] chunkEnds;
+
+    /**
+     * Next visited node to merge.
+     */
+    private int mergeIndex;
+
+    /**
+     * Edges removed by transitive reduction.
+     */
+    private long removedEdgeCount;
+
+    /**
+     * Basic ctor.
+     */
+    NodeComponent() {
+
+        this.nodeIds = new ArrayList<>();
+        this.sortedNodeIds = new ArrayList<>();
+        this.nodeRanks = new HashMap<>();
+        this.criticalNodeIds = new HashMap<>();
+    }
+
+    /**
+     * Gets node id's, in visit order (by ref).
+     *
+     * @return Node id's, in visit order (by ref).
+     */
+    List<String> getNodeIds() {
+
+        return this.nodeIds;
+    }
+
+    /**
+     * Gets sorted node id's (by ref).
+     *
+     * @return Sorted node id's (by ref).
+     */
+    List<String> getSortedNodeIds() {
+
+        return this.sortedNodeIds;
+    }
+
+    /**
+     * Gets ranks, by node id (by ref).
+     *
+     * @return Ranks, by node id (by ref).
+     */
+    Map<String, Long> getNodeRanks() {
+
+        return this.nodeRanks;
+    }
+
+    /**
+     * Gets critical (rank-setting) node id's, by node id (by ref).
+     *
+     * @return Critical node id's, by node id (by ref).
+     */
+    Map<String, String> getCriticalNodeIds() {
+
+        return this.criticalNodeIds;
+    }
+
+    /**
+     * Sets chunk ends.
+     *
+     * @param chunkEnds Per visited node, end of the chunk of sorted node id's added when it was visited.
+     */
+    void setChunkEnds(final int[] chunkEnds) {
+
+        this.chunkEnds = chunkEnds;
+    }
+
+    /**
+     * Gets removed edge count.
+     *
+     * @return Edges removed by transitive reduction.
+     */
+    long getRemovedEdgeCount() {
+
+        return this.removedEdgeCount;
+    }
+
+    /**
+     * Sets removed edge count.
+     *
+     * @param removedEdgeCount Edges removed by transitive reduction.
+     */
+    void setRemovedEdgeCount(final long removedEdgeCount) {
+
+        this.removedEdgeCount = removedEdgeCount;
+    }
+
+    /**
+     * Merges the chunk of sorted node id's for the next visited node.
+     *
+     * @param target Target for sorted node id's.
+     * @return True if any added, false otherwise.
+     */
+    boolean mergeNextChunk(final Collection<String> target) {
+
+        DataUtil.checkNullObject(target, true);
+
+        final int chunkStart = ((this.mergeIndex == 0) ? 0 : this.chunkEnds[this.mergeIndex - 1]);
+        final int chunkEnd = this.chunkEnds[this.mergeIndex];
+
+        this.mergeIndex++;
+
+        return target.addAll(this.sortedNodeIds.subList(chunkStart, chunkEnd));
+    }
+}
@@ -0,0 +1,326 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Node id set.
+ * <p>
+ * A compact set of (non-negative) node indexes, i.e., interned node id's: a sorted int array
+ * while sparse, switching to a bitmap once that'd be smaller (and back again if emptied out),
+ * so both a few members of a large index and most members of a small one stay cheap.
+ * <p>
+ * Iterates in ascending order. Not thread-safe; not to be changed while iterating.
+ * <p>
+ * Supports NodeIndex.
+ */
+class NodeIdSet {
+
+    /**
+     * Bits per bitmap word.
+     */
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Initial array capacity.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Sorted node indexes (array form; null if bitmap form).
+     */
+    private int[] indexes;
+
+    /**
+     * Node index bits (bitmap form; null if array form).
+     */
+    private long[] words;
+
+    /**
+     * Member count.
+     */
+    private int size;
+
+    /**
+     * Basic ctor.
+     */
+    NodeIdSet() {
+
+        this.indexes = new int[NodeIdSet.INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets member count.
+     *
+     * @return Member count.
+     */
+    int size() {
+
+        return this.size;
+    }
+
+    /**
+     * Checks if set is empty.
+     *
+     * @return True if empty, false otherwise.
+     */
+    boolean isEmpty() {
+
+        return (this.size == 0);
+    }
+
+    /**
+     * Checks if set is in bitmap form.
+     *
+     * @return True if bitmap, false if array.
+     */
+    boolean isBitmap() {
+
+        return (this.words != null);
+    }
+
+    /**
+     * Checks for a node index.
+     *
+     * @param nodeIndex Node index.
+     * @return True if present, false otherwise.
+     */
+    boolean contains(final int nodeIndex) {
+
+        if (this.words != null) {
+
+            final int wordIndex = (nodeIndex / NodeIdSet.WORD_BITS);
+
+            return ((nodeIndex >= 0)
+                    && (wordIndex < this.words.length)
+                    && ((this.words[wordIndex] & (1L << nodeIndex)) != 0L));
+        }
+
+        return (Arrays.binarySearch(this.indexes, 0, this.size, nodeIndex) >= 0);
+    }
+
+    /**
+     * Adds a node index.
+     *
+     * @param nodeIndex Node index.
+     * @return True if new, false otherwise.
+     * @throws IllegalArgumentException Thrown if index negative.
+     */
+    boolean add(final int nodeIndex)
+            throws IllegalArgumentException {
+
+        if (nodeIndex < 0) {
+
+            throw new IllegalArgumentException("negative node index - " + nodeIndex);
+        }
+
+        if (this.words != null) {
+
+            final int wordIndex = (nodeIndex / NodeIdSet.WORD_BITS);
+
+            if (wordIndex >= this.words.length) {
+
+                this.words = Arrays.copyOf(this.words, Math.max(wordIndex + 1, this.words.length * 2));
+            }
+
+            final long prevWord = this.words[wordIndex];
+            this.words[wordIndex] |= (1L << nodeIndex);
+
+            if (prevWord == this.words[wordIndex]) {
+
+                return false;
+            }
+
+            this.size++;
+
+            return true;
+        }
+
+        final int insertIndex = Arrays.binarySearch(this.indexes, 0, this.size, nodeIndex);
+
+        if (insertIndex >= 0) {
+
+            return false;
+        }
+
+        final int insertAt = -(insertIndex + 1);
+
+        if (this.size == this.indexes.length) {
+
+            this.indexes = Arrays.copyOf(this.indexes, this.indexes.length * 2);
+        }
+
+        System.arraycopy(this.indexes, insertAt, this.indexes, insertAt + 1, this.size - insertAt);
+        this.indexes[insertAt] = nodeIndex;
+        this.size++;
+
+        // go to a bitmap once it'd take fewer bytes than the array (8 per
+        // word of highest index vs. 4 per member)
+        final int wordCount = (this.indexes[this.size - 1] / NodeIdSet.WORD_BITS) + 1;
+
+        if (this.size > (wordCount * 2)) {
+
+            this.toBitmap(wordCount);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a node index.
+     *
+     * @param nodeIndex Node index.
+     * @return True if found, false otherwise.
+     */
+    boolean remove(final int nodeIndex) {
+
+        if (!this.contains(nodeIndex)) {
+
+            return false;
+        }
+
+        this.size--;
+
+        if (this.words != null) {
+
+            this.words[nodeIndex / NodeIdSet.WORD_BITS] &= ~(1L << nodeIndex);
+
+            // back to an array once it'd take under half the bitmap's bytes
+            // (i.e., with room to grow again before switching back)
+            if (this.size < this.words.length) {
+
+                this.toArray();
+            }
+
+        } else {
+
+            final int removeAt = Arrays.binarySearch(this.indexes, 0, this.size + 1, nodeIndex);
+            System.arraycopy(this.indexes, removeAt + 1, this.indexes, removeAt, this.size - removeAt);
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts to bitmap form.
+     *
+     * @param wordCount Words needed for highest index.
+     */
+    private void toBitmap(final int wordCount) {
+
+        final long[] nextWords = new long[wordCount];
+
+        for (int ctr = 0; ctr < this.size; ctr++) {
+
+            nextWords[this.indexes[ctr] / NodeIdSet.WORD_BITS] |= (1L << this.indexes[ctr]);
+        }
+
+        this.words = nextWords;
+        this.indexes = null;
+    }
+
+    /**
+     * Converts to array form.
+     */
+    private void toArray() {
+
+        final int[] nextIndexes = new int[Math.max(NodeIdSet.INITIAL_CAPACITY, this.size)];
+        final PrimitiveIterator.OfInt indexIter = this.iterator();
+
+        for (int ctr = 0; ctr < this.size; ctr++) {
+
+            nextIndexes[ctr] = indexIter.nextInt();
+        }
+
+        this.indexes = nextIndexes;
+        this.words = null;
+    }
+
+    /**
+     * Copies node indexes to an array, in ascending order, without allocating.
+     *
+     * @param target Target array (at least size() long).
+     * @return Node indexes copied.
+     */
+    int copyTo(final int[] target) {
+
+        if (this.words == null) {
+
+            System.arraycopy(this.indexes, 0, target, 0, this.size);
+
+        } else {
+
+            int count = 0;
+
+            for (int wordIndex = 0; count < this.size; wordIndex++) {
+
+                long word = this.words[wordIndex];
+
+                while (word != 0L) {
+
+                    target[count++] = (wordIndex * NodeIdSet.WORD_BITS) + Long.numberOfTrailingZeros(word);
+                    word &= (word - 1L);
+                }
+            }
+        }
+
+        return this.size;
+    }
+
+    /**
+     * Gets iterator, in ascending order.
+     *
+     * @return Iterator.
+     */
+    PrimitiveIterator.OfInt iterator() {
+
+        return new PrimitiveIterator.OfInt() {
+
+            /**
+             * Position (array index, or bit index to search from).
+             */
+            private int position;
+
+            /**
+             * Members returned.
+             */
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+
+                return (this.count < NodeIdSet.this.size);
+            }
+
+            @Override
+            public int nextInt() {
+
+                if (!this.hasNext()) {
+
+                    throw new NoSuchElementException();
+                }
+
+                this.count++;
+
+                if (NodeIdSet.this.words == null) {
+
+                    return NodeIdSet.this.indexes[this.position++];
+                }
+
+                int wordIndex = (this.position / NodeIdSet.WORD_BITS);
+                long word = (NodeIdSet.this.words[wordIndex] & (-1L << this.position));
+
+                while (word == 0L) {
+
+                    word = NodeIdSet.this.words[++wordIndex];
+                }
+
+                final int result = (wordIndex * NodeIdSet.WORD_BITS) + Long.numberOfTrailingZeros(word);
+                this.position = result + 1;
+
+                return result;
+            }
+        };
+    }
+}
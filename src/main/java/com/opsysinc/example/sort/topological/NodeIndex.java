@@ -0,0 +1,957 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node index.
+ * <p>
+ * The sort's internal form of a set of nodes: node id's, which nodes have which types and
+ * each node's before/after types (see NodeData), without a NodeData per node. May be built from
+ * NodeData (see NodeUtil.findNodeIndex()) or loaded directly (see NodeLoadUtil).
+ * <p>
+ * Long-lived: nodes may be added and removed as a graph changes, keeping type membership up to
+ * date as they go, so repeated sorts (see NodeUtil.findNodeIdsSorted()) needn't rebuild it. Node
+ * id's are interned to small ints (reused once removed), and each type's members are held as a
+ * compact set of those (see NodeIdSet), as are the nodes declaring each before/after type.
+ * <p>
+ * Nodes are kept in the order first added.
+ * <p>
+ * Optionally resolves types through a type hierarchy (see setTypeHierarchy()), so a type's
+ * nodes include those of its descendant types; each such type's nodes are found once, then kept
+ * up to date as nodes are added/removed (until the hierarchy changes).
+ * <p>
+ * Not thread-safe; build, then share read-only.
+ */
+public class NodeIndex {
+
+    /**
+     * No node types.
+     */
+    private static final String[] NO_NODE_TYPES = new String[0];
+
+    /**
+     * Node entries, by node id (in the order added).
+     */
+    private final Map<String, NodeEntry> nodeEntries;
+
+    /**
+     * Node entries, by node index (null if free).
+     */
+    private final List<NodeEntry> indexedNodeEntries;
+
+    /**
+     * Free node indexes (from removed nodes).
+     */
+    private final Deque<Integer> freeNodeIndexes;
+
+    /**
+     * Node indexes, by type.
+     */
+    private final Map<String, NodeIdSet> typeNodes;
+
+    /**
+     * Node indexes of nodes declaring each type as a before type, by type.
+     */
+    private final Map<String, NodeIdSet> beforeTypeNodes;
+
+    /**
+     * Node indexes of nodes declaring each type as an after type, by type.
+     */
+    private final Map<String, NodeIdSet> afterTypeNodes;
+
+    /**
+     * Type hierarchy (null if none).
+     */
+    private NodeTypeHierarchy typeHierarchy;
+
+    /**
+     * Node indexes, incl. those of descendant types, by type (types with descendants only).
+     */
+    private final Map<String, NodeIdSet> resolvedTypeNodes;
+
+    /**
+     * Type hierarchy version resolved types were found for.
+     */
+    private long resolvedVersion;
+
+    /**
+     * Change count.
+     */
+    private long version;
+
+    /**
+     * Node entry.
+     */
+    private static final class NodeEntry {
+
+        /**
+         * Node id.
+         */
+        private final String nodeId;
+
+        /**
+         * Node index (interned node id).
+         */
+        private final int nodeIndex;
+
+        /**
+         * Node types.
+         */
+        private String[] nodeTypes;
+
+        /**
+         * Before types/ranks.
+         */
+        private Map<String, Long> beforeNodeTypes;
+
+        /**
+         * After types/ranks.
+         */
+        private Map<String, Long> afterNodeTypes;
+
+        /**
+         * Basic ctor.
+         *
+         * @param nodeId    Node id.
+         * @param nodeIndex Node index (interned node id).
+         */
+        NodeEntry(final String nodeId,
+                  final int nodeIndex) {
+
+            this.nodeId = nodeId;
+            this.nodeIndex = nodeIndex;
+            this.nodeTypes = NodeIndex.NO_NODE_TYPES;
+            this.beforeNodeTypes = Collections.emptyMap();
+            this.afterNodeTypes = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Before/after type map owned (built) by this index, as opposed to one held by ref.
+     */
+    private static final class NodeTypeMap extends TreeMap<String, Long> {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Copy ctor.
+         *
+         * @param input Map to copy.
+         */
+        NodeTypeMap(final Map<String, Long> input) {
+
+            super(input);
+        }
+    }
+
+    /**
+     * Basic ctor.
+     */
+    public NodeIndex() {
+
+        this.nodeEntries = new LinkedHashMap<>();
+        this.indexedNodeEntries = new ArrayList<>();
+        this.freeNodeIndexes = new ArrayDeque<>();
+        this.typeNodes = new HashMap<>();
+        this.beforeTypeNodes = new HashMap<>();
+        this.afterTypeNodes = new HashMap<>();
+        this.resolvedTypeNodes = new HashMap<>();
+    }
+
+    /**
+     * Adds a node, if new.
+     *
+     * @param nodeId Node id.
+     * @return True if node was new, false otherwise.
+     * @throws IllegalArgumentException Thrown if node id null/empty.
+     */
+    public boolean addNode(final String nodeId)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(nodeId, true);
+
+        if (this.nodeEntries.containsKey(nodeId)) {
+
+            return false;
+        }
+
+        this.addNodeEntry(nodeId);
+
+        return true;
+    }
+
+    /**
+     * Adds a node entry, interning its id.
+     *
+     * @param nodeId Node id (new).
+     * @return Node entry.
+     */
+    private NodeEntry addNodeEntry(final String nodeId) {
+
+        // validated once, here, so sorts needn't
+        DataUtil.checkEmptyString(nodeId, true);
+
+        final Integer freeNodeIndex = this.freeNodeIndexes.poll();
+        final NodeEntry result;
+
+        if (freeNodeIndex == null) {
+
+            result = new NodeEntry(nodeId, this.indexedNodeEntries.size());
+            this.indexedNodeEntries.add(result);
+
+        } else {
+
+            result = new NodeEntry(nodeId, freeNodeIndex);
+            this.indexedNodeEntries.set(freeNodeIndex, result);
+        }
+
+        this.nodeEntries.put(nodeId, result);
+        this.version++;
+
+        return result;
+    }
+
+    /**
+     * Gets a node's entry, adding the node, if new.
+     *
+     * @param nodeId Node id.
+     * @return Node entry.
+     */
+    private NodeEntry getNodeEntry(final String nodeId) {
+
+        DataUtil.checkNullObject(nodeId, true);
+
+        final NodeEntry result = this.nodeEntries.get(nodeId);
+
+        return ((result == null) ? this.addNodeEntry(nodeId) : result);
+    }
+
+    /**
+     * Removes a node, with its types and before/after types.
+     * <p>
+     * To change a node, remove it and add it again (it then comes last in node order).
+     *
+     * @param nodeId Node id.
+     * @return True if node found, false otherwise.
+     */
+    public boolean removeNode(final String nodeId) {
+
+        DataUtil.checkNullObject(nodeId, true);
+
+        final NodeEntry nodeEntry = this.nodeEntries.remove(nodeId);
+
+        if (nodeEntry == null) {
+
+            return false;
+        }
+
+        for (final String typeItem : nodeEntry.nodeTypes) {
+
+            final NodeIdSet nodeIndexes = this.typeNodes.get(typeItem);
+            nodeIndexes.remove(nodeEntry.nodeIndex);
+
+            if (nodeIndexes.isEmpty()) {
+
+                this.typeNodes.remove(typeItem);
+            }
+
+            this.updateResolvedTypeNodes(typeItem, nodeEntry.nodeIndex, false);
+        }
+
+        NodeIndex.removeDeclaredTypeNodes(nodeEntry.beforeNodeTypes.keySet(), nodeEntry.nodeIndex, this.beforeTypeNodes);
+        NodeIndex.removeDeclaredTypeNodes(nodeEntry.afterNodeTypes.keySet(), nodeEntry.nodeIndex, this.afterTypeNodes);
+
+        this.indexedNodeEntries.set(nodeEntry.nodeIndex, null);
+        this.freeNodeIndexes.push(nodeEntry.nodeIndex);
+        this.version++;
+
+        return true;
+    }
+
+    /**
+     * Adds a node's type (adding the node, if new).
+     *
+     * @param nodeId   Node id.
+     * @param nodeType Node type.
+     * @return True if node/type pair was new, false otherwise.
+     */
+    public boolean addNodeType(final String nodeId,
+                               final String nodeType) {
+
+        DataUtil.checkNullObject(nodeType, true);
+
+        final NodeEntry nodeEntry = this.getNodeEntry(nodeId);
+
+        NodeIdSet nodeIndexes = this.typeNodes.get(nodeType);
+
+        if (nodeIndexes == null) {
+
+            nodeIndexes = new NodeIdSet();
+            this.typeNodes.put(nodeType, nodeIndexes);
+        }
+
+        if (!nodeIndexes.add(nodeEntry.nodeIndex)) {
+
+            return false;
+        }
+
+        final String[] nodeTypes = Arrays.copyOf(nodeEntry.nodeTypes, nodeEntry.nodeTypes.length + 1);
+        nodeTypes[nodeEntry.nodeTypes.length] = nodeType;
+        nodeEntry.nodeTypes = nodeTypes;
+        this.version++;
+
+        this.updateResolvedTypeNodes(nodeType, nodeEntry.nodeIndex, true);
+
+        return true;
+    }
+
+    /**
+     * Updates resolved types (found so far) a node type falls under, for a node added/removed.
+     *
+     * @param nodeType  Node type.
+     * @param nodeIndex Node index (interned node id).
+     * @param isAdd     True if node added, false if removed.
+     */
+    private void updateResolvedTypeNodes(final String nodeType,
+                                         final int nodeIndex,
+                                         final boolean isAdd) {
+
+        if (this.resolvedTypeNodes.isEmpty()) {
+
+            return;
+        }
+
+        NodeIndex.updateTypeNodes(this.resolvedTypeNodes.get(nodeType), nodeIndex, isAdd);
+
+        // a node, once removed, has none of its types; one added has them all
+        for (final String typeItem : this.typeHierarchy.getAncestorTypeSet(nodeType)) {
+
+            NodeIndex.updateTypeNodes(this.resolvedTypeNodes.get(typeItem), nodeIndex, isAdd);
+        }
+    }
+
+    /**
+     * Updates a resolved type (if found so far), for a node added/removed.
+     *
+     * @param nodeIndexes Resolved type's node indexes (null if not found so far).
+     * @param nodeIndex   Node index (interned node id).
+     * @param isAdd       True if node added, false if removed.
+     */
+    private static void updateTypeNodes(final NodeIdSet nodeIndexes,
+                                        final int nodeIndex,
+                                        final boolean isAdd) {
+
+        if (nodeIndexes != null) {
+
+            if (isAdd) {
+
+                nodeIndexes.add(nodeIndex);
+
+            } else {
+
+                nodeIndexes.remove(nodeIndex);
+            }
+        }
+    }
+
+    /**
+     * Sets type hierarchy.
+     *
+     * @param typeHierarchy Type hierarchy (null for none).
+     */
+    public void setTypeHierarchy(final NodeTypeHierarchy typeHierarchy) {
+
+        this.typeHierarchy = typeHierarchy;
+        this.resolvedTypeNodes.clear();
+        this.version++;
+    }
+
+    /**
+     * Gets type hierarchy.
+     *
+     * @return Type hierarchy (null if none).
+     */
+    public NodeTypeHierarchy getTypeHierarchy() {
+
+        return this.typeHierarchy;
+    }
+
+    /**
+     * Resolves a type's node indexes, incl. those of its descendant types (if any).
+     *
+     * @param nodeType Node type.
+     * @return Node indexes, or null if none.
+     */
+    private NodeIdSet resolveTypeNodes(final String nodeType) {
+
+        if (this.typeHierarchy == null) {
+
+            return this.typeNodes.get(nodeType);
+        }
+
+        // resolved as read, so guarded for concurrent readers (e.g., sorts)
+        synchronized (this.resolvedTypeNodes) {
+
+            // hierarchy changed, so start over
+            final long currVersion = this.typeHierarchy.getVersion();
+
+            if (currVersion != this.resolvedVersion) {
+
+                this.resolvedTypeNodes.clear();
+                this.resolvedVersion = currVersion;
+            }
+
+            NodeIdSet result = this.resolvedTypeNodes.get(nodeType);
+
+            if (result == null) {
+
+                final Set<String> descendantTypes = this.typeHierarchy.getDescendantTypeSet(nodeType);
+
+                if (descendantTypes.isEmpty()) {
+
+                    return this.typeNodes.get(nodeType);
+                }
+
+                result = new NodeIdSet();
+
+                for (final String typeItem : descendantTypes) {
+
+                    NodeIndex.addTypeNodes(this.typeNodes.get(typeItem), result);
+                }
+
+                NodeIndex.addTypeNodes(this.typeNodes.get(nodeType), result);
+
+                this.resolvedTypeNodes.put(nodeType, result);
+            }
+
+            return (result.isEmpty() ? null : result);
+        }
+    }
+
+    /**
+     * Adds node indexes to a set of same.
+     *
+     * @param input  Node indexes (may be null).
+     * @param target Target node indexes.
+     */
+    private static void addTypeNodes(final NodeIdSet input,
+                                     final NodeIdSet target) {
+
+        if (input != null) {
+
+            final PrimitiveIterator.OfInt indexIter = input.iterator();
+
+            while (indexIter.hasNext()) {
+
+                target.add(indexIter.nextInt());
+            }
+        }
+    }
+
+    /**
+     * Adds a node's before type (adding the node, if new), max'ing rank with any existing one.
+     *
+     * @param nodeId   Node id.
+     * @param nodeType Type this node should appear before.
+     * @param rank     Node-to-node rank.
+     */
+    public void addBeforeNodeType(final String nodeId,
+                                  final String nodeType,
+                                  final long rank) {
+
+        final NodeEntry nodeEntry = this.getNodeEntry(nodeId);
+        nodeEntry.beforeNodeTypes = NodeIndex.getWritableNodeTypes(nodeEntry.beforeNodeTypes);
+
+        NodeIndex.mergeNodeType(nodeType, rank, nodeEntry.beforeNodeTypes);
+        NodeIndex.addDeclaredTypeNode(nodeType, nodeEntry.nodeIndex, this.beforeTypeNodes);
+        this.version++;
+    }
+
+    /**
+     * Adds a node's after type (adding the node, if new), max'ing rank with any existing one.
+     *
+     * @param nodeId   Node id.
+     * @param nodeType Type this node should appear after.
+     * @param rank     Node-to-node rank.
+     */
+    public void addAfterNodeType(final String nodeId,
+                                 final String nodeType,
+                                 final long rank) {
+
+        final NodeEntry nodeEntry = this.getNodeEntry(nodeId);
+        nodeEntry.afterNodeTypes = NodeIndex.getWritableNodeTypes(nodeEntry.afterNodeTypes);
+
+        NodeIndex.mergeNodeType(nodeType, rank, nodeEntry.afterNodeTypes);
+        NodeIndex.addDeclaredTypeNode(nodeType, nodeEntry.nodeIndex, this.afterTypeNodes);
+        this.version++;
+    }
+
+    /**
+     * Adds a node's types and before/after types.
+     * <p>
+     * If the node is new, before/after type maps are held by ref (not copied), so are expected
+     * not to change while this index is in use; if not new, they're merged with existing ones.
+     *
+     * @param nodeId          Node id.
+     * @param nodeTypes       Node types.
+     * @param beforeNodeTypes Before types/ranks.
+     * @param afterNodeTypes  After types/ranks.
+     * @return True if node was new, false otherwise.
+     */
+    public boolean addNode(final String nodeId,
+                           final Collection<String> nodeTypes,
+                           final Map<String, Long> beforeNodeTypes,
+                           final Map<String, Long> afterNodeTypes) {
+
+        DataUtil.checkNullObject(nodeTypes, true);
+        DataUtil.checkNullObject(beforeNodeTypes, true);
+        DataUtil.checkNullObject(afterNodeTypes, true);
+
+        final boolean result = this.addNode(nodeId);
+
+        if (result) {
+
+            final NodeEntry nodeEntry = this.nodeEntries.get(nodeId);
+            nodeEntry.beforeNodeTypes = beforeNodeTypes;
+            nodeEntry.afterNodeTypes = afterNodeTypes;
+
+            for (final String typeItem : beforeNodeTypes.keySet()) {
+
+                NodeIndex.addDeclaredTypeNode(typeItem, nodeEntry.nodeIndex, this.beforeTypeNodes);
+            }
+
+            for (final String typeItem : afterNodeTypes.keySet()) {
+
+                NodeIndex.addDeclaredTypeNode(typeItem, nodeEntry.nodeIndex, this.afterTypeNodes);
+            }
+
+        } else {
+
+            for (final Map.Entry<String, Long> typeItem : beforeNodeTypes.entrySet()) {
+
+                this.addBeforeNodeType(nodeId, typeItem.getKey(), typeItem.getValue());
+            }
+
+            for (final Map.Entry<String, Long> typeItem : afterNodeTypes.entrySet()) {
+
+                this.addAfterNodeType(nodeId, typeItem.getKey(), typeItem.getValue());
+            }
+        }
+
+        for (final String typeItem : nodeTypes) {
+
+            this.addNodeType(nodeId, typeItem);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a before/after type map, ready to change.
+     *
+     * @param input Before/after type map.
+     * @return Type map, ready to change (input, if already owned).
+     */
+    private static Map<String, Long> getWritableNodeTypes(final Map<String, Long> input) {
+
+        // copy placeholders (see NodeEntry) and maps held by ref
+        return ((input instanceof NodeTypeMap) ? input : new NodeTypeMap(input));
+    }
+
+    /**
+     * Adds a node to those declaring a before/after type.
+     *
+     * @param nodeType  Before/after type.
+     * @param nodeIndex Node index (interned node id).
+     * @param target    Target node indexes, by before/after type.
+     */
+    private static void addDeclaredTypeNode(final String nodeType,
+                                            final int nodeIndex,
+                                            final Map<String, NodeIdSet> target) {
+
+        NodeIdSet nodeIndexes = target.get(nodeType);
+
+        if (nodeIndexes == null) {
+
+            nodeIndexes = new NodeIdSet();
+            target.put(nodeType, nodeIndexes);
+        }
+
+        nodeIndexes.add(nodeIndex);
+    }
+
+    /**
+     * Removes a node from those declaring its before/after types.
+     *
+     * @param nodeTypes Before/after types.
+     * @param nodeIndex Node index (interned node id).
+     * @param target    Target node indexes, by before/after type.
+     */
+    private static void removeDeclaredTypeNodes(final Collection<String> nodeTypes,
+                                                final int nodeIndex,
+                                                final Map<String, NodeIdSet> target) {
+
+        for (final String typeItem : nodeTypes) {
+
+            final NodeIdSet nodeIndexes = target.get(typeItem);
+
+            if (nodeIndexes != null) {
+
+                nodeIndexes.remove(nodeIndex);
+
+                if (nodeIndexes.isEmpty()) {
+
+                    target.remove(typeItem);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge a type/rank pair with a map of same, max'ing the value with that in the map or adding it.
+     *
+     * @param nodeType Node type.
+     * @param rank     Node-to-node rank.
+     * @param target   Target map.
+     */
+    private static void mergeNodeType(final String nodeType,
+                                      final long rank,
+                                      final Map<String, Long> target) {
+
+        DataUtil.checkNullObject(nodeType, true);
+
+        final Long prevRank = target.get(nodeType);
+
+        target.put(nodeType, ((prevRank == null) ? rank : Math.max(rank, prevRank)));
+    }
+
+    /**
+     * Gets node id's, in the order added (read-only).
+     *
+     * @return Node id's.
+     */
+    public Set<String> getNodeIds() {
+
+        return Collections.unmodifiableSet(this.nodeEntries.keySet());
+    }
+
+    /**
+     * Gets node count.
+     *
+     * @return Node count.
+     */
+    public int getNodeCount() {
+
+        return this.nodeEntries.size();
+    }
+
+    /**
+     * Gets type count.
+     *
+     * @return Number of types with nodes.
+     */
+    public int getTypeCount() {
+
+        return this.typeNodes.size();
+    }
+
+    /**
+     * Gets types with nodes (read-only).
+     *
+     * @return Node types (as added to nodes, not their ancestor types).
+     */
+    public Set<String> getTypes() {
+
+        return Collections.unmodifiableSet(this.typeNodes.keySet());
+    }
+
+    /**
+     * Gets a node's types (read-only).
+     *
+     * @param nodeId Node id.
+     * @return Node types, in the order added, or null if node not found.
+     */
+    public List<String> getNodeTypes(final String nodeId) {
+
+        final NodeEntry nodeEntry = this.nodeEntries.get(nodeId);
+
+        return ((nodeEntry == null) ? null
+                : Collections.unmodifiableList(Arrays.asList(nodeEntry.nodeTypes)));
+    }
+
+    /**
+     * Gets a node's before types (read-only).
+     *
+     * @param nodeId Node id.
+     * @return Before types/ranks, or null if node not found.
+     */
+    public Map<String, Long> getBeforeNodeTypes(final String nodeId) {
+
+        final Map<String, Long> result = this.getBeforeNodeTypeMap(nodeId);
+
+        return ((result == null) ? null : Collections.unmodifiableMap(result));
+    }
+
+    /**
+     * Gets a node's after types (read-only).
+     *
+     * @param nodeId Node id.
+     * @return After types/ranks, or null if node not found.
+     */
+    public Map<String, Long> getAfterNodeTypes(final String nodeId) {
+
+        final Map<String, Long> result = this.getAfterNodeTypeMap(nodeId);
+
+        return ((result == null) ? null : Collections.unmodifiableMap(result));
+    }
+
+    /**
+     * Gets node id's of a given type (read-only, live view), incl. those of its descendant
+     * types, if given a type hierarchy.
+     *
+     * @param nodeType Node type.
+     * @return Node id's, or null if type not found.
+     */
+    public Collection<String> getTypeNodes(final String nodeType) {
+
+        return this.getTypeNodeSet(nodeType);
+    }
+
+    /**
+     * Gets a node's before types (by ref; not to be changed).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeId Node id.
+     * @return Before types/ranks, or null if node not found.
+     */
+    Map<String, Long> getBeforeNodeTypeMap(final String nodeId) {
+
+        final NodeEntry nodeEntry = this.nodeEntries.get(nodeId);
+
+        return ((nodeEntry == null) ? null : nodeEntry.beforeNodeTypes);
+    }
+
+    /**
+     * Gets a node's after types (by ref; not to be changed).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeId Node id.
+     * @return After types/ranks, or null if node not found.
+     */
+    Map<String, Long> getAfterNodeTypeMap(final String nodeId) {
+
+        final NodeEntry nodeEntry = this.nodeEntries.get(nodeId);
+
+        return ((nodeEntry == null) ? null : nodeEntry.afterNodeTypes);
+    }
+
+    /**
+     * Gets node id's of a given type (read-only, live view over the type's node id set).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeType Node type.
+     * @return Node id's, in node index order, or null if type not found.
+     */
+    Collection<String> getTypeNodeSet(final String nodeType) {
+
+        final NodeIdSet nodeIndexes = this.resolveTypeNodes(nodeType);
+
+        if (nodeIndexes == null) {
+
+            return null;
+        }
+
+        return new AbstractCollection<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+
+                final PrimitiveIterator.OfInt indexIter = nodeIndexes.iterator();
+
+                return new Iterator<String>() {
+
+                    @Override
+                    public boolean hasNext() {
+
+                        return indexIter.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+
+                        return NodeIndex.this.indexedNodeEntries.get(indexIter.nextInt()).nodeId;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+
+                return nodeIndexes.size();
+            }
+
+            @Override
+            public boolean contains(final Object input) {
+
+                final NodeEntry nodeEntry = NodeIndex.this.nodeEntries.get(input);
+
+                return ((nodeEntry != null) && nodeIndexes.contains(nodeEntry.nodeIndex));
+            }
+        };
+    }
+
+    /**
+     * Gets node index limit.
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @return One past the highest node index (interned node id) in use.
+     */
+    int getNodeIndexLimit() {
+
+        return this.indexedNodeEntries.size();
+    }
+
+    /**
+     * Gets a node index by node id.
+     * <p>
+     * Supports NodeVerifyUtil.
+     *
+     * @param nodeId Node id.
+     * @return Node index (interned node id), or -1 if node not found.
+     */
+    int getNodeIndex(final String nodeId) {
+
+        final NodeEntry nodeEntry = this.nodeEntries.get(nodeId);
+
+        return ((nodeEntry == null) ? -1 : nodeEntry.nodeIndex);
+    }
+
+    /**
+     * Gets a node id by node index.
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeIndex Node index (interned node id).
+     * @return Node id, or null if index free.
+     */
+    String getNodeId(final int nodeIndex) {
+
+        final NodeEntry nodeEntry = this.indexedNodeEntries.get(nodeIndex);
+
+        return ((nodeEntry == null) ? null : nodeEntry.nodeId);
+    }
+
+    /**
+     * Gets a node's before types by node index (by ref; not to be changed).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeIndex Node index (interned node id; in use).
+     * @return Before types/ranks.
+     */
+    Map<String, Long> getBeforeNodeTypeMap(final int nodeIndex) {
+
+        return this.indexedNodeEntries.get(nodeIndex).beforeNodeTypes;
+    }
+
+    /**
+     * Gets a node's after types by node index (by ref; not to be changed).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeIndex Node index (interned node id; in use).
+     * @return After types/ranks.
+     */
+    Map<String, Long> getAfterNodeTypeMap(final int nodeIndex) {
+
+        return this.indexedNodeEntries.get(nodeIndex).afterNodeTypes;
+    }
+
+    /**
+     * Gets a node's types by node index (read-only).
+     * <p>
+     * Supports NodeRankIterator.
+     *
+     * @param nodeIndex Node index (interned node id; in use).
+     * @return Node types, in the order added.
+     */
+    List<String> getNodeTypeList(final int nodeIndex) {
+
+        return Collections.unmodifiableList(Arrays.asList(this.indexedNodeEntries.get(nodeIndex).nodeTypes));
+    }
+
+    /**
+     * Gets node indexes (interned node id's) of nodes declaring a given before type (by ref; not
+     * to be changed).
+     * <p>
+     * Supports NodeRankIterator.
+     *
+     * @param nodeType Before type.
+     * @return Node indexes, or null if none declare it.
+     */
+    NodeIdSet getBeforeTypeNodeIdSet(final String nodeType) {
+
+        return this.beforeTypeNodes.get(nodeType);
+    }
+
+    /**
+     * Gets node indexes (interned node id's) of nodes declaring a given after type (by ref; not
+     * to be changed).
+     * <p>
+     * Supports NodeRankIterator.
+     *
+     * @param nodeType After type.
+     * @return Node indexes, or null if none declare it.
+     */
+    NodeIdSet getAfterTypeNodeIdSet(final String nodeType) {
+
+        return this.afterTypeNodes.get(nodeType);
+    }
+
+    /**
+     * Gets node indexes (interned node id's) of a given type (by ref; not to be changed).
+     * <p>
+     * Supports NodeUtil.
+     *
+     * @param nodeType Node type.
+     * @return Node indexes, or null if type not found.
+     */
+    NodeIdSet getTypeNodeIdSet(final String nodeType) {
+
+        return this.resolveTypeNodes(nodeType);
+    }
+
+    /**
+     * Clears index.
+     */
+    public void clear() {
+
+        this.nodeEntries.clear();
+        this.indexedNodeEntries.clear();
+        this.freeNodeIndexes.clear();
+        this.typeNodes.clear();
+        this.beforeTypeNodes.clear();
+        this.afterTypeNodes.clear();
+        this.resolvedTypeNodes.clear();
+        this.version++;
+    }
+
+    /**
+     * Gets change count, so users may tell when what they found from the index is stale (e.g.,
+     * to reuse a sort). Counts changes made through this index, not to before/after type maps
+     * held by ref.
+     *
+     * @return Change count.
+     */
+    public long getVersion() {
+
+        return this.version;
+    }
+}
@@ -0,0 +1,266 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node level scheduler.
+ * <p>
+ * Ranks nodes into levels of at most a given width, e.g., to map straight onto a fixed-size
+ * worker pool: list scheduling, filling each level in turn from nodes that are ready (all nodes
+ * they follow placed, at least their node-to-node ranks back), those heading the longest
+ * remaining chains (highest "bottom level") first, then in sort order.
+ * <p>
+ * Every node still ranks at least as high as each node it follows plus their node-to-node rank
+ * (so a 0 rank may share a level, as with NodeUtil.findNodeIdsSorted()), but may rank higher
+ * where a level is full. Empty levels are skipped, as when sorting.
+ * <p>
+ * Supports NodeUtil.findNodeIdsScheduled().
+ */
+class NodeLevelScheduler {
+
+    /**
+     * Starting rank.
+     */
+    private final long baseRank;
+
+    /**
+     * Maximum nodes per level.
+     */
+    private final int maxWidth;
+
+    /**
+     * Node id's, in sort order (by position).
+     */
+    private final List<String> sortedNodeIds;
+
+    /**
+     * Positions of nodes each node precedes, by position.
+     */
+    private final int[][] nextPositions;
+
+    /**
+     * Node-to-node ranks of nodes each node precedes, by position.
+     */
+    private final long[][] nextRanks;
+
+    /**
+     * Count of unplaced nodes each node follows, by position.
+     */
+    private final int[] inDegrees;
+
+    /**
+     * Lowest rank each node may take, by position.
+     */
+    private final long[] readyRanks;
+
+    /**
+     * Longest chain of node-to-node ranks from each node on, by position.
+     */
+    private final long[] bottomLevels;
+
+    /**
+     * Basic ctor.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks.
+     * @param input    Index of nodes to examine (read at construction only).
+     * @param maxWidth Maximum nodes per level.
+     * @throws IllegalArgumentException Thrown if cycle detected or width not positive.
+     */
+    NodeLevelScheduler(final long baseRank,
+                       final NodeIndex input,
+                       final int maxWidth)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+
+        if (maxWidth < 1) {
+
+            throw new IllegalArgumentException("non-positive level width - " + maxWidth);
+        }
+
+        this.baseRank = baseRank;
+        this.maxWidth = maxWidth;
+
+        final Map<String, Map<String, Long>> beforeNodes = new HashMap<>();
+        final Map<String, Map<String, Long>> afterNodes = new HashMap<>();
+        NodeUtil.findNodeOrders(input, true, beforeNodes, afterNodes, false);
+
+        // sort order (checks for cycles), as positions
+        this.sortedNodeIds = new ArrayList<>(input.getNodeCount());
+        NodeUtil.findNodeIdOrder(input.getNodeIds(), afterNodes, this.sortedNodeIds, false);
+
+        final int nodeCount = this.sortedNodeIds.size();
+        final Map<String, Integer> nodePositions = new HashMap<>();
+
+        for (int ctr = 0; ctr < nodeCount; ctr++) {
+
+            nodePositions.put(this.sortedNodeIds.get(ctr), ctr);
+        }
+
+        this.nextPositions = new int[nodeCount][];
+        this.nextRanks = new long[nodeCount][];
+        this.inDegrees = new int[nodeCount];
+        this.readyRanks = new long[nodeCount];
+        this.bottomLevels = new long[nodeCount];
+
+        Arrays.fill(this.readyRanks, baseRank);
+
+        for (int ctr = 0; ctr < nodeCount; ctr++) {
+
+            final String nodeId = this.sortedNodeIds.get(ctr);
+            final Map<String, Long> nodeRanks = beforeNodes.getOrDefault(nodeId, Collections.emptyMap());
+
+            this.inDegrees[ctr] = afterNodes.get(nodeId).size();
+            this.nextPositions[ctr] = new int[nodeRanks.size()];
+            this.nextRanks[ctr] = new long[nodeRanks.size()];
+
+            int edgeCtr = 0;
+
+            for (final Map.Entry<String, Long> rankItem : nodeRanks.entrySet()) {
+
+                this.nextPositions[ctr][edgeCtr] = nodePositions.get(rankItem.getKey());
+                this.nextRanks[ctr][edgeCtr] = rankItem.getValue();
+                edgeCtr++;
+            }
+        }
+
+        // nodes preceded come later in sort order, so work back from the end
+        for (int ctr = nodeCount - 1; ctr >= 0; ctr--) {
+
+            for (int edgeCtr = 0; edgeCtr < this.nextPositions[ctr].length; edgeCtr++) {
+
+                this.bottomLevels[ctr] = Math.max(this.bottomLevels[ctr],
+                        Math.max(0L, this.nextRanks[ctr][edgeCtr]) + this.bottomLevels[this.nextPositions[ctr][edgeCtr]]);
+            }
+        }
+    }
+
+    /**
+     * Find (build a map of) node id's by level.
+     * <p>
+     * Call once; placing nodes uses up the scheduler's state.
+     *
+     * @param targetRanks Target for node id's/ranks (levels).
+     * @return True if any nodes found, false otherwise.
+     */
+    boolean findNodeIdsScheduled(final Map<Long, Collection<String>> targetRanks) {
+
+        DataUtil.checkNullObject(targetRanks, true);
+
+        // ready nodes, longest remaining chain first, then in sort order
+        final PriorityQueue<Integer> readyPositions = new PriorityQueue<>((firstPosition, secondPosition) -> {
+
+            final int result = Long.compare(this.bottomLevels[secondPosition], this.bottomLevels[firstPosition]);
+
+            return ((result == 0) ? Integer.compare(firstPosition, secondPosition) : result);
+        });
+
+        // nodes with all nodes they follow placed, waiting for their rank, by rank
+        final NavigableMap<Long, List<Integer>> pendingPositions = new TreeMap<>();
+
+        for (int ctr = 0; ctr < this.inDegrees.length; ctr++) {
+
+            if (this.inDegrees[ctr] == 0) {
+
+                readyPositions.add(ctr);
+            }
+        }
+
+        long currRank = this.baseRank;
+        int remainingCount = this.inDegrees.length;
+
+        while (remainingCount > 0) {
+
+            // nothing ready, so skip ahead to the next rank anything's waiting for
+            if (readyPositions.isEmpty()) {
+
+                currRank = pendingPositions.firstKey();
+                NodeLevelScheduler.readyNodes(currRank, pendingPositions, readyPositions);
+            }
+
+            Collection<String> rankNodeIds = targetRanks.get(currRank);
+
+            if (rankNodeIds == null) {
+
+                rankNodeIds = new ArrayList<>();
+                targetRanks.put(currRank, rankNodeIds);
+            }
+
+            for (int ctr = 0; (ctr < this.maxWidth) && !readyPositions.isEmpty(); ctr++) {
+
+                final int currPosition = readyPositions.poll();
+
+                rankNodeIds.add(this.sortedNodeIds.get(currPosition));
+                remainingCount--;
+
+                this.placeNode(currPosition, currRank, pendingPositions, readyPositions);
+            }
+
+            currRank++;
+            NodeLevelScheduler.readyNodes(currRank, pendingPositions, readyPositions);
+        }
+
+        return !this.sortedNodeIds.isEmpty();
+    }
+
+    /**
+     * Notes a placed node to nodes it precedes, readying those with nothing left to follow.
+     *
+     * @param currPosition     Position of node placed.
+     * @param currRank         Rank (level) being filled.
+     * @param pendingPositions Nodes waiting for their rank, by rank.
+     * @param readyPositions   Ready nodes.
+     */
+    private void placeNode(final int currPosition,
+                           final long currRank,
+                           final NavigableMap<Long, List<Integer>> pendingPositions,
+                           final PriorityQueue<Integer> readyPositions) {
+
+        for (int edgeCtr = 0; edgeCtr < this.nextPositions[currPosition].length; edgeCtr++) {
+
+            final int nextPosition = this.nextPositions[currPosition][edgeCtr];
+
+            this.readyRanks[nextPosition] = Math.max(this.readyRanks[nextPosition],
+                    currRank + this.nextRanks[currPosition][edgeCtr]);
+
+            if (--this.inDegrees[nextPosition] == 0) {
+
+                // 0 (or negative) node-to-node ranks may join the level being filled
+                if (this.readyRanks[nextPosition] <= currRank) {
+
+                    readyPositions.add(nextPosition);
+
+                } else {
+
+                    List<Integer> rankPositions = pendingPositions.get(this.readyRanks[nextPosition]);
+
+                    if (rankPositions == null) {
+
+                        rankPositions = new ArrayList<>();
+                        pendingPositions.put(this.readyRanks[nextPosition], rankPositions);
+                    }
+
+                    rankPositions.add(nextPosition);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves nodes waiting for a rank (or lower) to ready.
+     *
+     * @param currRank         Rank (level) about to be filled.
+     * @param pendingPositions Nodes waiting for their rank, by rank.
+     * @param readyPositions   Ready nodes.
+     */
+    private static void readyNodes(final long currRank,
+                                   final NavigableMap<Long, List<Integer>> pendingPositions,
+                                   final PriorityQueue<Integer> readyPositions) {
+
+        while (!pendingPositions.isEmpty()
+                && (pendingPositions.firstKey() <= currRank)) {
+
+            readyPositions.addAll(pendingPositions.pollFirstEntry().getValue());
+        }
+    }
+}
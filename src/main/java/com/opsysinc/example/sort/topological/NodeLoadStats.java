@@ -0,0 +1,160 @@
+package com.opsysinc.example.sort.topological;
+
+/**
+ * Node load statistics.
+ * <p>
+ * Optionally passed to NodeLoadUtil methods to report how much was loaded and how fast.
+ * <p>
+ * Counts accumulate across loads until reset.
+ */
+public class NodeLoadStats {
+
+    /**
+     * Nanos per second.
+     */
+    private static final double NANOS_PER_SECOND = 1.0e9;
+
+    /**
+     * Lines read (including blank/comment lines).
+     */
+    private long lineCount;
+
+    /**
+     * Records loaded.
+     */
+    private long recordCount;
+
+    /**
+     * Bytes read.
+     */
+    private long byteCount;
+
+    /**
+     * Time spent loading, in nanos.
+     */
+    private long elapsedNanos;
+
+    /**
+     * Adds to line count.
+     *
+     * @param input Lines read.
+     */
+    void addLineCount(final long input) {
+
+        this.lineCount += input;
+    }
+
+    /**
+     * Adds to record count.
+     *
+     * @param input Records loaded.
+     */
+    void addRecordCount(final long input) {
+
+        this.recordCount += input;
+    }
+
+    /**
+     * Adds to byte count.
+     *
+     * @param input Bytes read.
+     */
+    void addByteCount(final long input) {
+
+        this.byteCount += input;
+    }
+
+    /**
+     * Adds to elapsed time.
+     *
+     * @param input Time spent loading, in nanos.
+     */
+    void addElapsedNanos(final long input) {
+
+        this.elapsedNanos += input;
+    }
+
+    /**
+     * Gets line count.
+     *
+     * @return Lines read (including blank/comment lines).
+     */
+    public long getLineCount() {
+
+        return this.lineCount;
+    }
+
+    /**
+     * Gets record count.
+     *
+     * @return Records loaded.
+     */
+    public long getRecordCount() {
+
+        return this.recordCount;
+    }
+
+    /**
+     * Gets byte count.
+     *
+     * @return Bytes read.
+     */
+    public long getByteCount() {
+
+        return this.byteCount;
+    }
+
+    /**
+     * Gets elapsed time.
+     *
+     * @return Time spent loading, in nanos.
+     */
+    public long getElapsedNanos() {
+
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Gets record throughput.
+     *
+     * @return Records loaded per second (0 if nothing timed).
+     */
+    public double getRecordsPerSecond() {
+
+        return ((this.elapsedNanos == 0L) ? 0.0
+                : ((this.recordCount * NodeLoadStats.NANOS_PER_SECOND) / this.elapsedNanos));
+    }
+
+    /**
+     * Gets byte throughput.
+     *
+     * @return Bytes read per second (0 if nothing timed).
+     */
+    public double getBytesPerSecond() {
+
+        return ((this.elapsedNanos == 0L) ? 0.0
+                : ((this.byteCount * NodeLoadStats.NANOS_PER_SECOND) / this.elapsedNanos));
+    }
+
+    /**
+     * Resets all counts.
+     */
+    public void reset() {
+
+        this.lineCount = 0L;
+        this.recordCount = 0L;
+        this.byteCount = 0L;
+        this.elapsedNanos = 0L;
+    }
+
+    @Override
+    public String toString() {
+
+        return "lines=" + this.lineCount
+                + ", records=" + this.recordCount
+                + ", bytes=" + this.byteCount
+                + ", ms=" + (this.elapsedNanos / 1000000L)
+                + ", records/s=" + Math.round(this.getRecordsPerSecond())
+                + ", bytes/s=" + Math.round(this.getBytesPerSecond());
+    }
+}
@@ -0,0 +1,355 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Node load utilities.
+ * <p>
+ * Loads flat node records straight into a NodeIndex (the sort's internal form), with no NodeData
+ * per node, for sorting via NodeUtil.findNodeIdsSorted().
+ * <p>
+ * Records come one per line (UTF-8), in either of two formats. Each record names a node, which is
+ * added if new; repeated records merge (before/after ranks are max'ed).
+ * <p>
+ * CSV, with blank lines and lines starting with '#' skipped, and fields optionally double-quoted
+ * (with "" for a quote):
+ * <pre>
+ *     node,&lt;node id&gt;
+ *     type,&lt;node id&gt;,&lt;type&gt;
+ *     before,&lt;node id&gt;,&lt;type&gt;[,&lt;rank&gt;]
+ *     after,&lt;node id&gt;,&lt;type&gt;[,&lt;rank&gt;]
+ * </pre>
+ * Line-delimited JSON, one flat object per line with the same fields (other keys ignored), e.g.:
+ * <pre>
+ *     {"kind": "type", "node": "Node1", "type": "foo"}
+ *     {"kind": "after", "node": "Node2", "type": "foo", "rank": 1}
+ * </pre>
+ * A null value counts as omitted; other values are strings, but for rank (a number).
+ * <p>
+ * Rank defaults to 1 if omitted. Type-membership and edge (before/after) records may be split
+ * across files and loaded into the same index, in any order.
+ */
+public final class NodeLoadUtil {
+
+    /**
+     * Default node-to-node rank.
+     */
+    private static final long DEFAULT_RANK = 1L;
+
+    /**
+     * JSON keys, in field order.
+     */
+    private static final String[] JSON_KEYS = {"kind", "node", "type", "rank"};
+
+    /**
+     * Whether each JSON key may take a bare (unquoted) value, i.e., is numeric.
+     */
+    private static final boolean[] JSON_NUMERIC_KEYS = {false, false, false, true};
+
+    /**
+     * Kind field index.
+     */
+    private static final int KIND_FIELD = 0;
+
+    /**
+     * Node id field index.
+     */
+    private static final int NODE_FIELD = 1;
+
+    /**
+     * Type field index.
+     */
+    private static final int TYPE_FIELD = 2;
+
+    /**
+     * Rank field index.
+     */
+    private static final int RANK_FIELD = 3;
+
+    /**
+     * Private ctor for util classes.
+     */
+    private NodeLoadUtil() {
+
+    }
+
+    /**
+     * Load CSV records from a file.
+     *
+     * @param input  File to read.
+     * @param target Target index.
+     * @param stats  Target for load statistics (may be null).
+     * @return True if any records loaded, false otherwise.
+     * @throws IOException              Thrown on read/decode failure.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    public static boolean loadCsv(final Path input,
+                                  final NodeIndex target,
+                                  final NodeLoadStats stats)
+            throws IOException, IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+
+        try (final FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ)) {
+
+            return NodeLoadUtil.loadCsv(inputChannel, target, stats);
+        }
+    }
+
+    /**
+     * Load CSV records from a channel.
+     *
+     * @param input  Channel to read (not closed).
+     * @param target Target index.
+     * @param stats  Target for load statistics (may be null).
+     * @return True if any records loaded, false otherwise.
+     * @throws IOException              Thrown on read/decode failure.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    public static boolean loadCsv(final ReadableByteChannel input,
+                                  final NodeIndex target,
+                                  final NodeLoadStats stats)
+            throws IOException, IllegalArgumentException {
+
+        return NodeLoadUtil.loadRecords(input, false, target, stats);
+    }
+
+    /**
+     * Load line-delimited JSON records from a file.
+     *
+     * @param input  File to read.
+     * @param target Target index.
+     * @param stats  Target for load statistics (may be null).
+     * @return True if any records loaded, false otherwise.
+     * @throws IOException              Thrown on read/decode failure.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    public static boolean loadJson(final Path input,
+                                   final NodeIndex target,
+                                   final NodeLoadStats stats)
+            throws IOException, IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+
+        try (final FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ)) {
+
+            return NodeLoadUtil.loadJson(inputChannel, target, stats);
+        }
+    }
+
+    /**
+     * Load line-delimited JSON records from a channel.
+     *
+     * @param input  Channel to read (not closed).
+     * @param target Target index.
+     * @param stats  Target for load statistics (may be null).
+     * @return True if any records loaded, false otherwise.
+     * @throws IOException              Thrown on read/decode failure.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    public static boolean loadJson(final ReadableByteChannel input,
+                                   final NodeIndex target,
+                                   final NodeLoadStats stats)
+            throws IOException, IllegalArgumentException {
+
+        return NodeLoadUtil.loadRecords(input, true, target, stats);
+    }
+
+    /**
+     * Load records from a channel.
+     *
+     * @param input  Channel to read (not closed).
+     * @param isJson True for line-delimited JSON, false for CSV.
+     * @param target Target index.
+     * @param stats  Target for load statistics (may be null).
+     * @return True if any records loaded, false otherwise.
+     * @throws IOException              Thrown on read/decode failure.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    private static boolean loadRecords(final ReadableByteChannel input,
+                                       final boolean isJson,
+                                       final NodeIndex target,
+                                       final NodeLoadStats stats)
+            throws IOException, IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(target, true);
+
+        final long startNanos = System.nanoTime();
+
+        final NodeRecordReader reader = new NodeRecordReader(input);
+        final int[] fieldStarts = new int[NodeLoadUtil.JSON_KEYS.length];
+        final int[] fieldEnds = new int[NodeLoadUtil.JSON_KEYS.length];
+
+        long recordCount = 0L;
+
+        try {
+
+            while (reader.readLine()) {
+
+                if (reader.isBlankOrComment()) {
+
+                    continue;
+                }
+
+                final int fieldCount;
+
+                if (isJson) {
+
+                    reader.parseJsonFields(NodeLoadUtil.JSON_KEYS, NodeLoadUtil.JSON_NUMERIC_KEYS, fieldStarts, fieldEnds);
+                    fieldCount = NodeLoadUtil.JSON_KEYS.length;
+
+                } else {
+
+                    fieldCount = reader.parseCsvFields(fieldStarts, fieldEnds);
+                }
+
+                NodeLoadUtil.loadRecord(reader, fieldStarts, fieldEnds, fieldCount, target);
+                recordCount++;
+            }
+
+        } finally {
+
+            if (stats != null) {
+
+                stats.addLineCount(reader.getLineNumber());
+                stats.addRecordCount(recordCount);
+                stats.addByteCount(reader.getByteCount());
+                stats.addElapsedNanos(System.nanoTime() - startNanos);
+            }
+        }
+
+        return (recordCount > 0L);
+    }
+
+    /**
+     * Load a single record into an index.
+     * <p>
+     * Supports loadRecords().
+     *
+     * @param reader      Reader holding parsed fields.
+     * @param fieldStarts Field starts (-1 if missing).
+     * @param fieldEnds   Field ends.
+     * @param fieldCount  Field count.
+     * @param target      Target index.
+     * @throws IllegalArgumentException Thrown if record malformed.
+     */
+    private static void loadRecord(final NodeRecordReader reader,
+                                   final int[] fieldStarts,
+                                   final int[] fieldEnds,
+                                   final int fieldCount,
+                                   final NodeIndex target)
+            throws IllegalArgumentException {
+
+        final String nodeId = NodeLoadUtil.getStringField(reader, fieldStarts, fieldEnds,
+                fieldCount, NodeLoadUtil.NODE_FIELD, "node");
+
+        final int kindStart = ((fieldCount > NodeLoadUtil.KIND_FIELD)
+                ? fieldStarts[NodeLoadUtil.KIND_FIELD] : -1);
+        final int kindEnd = fieldEnds[NodeLoadUtil.KIND_FIELD];
+
+        if (kindStart < 0) {
+
+            throw reader.buildParseException("missing kind");
+
+        } else if (reader.isMatch(kindStart, kindEnd, "node")) {
+
+            NodeLoadUtil.checkFieldCount(reader, fieldStarts, fieldCount, NodeLoadUtil.TYPE_FIELD);
+            target.addNode(nodeId);
+
+        } else if (reader.isMatch(kindStart, kindEnd, "type")) {
+
+            NodeLoadUtil.checkFieldCount(reader, fieldStarts, fieldCount, NodeLoadUtil.RANK_FIELD);
+            target.addNodeType(nodeId, NodeLoadUtil.getStringField(reader, fieldStarts, fieldEnds,
+                    fieldCount, NodeLoadUtil.TYPE_FIELD, "type"));
+
+        } else {
+
+            final boolean isBefore = reader.isMatch(kindStart, kindEnd, "before");
+
+            if (!isBefore && !reader.isMatch(kindStart, kindEnd, "after")) {
+
+                throw reader.buildParseException("unknown kind");
+            }
+
+            final String nodeType = NodeLoadUtil.getStringField(reader, fieldStarts, fieldEnds,
+                    fieldCount, NodeLoadUtil.TYPE_FIELD, "type");
+
+            final long rank = (((fieldCount > NodeLoadUtil.RANK_FIELD)
+                    && (fieldStarts[NodeLoadUtil.RANK_FIELD] >= 0))
+                    ? reader.getLong(fieldStarts[NodeLoadUtil.RANK_FIELD], fieldEnds[NodeLoadUtil.RANK_FIELD])
+                    : NodeLoadUtil.DEFAULT_RANK);
+
+            if (isBefore) {
+
+                target.addBeforeNodeType(nodeId, nodeType, rank);
+
+            } else {
+
+                target.addAfterNodeType(nodeId, nodeType, rank);
+            }
+        }
+    }
+
+    /**
+     * Gets a required, non-empty string field.
+     * <p>
+     * Supports loadRecord().
+     *
+     * @param reader      Reader holding parsed fields.
+     * @param fieldStarts Field starts (-1 if missing).
+     * @param fieldEnds   Field ends.
+     * @param fieldCount  Field count.
+     * @param fieldIndex  Field to get.
+     * @param fieldName   Field name (for errors).
+     * @return Field value.
+     * @throws IllegalArgumentException Thrown if missing/empty.
+     */
+    private static String getStringField(final NodeRecordReader reader,
+                                         final int[] fieldStarts,
+                                         final int[] fieldEnds,
+                                         final int fieldCount,
+                                         final int fieldIndex,
+                                         final String fieldName)
+            throws IllegalArgumentException {
+
+        if ((fieldCount <= fieldIndex)
+                || (fieldStarts[fieldIndex] < 0)
+                || (fieldStarts[fieldIndex] == fieldEnds[fieldIndex])) {
+
+            throw reader.buildParseException("missing " + fieldName);
+        }
+
+        return reader.getString(fieldStarts[fieldIndex], fieldEnds[fieldIndex]);
+    }
+
+    /**
+     * Checks there are no fields past those used by a record kind.
+     * <p>
+     * Supports loadRecord().
+     *
+     * @param reader      Reader holding parsed fields.
+     * @param fieldStarts Field starts (-1 if missing).
+     * @param fieldCount  Field count.
+     * @param maxCount    Fields used by record kind.
+     * @throws IllegalArgumentException Thrown if extra fields present.
+     */
+    private static void checkFieldCount(final NodeRecordReader reader,
+                                        final int[] fieldStarts,
+                                        final int fieldCount,
+                                        final int maxCount)
+            throws IllegalArgumentException {
+
+        for (int ctr = maxCount; ctr < fieldCount; ctr++) {
+
+            if (fieldStarts[ctr] >= 0) {
+
+                throw reader.buildParseException("unexpected field(s)");
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.opsysinc.example.sort.topological;
+
+/**
+ * Node order violation.
+ * <p>
+ * One way a proposed order or rank map (e.g., from a cache or a remote peer) fails the before/after
+ * constraints of the nodes it's meant to sort, as reported by NodeVerifyUtil.
+ */
+public class NodeOrderViolation {
+
+    /**
+     * Violation kind.
+     */
+    public enum Kind {
+
+        /**
+         * Node to sort, but not proposed.
+         */
+        MISSING_NODE,
+
+        /**
+         * Node proposed, but not one to sort.
+         */
+        UNKNOWN_NODE,
+
+        /**
+         * Node proposed more than once (first place counts).
+         */
+        DUPLICATE_NODE,
+
+        /**
+         * Node placed at/before a node it follows, or following a node on a cycle (incl.
+         * itself), whatever their places.
+         */
+        ORDER,
+
+        /**
+         * Node ranked below a node it follows plus their node-to-node rank (or below the
+         * starting rank, if no node followed).
+         */
+        RANK,
+
+        /**
+         * Node ranked above what it needs (when checking for exact ranks).
+         */
+        EXCESS_RANK
+    }
+
+    /**
+     * Violation kind.
+     */
+    private final Kind kind;
+
+    /**
+     * Node id.
+     */
+    private final String nodeId;
+
+    /**
+     * Node id of node followed (null if none).
+     */
+    private final String prevNodeId;
+
+    /**
+     * Rank (or position) proposed.
+     */
+    private final long actual;
+
+    /**
+     * Rank (or position) required.
+     */
+    private final long required;
+
+    /**
+     * Basic ctor.
+     *
+     * @param kind       Violation kind.
+     * @param nodeId     Node id.
+     * @param prevNodeId Node id of node followed (null if none).
+     * @param actual     Rank (or position) proposed.
+     * @param required   Rank (or position) required.
+     */
+    public NodeOrderViolation(final Kind kind,
+                              final String nodeId,
+                              final String prevNodeId,
+                              final long actual,
+                              final long required) {
+
+        DataUtil.checkNullObject(kind, true);
+        DataUtil.checkNullObject(nodeId, true);
+
+        this.kind = kind;
+        this.nodeId = nodeId;
+        this.prevNodeId = prevNodeId;
+        this.actual = actual;
+        this.required = required;
+    }
+
+    /**
+     * Gets violation kind.
+     *
+     * @return Violation kind.
+     */
+    public Kind getKind() {
+
+        return this.kind;
+    }
+
+    /**
+     * Gets node id.
+     *
+     * @return Node id.
+     */
+    public String getNodeId() {
+
+        return this.nodeId;
+    }
+
+    /**
+     * Gets node id of node followed.
+     *
+     * @return Node id of node followed (null if none, e.g., for missing/unknown nodes).
+     */
+    public String getPrevNodeId() {
+
+        return this.prevNodeId;
+    }
+
+    /**
+     * Gets rank (or position) proposed.
+     *
+     * @return Rank (or position) proposed (0 for missing nodes).
+     */
+    public long getActual() {
+
+        return this.actual;
+    }
+
+    /**
+     * Gets rank (or position) required.
+     *
+     * @return Rank (or position) required; for excess ranks, the most needed.
+     */
+    public long getRequired() {
+
+        return this.required;
+    }
+
+    @Override
+    public String toString() {
+
+        return this.kind + " " + this.nodeId
+                + ((this.prevNodeId == null) ? "" : (" after " + this.prevNodeId))
+                + " (actual=" + this.actual
+                + ", required=" + this.required + ")";
+    }
+}
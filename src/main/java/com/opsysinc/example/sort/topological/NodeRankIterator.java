@@ -0,0 +1,478 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node rank iterator.
+ * <p>
+ * Produces node id's in rank buckets, lowest rank first, as pulled: in-degree (Kahn) order,
+ * with ready nodes (all those they follow already produced) held by rank, so each bucket is
+ * final once it's the lowest ready one.
+ * <p>
+ * Readiness is tracked by type, not by edge: per type, how many of its nodes (and of the nodes
+ * declaring it a before type) are produced so far, and the highest rank among them. Nothing is
+ * expanded up front; a produced node's types and before types are counted off, and only when a
+ * type is done are the nodes waiting on it (those after it, or of it) checked. Only nodes up to
+ * the last bucket pulled are sorted and ranked; the rest of the graph is left as is.
+ * <p>
+ * Buckets hold the same node id's as NodeUtil.findNodeIdsSorted() (order within a bucket may
+ * differ). With negative node-to-node ranks, a node may rank below buckets already produced;
+ * it's then produced in a later bucket of its own rank, so ranks only ascend throughout where
+ * node-to-node ranks are non-negative (merging buckets by rank still gives the sort's ranks).
+ * <p>
+ * Supports NodeUtil.iterateNodeIdsSorted() and NodeVerifyUtil.
+ */
+class NodeRankIterator implements Iterator<Map.Entry<Long, Collection<String>>> {
+
+    /**
+     * Starting rank.
+     */
+    private final long baseRank;
+
+    /**
+     * Index of nodes to examine.
+     */
+    private final NodeIndex input;
+
+    /**
+     * Type state, by type (types with nodes produced, or nodes declaring them produced, only).
+     */
+    private final Map<String, TypeState> typeStates;
+
+    /**
+     * Nodes readied so far (incl. those produced), by node index.
+     */
+    private final BitSet readyIndexes;
+
+    /**
+     * Ready node indexes, by rank.
+     */
+    private final NavigableMap<Long, List<Integer>> readyNodes;
+
+    /**
+     * Nodes not yet produced.
+     */
+    private int remainingCount;
+
+    /**
+     * Type state, so far.
+     */
+    private static final class TypeState {
+
+        /**
+         * Nodes of this type (incl. descendant types) produced.
+         */
+        private int nodeCount;
+
+        /**
+         * Highest rank among nodes of this type produced.
+         */
+        private long nodeRank = Long.MIN_VALUE;
+
+        /**
+         * Nodes declaring this type a before type produced.
+         */
+        private int beforeCount;
+
+        /**
+         * Highest rank + before rank among nodes declaring this type a before type produced.
+         */
+        private long beforeRank = Long.MIN_VALUE;
+    }
+
+    /**
+     * Basic ctor.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks.
+     * @param input    Index of nodes to examine (read as buckets are pulled; not to change till then).
+     */
+    NodeRankIterator(final long baseRank,
+                     final NodeIndex input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        this.baseRank = baseRank;
+        this.input = input;
+        this.typeStates = new HashMap<>();
+        this.readyIndexes = new BitSet();
+        this.readyNodes = new TreeMap<>();
+        this.remainingCount = input.getNodeCount();
+
+        // nodes following none are ready at base rank (checked by declared type, not by edge)
+        for (int nodeIndex = 0; nodeIndex < input.getNodeIndexLimit(); nodeIndex++) {
+
+            if (input.getNodeId(nodeIndex) != null) {
+
+                this.readyNode(nodeIndex);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return (this.remainingCount > 0);
+    }
+
+    /**
+     * Produces the next (lowest-rank) bucket.
+     *
+     * @return Rank and node id's.
+     * @throws NoSuchElementException   Thrown if no nodes left.
+     * @throws IllegalArgumentException Thrown if cycle detected (among nodes not yet produced).
+     */
+    @Override
+    public Map.Entry<Long, Collection<String>> next()
+            throws NoSuchElementException, IllegalArgumentException {
+
+        if (!this.hasNext()) {
+
+            throw new NoSuchElementException();
+        }
+
+        final Map.Entry<Long, List<Integer>> readyItem = this.readyNodes.pollFirstEntry();
+
+        // nodes left, but none ready
+        if (readyItem == null) {
+
+            throw new IllegalArgumentException("node order cycle - " + this.describeCycle());
+        }
+
+        final long currRank = readyItem.getKey();
+        final List<Integer> rankIndexes = readyItem.getValue();
+
+        // nodes readied at this rank join this bucket as it goes
+        this.readyNodes.put(currRank, rankIndexes);
+
+        final List<String> rankNodeIds = new ArrayList<>();
+
+        for (int ctr = 0; ctr < rankIndexes.size(); ctr++) {
+
+            final int nodeIndex = rankIndexes.get(ctr);
+
+            rankNodeIds.add(this.input.getNodeId(nodeIndex));
+            this.produceNode(nodeIndex, currRank);
+        }
+
+        this.readyNodes.remove(currRank);
+        this.remainingCount -= rankNodeIds.size();
+
+        return new AbstractMap.SimpleImmutableEntry<>(currRank,
+                Collections.unmodifiableList(rankNodeIds));
+    }
+
+    /**
+     * Counts a produced node off its types and before types, checking nodes waiting on any
+     * type that's then done.
+     *
+     * @param nodeIndex Node index (interned node id).
+     * @param currRank  Rank being produced.
+     */
+    private void produceNode(final int nodeIndex,
+                             final long currRank) {
+
+        for (final String typeItem : this.findNodeTypes(nodeIndex)) {
+
+            final TypeState typeState = this.getTypeState(typeItem);
+
+            typeState.nodeCount++;
+            typeState.nodeRank = Math.max(typeState.nodeRank, currRank);
+
+            // last of its type, so nodes after it may be ready
+            if (typeState.nodeCount == NodeRankIterator.getSize(this.input.getTypeNodeIdSet(typeItem))) {
+
+                this.readyNodes(this.input.getAfterTypeNodeIdSet(typeItem));
+            }
+        }
+
+        for (final Map.Entry<String, Long> typeItem : this.input.getBeforeNodeTypeMap(nodeIndex).entrySet()) {
+
+            final TypeState typeState = this.getTypeState(typeItem.getKey());
+
+            typeState.beforeCount++;
+            typeState.beforeRank = Math.max(typeState.beforeRank, currRank + typeItem.getValue());
+
+            // last declaring it, so nodes of it may be ready
+            if (typeState.beforeCount == NodeRankIterator.getSize(this.input.getBeforeTypeNodeIdSet(typeItem.getKey()))) {
+
+                this.readyNodes(this.input.getTypeNodeIdSet(typeItem.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Readies any of a set of nodes with all nodes they follow produced.
+     *
+     * @param nodeIndexes Node indexes (may be null).
+     */
+    private void readyNodes(final NodeIdSet nodeIndexes) {
+
+        if (nodeIndexes != null) {
+
+            final PrimitiveIterator.OfInt indexIter = nodeIndexes.iterator();
+
+            while (indexIter.hasNext()) {
+
+                this.readyNode(indexIter.nextInt());
+            }
+        }
+    }
+
+    /**
+     * Readies a node, if not already and all nodes it follows are produced, at the highest
+     * rank they (plus node-to-node ranks) call for.
+     *
+     * @param nodeIndex Node index (interned node id).
+     */
+    private void readyNode(final int nodeIndex) {
+
+        if (this.readyIndexes.get(nodeIndex)) {
+
+            return;
+        }
+
+        long nextRank = this.baseRank;
+
+        // nodes of each after type
+        for (final Map.Entry<String, Long> typeItem : this.input.getAfterNodeTypeMap(nodeIndex).entrySet()) {
+
+            final int typeNodeCount = NodeRankIterator.getSize(this.input.getTypeNodeIdSet(typeItem.getKey()));
+
+            if (typeNodeCount > 0) {
+
+                final TypeState typeState = this.typeStates.get(typeItem.getKey());
+
+                if ((typeState == null) || (typeState.nodeCount < typeNodeCount)) {
+
+                    return;
+                }
+
+                nextRank = Math.max(nextRank, typeState.nodeRank + typeItem.getValue());
+            }
+        }
+
+        // nodes declaring its types before types
+        for (final String typeItem : this.findNodeTypes(nodeIndex)) {
+
+            final int beforeNodeCount = NodeRankIterator.getSize(this.input.getBeforeTypeNodeIdSet(typeItem));
+
+            if (beforeNodeCount > 0) {
+
+                final TypeState typeState = this.typeStates.get(typeItem);
+
+                if ((typeState == null) || (typeState.beforeCount < beforeNodeCount)) {
+
+                    return;
+                }
+
+                nextRank = Math.max(nextRank, typeState.beforeRank);
+            }
+        }
+
+        this.readyIndexes.set(nodeIndex);
+
+        List<Integer> rankIndexes = this.readyNodes.get(nextRank);
+
+        if (rankIndexes == null) {
+
+            rankIndexes = new ArrayList<>();
+            this.readyNodes.put(nextRank, rankIndexes);
+        }
+
+        rankIndexes.add(nodeIndex);
+    }
+
+    /**
+     * Produces all buckets left (without keeping them), to check for a cycle.
+     * <p>
+     * Supports NodeVerifyUtil.
+     *
+     * @param target Target for a cycle's node indexes (if found), each following the next, the
+     *               last following the first.
+     * @return True if cycle found, false otherwise.
+     */
+    boolean findCycle(final List<Integer> target) {
+
+        DataUtil.checkNullObject(target, true);
+
+        while (this.hasNext()) {
+
+            // nodes left, but none ready
+            if (this.readyNodes.isEmpty()) {
+
+                this.findCycleIndexes(target);
+
+                return true;
+            }
+
+            this.next();
+        }
+
+        return false;
+    }
+
+    /**
+     * Describes a cycle among nodes not yet produced.
+     *
+     * @return Description of cycle, as in NodeUtil.findNodeIdsSorted().
+     */
+    private String describeCycle() {
+
+        final List<Integer> cycleIndexes = new ArrayList<>();
+        this.findCycleIndexes(cycleIndexes);
+
+        final List<String> cycleNodeIds = new ArrayList<>(cycleIndexes.size());
+
+        for (final int nodeIndex : cycleIndexes) {
+
+            cycleNodeIds.add(this.input.getNodeId(nodeIndex));
+        }
+
+        return (cycleNodeIds + " <-> " + cycleNodeIds.get(0));
+    }
+
+    /**
+     * Find (build a list of) a cycle among nodes not yet produced, following nodes each
+     * follows until one repeats.
+     * <p>
+     * Only called once no nodes are ready, so every node not yet produced follows another.
+     *
+     * @param target Target for cycle's node indexes, each following the next, the last
+     *               following the first.
+     */
+    private void findCycleIndexes(final List<Integer> target) {
+
+        final Map<Integer, Integer> checkingIndexes = new LinkedHashMap<>();
+
+        int currIndex = this.readyIndexes.nextClearBit(0);
+
+        while (this.input.getNodeId(currIndex) == null) {
+
+            currIndex = this.readyIndexes.nextClearBit(currIndex + 1);
+        }
+
+        while (!checkingIndexes.containsKey(currIndex)) {
+
+            checkingIndexes.put(currIndex, checkingIndexes.size());
+            currIndex = this.findWaitingIndex(currIndex);
+        }
+
+        // drop nodes leading into the cycle
+        final int cycleStart = checkingIndexes.get(currIndex);
+
+        target.addAll(new ArrayList<>(checkingIndexes.keySet()).subList(cycleStart, checkingIndexes.size()));
+    }
+
+    /**
+     * Find a node not yet produced that a node (not yet produced) follows.
+     *
+     * @param nodeIndex Node index (interned node id).
+     * @return Node index followed.
+     */
+    private int findWaitingIndex(final int nodeIndex) {
+
+        for (final String typeItem : this.input.getAfterNodeTypeMap(nodeIndex).keySet()) {
+
+            final int result = this.findUnreadyIndex(this.input.getTypeNodeIdSet(typeItem));
+
+            if (result >= 0) {
+
+                return result;
+            }
+        }
+
+        for (final String typeItem : this.findNodeTypes(nodeIndex)) {
+
+            final int result = this.findUnreadyIndex(this.input.getBeforeTypeNodeIdSet(typeItem));
+
+            if (result >= 0) {
+
+                return result;
+            }
+        }
+
+        throw new IllegalStateException("node not waiting - " + this.input.getNodeId(nodeIndex));
+    }
+
+    /**
+     * Find a node not yet readied in a set of nodes.
+     *
+     * @param nodeIndexes Node indexes (may be null).
+     * @return Node index, or -1 if none.
+     */
+    private int findUnreadyIndex(final NodeIdSet nodeIndexes) {
+
+        if (nodeIndexes != null) {
+
+            final PrimitiveIterator.OfInt indexIter = nodeIndexes.iterator();
+
+            while (indexIter.hasNext()) {
+
+                final int result = indexIter.nextInt();
+
+                if (!this.readyIndexes.get(result)) {
+
+                    return result;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Find a node's types, incl. ancestor types (if given a type hierarchy).
+     *
+     * @param nodeIndex Node index (interned node id).
+     * @return Node types (each once).
+     */
+    private Collection<String> findNodeTypes(final int nodeIndex) {
+
+        final List<String> nodeTypes = this.input.getNodeTypeList(nodeIndex);
+        final NodeTypeHierarchy typeHierarchy = this.input.getTypeHierarchy();
+
+        if (typeHierarchy == null) {
+
+            return nodeTypes;
+        }
+
+        final Set<String> result = new LinkedHashSet<>(nodeTypes);
+
+        for (final String typeItem : nodeTypes) {
+
+            result.addAll(typeHierarchy.getAncestorTypeSet(typeItem));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a type's state, adding it, if new.
+     *
+     * @param nodeType Node type.
+     * @return Type state (by ref).
+     */
+    private TypeState getTypeState(final String nodeType) {
+
+        TypeState result = this.typeStates.get(nodeType);
+
+        if (result == null) {
+
+            result = new TypeState();
+            this.typeStates.put(nodeType, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a node id set's size.
+     *
+     * @param nodeIndexes Node indexes (may be null).
+     * @return Size (0 if null).
+     */
+    private static int getSize(final NodeIdSet nodeIndexes) {
+
+        return ((nodeIndexes == null) ? 0 : nodeIndexes.size());
+    }
+}
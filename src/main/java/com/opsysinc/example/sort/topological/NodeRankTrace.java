@@ -0,0 +1,274 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node rank trace.
+ * <p>
+ * Optionally passed to NodeUtil sorts to explain computed ranks: for each node, the "critical"
+ * node it follows (the one whose rank + node-to-node rank set its own rank, recorded during the
+ * rank pass), from which the full critical path to any node may be found, plus each node's
+ * slack (how far its rank could slip without raising the highest rank, i.e., the makespan).
+ * <p>
+ * Describes the most recent sort only (reset at the start of each sort). Holds the sort's edges
+ * by ref, to find slack on demand without re-sorting.
+ */
+public class NodeRankTrace {
+
+    /**
+     * Ranks, by node id (in sort order).
+     */
+    private final Map<String, Long> nodeRanks;
+
+    /**
+     * Critical (rank-setting) node id's, by node id.
+     */
+    private final Map<String, String> criticalNodeIds;
+
+    /**
+     * Map of nodes to other nodes they're supposed to follow (i.e., edges; by ref).
+     */
+    private Map<String, Map<String, Long>> afterNodes;
+
+    /**
+     * Latest ranks not raising the makespan, by node id (built on demand).
+     */
+    private Map<String, Long> latestRanks;
+
+    /**
+     * Node id with highest rank (last in sort order, if tied).
+     */
+    private String makespanNodeId;
+
+    /**
+     * Basic ctor.
+     */
+    public NodeRankTrace() {
+
+        this.nodeRanks = new LinkedHashMap<>();
+        this.criticalNodeIds = new HashMap<>();
+    }
+
+    /**
+     * Resets trace for a new sort.
+     *
+     * @param afterNodes Map of nodes to other nodes they're supposed to follow (i.e., edges; held by ref).
+     */
+    void reset(final Map<String, Map<String, Long>> afterNodes) {
+
+        DataUtil.checkNullObject(afterNodes, true);
+
+        this.nodeRanks.clear();
+        this.criticalNodeIds.clear();
+        this.afterNodes = afterNodes;
+        this.latestRanks = null;
+        this.makespanNodeId = null;
+    }
+
+    /**
+     * Adds a node, in sort order.
+     *
+     * @param nodeId         Node id.
+     * @param rank           Node rank.
+     * @param criticalNodeId Critical (rank-setting) node id (null if none, i.e., base rank).
+     */
+    void addNode(final String nodeId,
+                 final long rank,
+                 final String criticalNodeId) {
+
+        this.nodeRanks.put(nodeId, rank);
+
+        if (criticalNodeId != null) {
+
+            this.criticalNodeIds.put(nodeId, criticalNodeId);
+        }
+
+        if ((this.makespanNodeId == null)
+                || (rank >= this.nodeRanks.get(this.makespanNodeId))) {
+
+            this.makespanNodeId = nodeId;
+        }
+    }
+
+    /**
+     * Gets a node's rank.
+     *
+     * @param nodeId Node id.
+     * @return Rank, or null if node not found.
+     */
+    public Long getRank(final String nodeId) {
+
+        return this.nodeRanks.get(nodeId);
+    }
+
+    /**
+     * Gets a node's critical node, i.e., the node it follows whose rank + node-to-node rank
+     * set its own rank.
+     *
+     * @param nodeId Node id.
+     * @return Critical node id, or null if node not found or at base rank.
+     */
+    public String getCriticalNodeId(final String nodeId) {
+
+        return this.criticalNodeIds.get(nodeId);
+    }
+
+    /**
+     * Gets highest rank (makespan).
+     *
+     * @return Highest rank, or null if no nodes sorted.
+     */
+    public Long getMakespan() {
+
+        return ((this.makespanNodeId == null) ? null : this.nodeRanks.get(this.makespanNodeId));
+    }
+
+    /**
+     * Gets node with highest rank (last in sort order, if tied).
+     *
+     * @return Node id, or null if no nodes sorted.
+     */
+    public String getMakespanNodeId() {
+
+        return this.makespanNodeId;
+    }
+
+    /**
+     * Find (build a list of) the critical path to a node, i.e., the chain of critical nodes from
+     * one at base rank up to and including the node itself.
+     *
+     * @param nodeId       Node id.
+     * @param target       Target for node id's, first to last.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if node found, false otherwise.
+     */
+    public boolean findCriticalPath(final String nodeId,
+                                    final List<String> target,
+                                    final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(target, true);
+
+        if (isClearFirst) {
+
+            target.clear();
+        }
+
+        if (!this.nodeRanks.containsKey(nodeId)) {
+
+            return false;
+        }
+
+        final int startSize = target.size();
+
+        for (String currNodeId = nodeId;
+             currNodeId != null;
+             currNodeId = this.criticalNodeIds.get(currNodeId)) {
+
+            target.add(currNodeId);
+        }
+
+        Collections.reverse(target.subList(startSize, target.size()));
+
+        return true;
+    }
+
+    /**
+     * Find (build a list of) the critical path to the node with the highest rank, i.e., the
+     * bottleneck chain setting the makespan.
+     *
+     * @param target       Target for node id's, first to last.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if any nodes sorted, false otherwise.
+     */
+    public boolean findCriticalPath(final List<String> target,
+                                    final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(target, true);
+
+        if (isClearFirst) {
+
+            target.clear();
+        }
+
+        return ((this.makespanNodeId != null)
+                && this.findCriticalPath(this.makespanNodeId, target, false));
+    }
+
+    /**
+     * Gets a node's slack, i.e., how far its rank could rise without raising the makespan
+     * (0 for nodes on the makespan's critical path).
+     *
+     * @param nodeId Node id.
+     * @return Slack, or null if node not found.
+     */
+    public Long getSlack(final String nodeId) {
+
+        final Long rank = this.nodeRanks.get(nodeId);
+
+        if (rank == null) {
+
+            return null;
+        }
+
+        return (this.findLatestRanks().get(nodeId) - rank);
+    }
+
+    /**
+     * Find (build, once) latest ranks not raising the makespan, in a single backward pass over
+     * sort order (none past the makespan itself, even where node-to-node ranks are negative).
+     *
+     * @return Latest ranks, by node id.
+     */
+    private Map<String, Long> findLatestRanks() {
+
+        if (this.latestRanks == null) {
+
+            final long makespan = this.getMakespan();
+            final Map<String, Long> result = new HashMap<>();
+
+            final List<String> sortedNodeIds = new ArrayList<>(this.nodeRanks.keySet());
+
+            // latest first, so every node following one is done before it
+            for (int ctr = sortedNodeIds.size() - 1; ctr >= 0; ctr--) {
+
+                final String currNodeId = sortedNodeIds.get(ctr);
+
+                Long latestRank = result.get(currNodeId);
+
+                if (latestRank == null) {
+
+                    latestRank = makespan;
+                    result.put(currNodeId, latestRank);
+                }
+
+                // pull each earlier node back by node-to-node rank
+                final Map<String, Long> nodeRanks = this.afterNodes.get(currNodeId);
+
+                if (nodeRanks != null) {
+
+                    for (final Map.Entry<String, Long> rankItem : nodeRanks.entrySet()) {
+
+                        // negative node-to-node ranks mustn't push an earlier node past the makespan
+                        final long prevLatestRank = Math.min(makespan, latestRank - rankItem.getValue());
+                        final Long prevRank = result.get(rankItem.getKey());
+
+                        if ((prevRank == null) || (prevLatestRank < prevRank)) {
+
+                            result.put(rankItem.getKey(), prevLatestRank);
+                        }
+                    }
+                }
+            }
+
+            this.latestRanks = result;
+        }
+
+        return this.latestRanks;
+    }
+
+    @Override
+    public String toString() {
+
+        return this.nodeRanks.toString();
+    }
+}
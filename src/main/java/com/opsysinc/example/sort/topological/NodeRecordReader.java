@@ -0,0 +1,835 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Node record reader.
+ * <p>
+ * Reads UTF-8 lines from a channel through fixed, re-used byte/char buffers and splits them into
+ * fields (CSV or flat JSON objects) in a re-used scratch buffer, so the only per-record allocations
+ * are strings not seen before (see getString()).
+ * <p>
+ * Supports NodeLoadUtil.
+ */
+class NodeRecordReader {
+
+    /**
+     * Read buffer size, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Initial line/scratch buffer size, in chars.
+     */
+    private static final int LINE_SIZE = 256;
+
+    /**
+     * Initial string pool size (power of 2).
+     */
+    private static final int POOL_SIZE = 1024;
+
+    /**
+     * Byte order mark.
+     */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Input channel.
+     */
+    private final ReadableByteChannel input;
+
+    /**
+     * Byte buffer (channel reads).
+     */
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * Char buffer (decoded bytes).
+     */
+    private final CharBuffer charBuffer;
+
+    /**
+     * UTF-8 decoder.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Current line.
+     */
+    private char[] lineChars;
+
+    /**
+     * Current line length.
+     */
+    private int lineLength;
+
+    /**
+     * Current line number (1-based).
+     */
+    private long lineNumber;
+
+    /**
+     * Field scratch buffer.
+     */
+    private char[] fieldChars;
+
+    /**
+     * Field scratch buffer length.
+     */
+    private int fieldLength;
+
+    /**
+     * String pool (open addressing), so repeated id's/types share one instance.
+     */
+    private String[] stringPool;
+
+    /**
+     * String pool size.
+     */
+    private int stringPoolSize;
+
+    /**
+     * Bytes read.
+     */
+    private long byteCount;
+
+    /**
+     * True if input exhausted (all bytes read), false otherwise.
+     */
+    private boolean isInputDone;
+
+    /**
+     * Basic ctor.
+     *
+     * @param input Input channel.
+     */
+    NodeRecordReader(final ReadableByteChannel input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        this.input = input;
+        this.byteBuffer = ByteBuffer.allocateDirect(NodeRecordReader.BUFFER_SIZE);
+        this.charBuffer = CharBuffer.allocate(NodeRecordReader.BUFFER_SIZE);
+        this.charBuffer.flip();
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        this.lineChars = new char[NodeRecordReader.LINE_SIZE];
+        this.fieldChars = new char[NodeRecordReader.LINE_SIZE];
+        this.stringPool = new String[NodeRecordReader.POOL_SIZE];
+    }
+
+    /**
+     * Reads next line (without line terminator).
+     *
+     * @return True if line read, false if end of input.
+     * @throws IOException Thrown on read/decode failure.
+     */
+    boolean readLine() throws IOException {
+
+        this.lineLength = 0;
+
+        boolean isAnyRead = false;
+
+        while (true) {
+
+            // scan decoded chars for end of line
+            while (this.charBuffer.hasRemaining()) {
+
+                final char currChar = this.charBuffer.get();
+                isAnyRead = true;
+
+                if (currChar == '\n') {
+
+                    return this.endLine();
+                }
+
+                if (this.lineLength == this.lineChars.length) {
+
+                    this.lineChars = Arrays.copyOf(this.lineChars, this.lineLength * 2);
+                }
+
+                this.lineChars[this.lineLength++] = currChar;
+            }
+
+            if (!this.fillChars()) {
+
+                return (isAnyRead && this.endLine());
+            }
+        }
+    }
+
+    /**
+     * Finishes current line, dropping any carriage return and byte order mark.
+     *
+     * @return True (always).
+     */
+    private boolean endLine() {
+
+        this.lineNumber++;
+
+        if ((this.lineLength > 0)
+                && (this.lineChars[this.lineLength - 1] == '\r')) {
+
+            this.lineLength--;
+        }
+
+        if ((this.lineNumber == 1L)
+                && (this.lineLength > 0)
+                && (this.lineChars[0] == NodeRecordReader.BYTE_ORDER_MARK)) {
+
+            System.arraycopy(this.lineChars, 1, this.lineChars, 0, --this.lineLength);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads and decodes more chars.
+     *
+     * @return True if any chars decoded, false if end of input.
+     * @throws IOException Thrown on read/decode failure.
+     */
+    private boolean fillChars() throws IOException {
+
+        this.charBuffer.clear();
+
+        try {
+
+            while (this.charBuffer.position() == 0) {
+
+                if (this.isInputDone) {
+
+                    return false;
+                }
+
+                final int readCount = this.input.read(this.byteBuffer);
+
+                if (readCount < 0) {
+
+                    this.isInputDone = true;
+
+                } else {
+
+                    this.byteCount += readCount;
+                }
+
+                this.byteBuffer.flip();
+
+                final CoderResult decodeResult = this.decoder.decode(
+                        this.byteBuffer, this.charBuffer, this.isInputDone);
+
+                if (decodeResult.isError()) {
+
+                    decodeResult.throwException();
+                }
+
+                if (this.isInputDone) {
+
+                    this.decoder.flush(this.charBuffer);
+                }
+
+                this.byteBuffer.compact();
+            }
+
+        } finally {
+
+            this.charBuffer.flip();
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks current line for nothing but whitespace or a comment ('#' first).
+     *
+     * @return True if blank/comment, false otherwise.
+     */
+    boolean isBlankOrComment() {
+
+        for (int ctr = 0; ctr < this.lineLength; ctr++) {
+
+            final char currChar = this.lineChars[ctr];
+
+            if (!Character.isWhitespace(currChar)) {
+
+                return (currChar == '#');
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits current line as CSV into scratch buffer (fields trimmed; double-quoted fields
+     * may contain commas and "" for a quote).
+     *
+     * @param fieldStarts Target for field starts in scratch buffer.
+     * @param fieldEnds   Target for field ends in scratch buffer.
+     * @return Field count.
+     * @throws IllegalArgumentException Thrown if malformed or too many fields.
+     */
+    int parseCsvFields(final int[] fieldStarts,
+                       final int[] fieldEnds)
+            throws IllegalArgumentException {
+
+        this.fieldLength = 0;
+
+        int result = 0;
+        int linePos = 0;
+
+        while (true) {
+
+            if (result == fieldStarts.length) {
+
+                throw this.buildParseException("too many fields");
+            }
+
+            linePos = this.skipWhitespace(linePos);
+            fieldStarts[result] = this.fieldLength;
+
+            if ((linePos < this.lineLength) && (this.lineChars[linePos] == '"')) {
+
+                // quoted
+                linePos++;
+
+                while (true) {
+
+                    if (linePos >= this.lineLength) {
+
+                        throw this.buildParseException("unterminated quote");
+                    }
+
+                    final char currChar = this.lineChars[linePos++];
+
+                    if (currChar == '"') {
+
+                        if ((linePos < this.lineLength) && (this.lineChars[linePos] == '"')) {
+
+                            linePos++;
+
+                        } else {
+
+                            break;
+                        }
+                    }
+
+                    this.addFieldChar(currChar);
+                }
+
+                fieldEnds[result] = this.fieldLength;
+                linePos = this.skipWhitespace(linePos);
+
+            } else {
+
+                // unquoted (trimmed)
+                while ((linePos < this.lineLength) && (this.lineChars[linePos] != ',')) {
+
+                    this.addFieldChar(this.lineChars[linePos++]);
+                }
+
+                while ((this.fieldLength > fieldStarts[result])
+                        && Character.isWhitespace(this.fieldChars[this.fieldLength - 1])) {
+
+                    this.fieldLength--;
+                }
+
+                fieldEnds[result] = this.fieldLength;
+            }
+
+            result++;
+
+            if (linePos >= this.lineLength) {
+
+                return result;
+            }
+
+            if (this.lineChars[linePos] != ',') {
+
+                throw this.buildParseException("expected ','");
+            }
+
+            linePos++;
+        }
+    }
+
+    /**
+     * Parses current line as a flat JSON object (string/number/boolean/null values) into scratch
+     * buffer, keeping only values for given keys.
+     * <p>
+     * A null value counts as missing. Kept keys take string values, unless numeric, in which case
+     * they may also take bare (unquoted) ones.
+     *
+     * @param keys          Keys to keep.
+     * @param isNumericKeys Whether each key may take a bare value, per key.
+     * @param fieldStarts   Target for value starts in scratch buffer, per key (-1 if missing).
+     * @param fieldEnds     Target for value ends in scratch buffer, per key.
+     * @throws IllegalArgumentException Thrown if malformed (e.g., nested values) or a kept,
+     *                                  non-numeric key has a bare value.
+     */
+    void parseJsonFields(final String[] keys,
+                         final boolean[] isNumericKeys,
+                         final int[] fieldStarts,
+                         final int[] fieldEnds)
+            throws IllegalArgumentException {
+
+        this.fieldLength = 0;
+        Arrays.fill(fieldStarts, -1);
+
+        int linePos = this.skipWhitespace(0);
+
+        if ((linePos >= this.lineLength) || (this.lineChars[linePos] != '{')) {
+
+            throw this.buildParseException("expected '{'");
+        }
+
+        linePos = this.skipWhitespace(linePos + 1);
+
+        if ((linePos < this.lineLength) && (this.lineChars[linePos] == '}')) {
+
+            linePos++;
+
+        } else {
+
+            while (true) {
+
+                // key
+                final int keyStart = this.fieldLength;
+                linePos = this.parseJsonString(linePos);
+                final int keyEnd = this.fieldLength;
+
+                linePos = this.skipWhitespace(linePos);
+
+                if ((linePos >= this.lineLength) || (this.lineChars[linePos] != ':')) {
+
+                    throw this.buildParseException("expected ':'");
+                }
+
+                linePos = this.skipWhitespace(linePos + 1);
+
+                // value
+                final int valueStart = this.fieldLength;
+                final boolean isBare = ((linePos >= this.lineLength) || (this.lineChars[linePos] != '"'));
+
+                if (!isBare) {
+
+                    linePos = this.parseJsonString(linePos);
+
+                } else {
+
+                    while ((linePos < this.lineLength)
+                            && (this.lineChars[linePos] != ',')
+                            && (this.lineChars[linePos] != '}')
+                            && !Character.isWhitespace(this.lineChars[linePos])) {
+
+                        final char currChar = this.lineChars[linePos++];
+
+                        if ((currChar == '{') || (currChar == '[') || (currChar == '"')) {
+
+                            throw this.buildParseException("nested/unexpected value");
+                        }
+
+                        this.addFieldChar(currChar);
+                    }
+
+                    if (this.fieldLength == valueStart) {
+
+                        throw this.buildParseException("missing value");
+                    }
+                }
+
+                final int valueEnd = this.fieldLength;
+                final boolean isNull = (isBare && this.isMatch(valueStart, valueEnd, "null"));
+
+                // keep, if called for (null as missing)
+                for (int ctr = 0; ctr < keys.length; ctr++) {
+
+                    if (NodeRecordReader.isMatch(this.fieldChars, keyStart, keyEnd, keys[ctr])) {
+
+                        if (isNull) {
+
+                            fieldStarts[ctr] = -1;
+
+                        } else if (isBare && !isNumericKeys[ctr]) {
+
+                            throw this.buildParseException("expected string value - " + keys[ctr]);
+
+                        } else {
+
+                            fieldStarts[ctr] = valueStart;
+                            fieldEnds[ctr] = valueEnd;
+                        }
+                    }
+                }
+
+                linePos = this.skipWhitespace(linePos);
+
+                if (linePos >= this.lineLength) {
+
+                    throw this.buildParseException("expected ',' or '}'");
+                }
+
+                final char nextChar = this.lineChars[linePos++];
+
+                if (nextChar == '}') {
+
+                    break;
+                }
+
+                if (nextChar != ',') {
+
+                    throw this.buildParseException("expected ',' or '}'");
+                }
+
+                linePos = this.skipWhitespace(linePos);
+            }
+        }
+
+        if (this.skipWhitespace(linePos) < this.lineLength) {
+
+            throw this.buildParseException("unexpected text after '}'");
+        }
+    }
+
+    /**
+     * Parses a JSON string (with escapes) into scratch buffer.
+     *
+     * @param startPos Line position of opening quote.
+     * @return Line position after closing quote.
+     * @throws IllegalArgumentException Thrown if malformed.
+     */
+    private int parseJsonString(final int startPos)
+            throws IllegalArgumentException {
+
+        if ((startPos >= this.lineLength) || (this.lineChars[startPos] != '"')) {
+
+            throw this.buildParseException("expected '\"'");
+        }
+
+        int linePos = startPos + 1;
+
+        while (true) {
+
+            if (linePos >= this.lineLength) {
+
+                throw this.buildParseException("unterminated string");
+            }
+
+            final char currChar = this.lineChars[linePos++];
+
+            if (currChar == '"') {
+
+                return linePos;
+            }
+
+            if (currChar != '\\') {
+
+                this.addFieldChar(currChar);
+                continue;
+            }
+
+            if (linePos >= this.lineLength) {
+
+                throw this.buildParseException("unterminated escape");
+            }
+
+            final char escapeChar = this.lineChars[linePos++];
+
+            switch (escapeChar) {
+
+                case '"':
+                case '\\':
+                case '/':
+                    this.addFieldChar(escapeChar);
+                    break;
+                case 'b':
+                    this.addFieldChar('\b');
+                    break;
+                case 'f':
+                    this.addFieldChar('\f');
+                    break;
+                case 'n':
+                    this.addFieldChar('\n');
+                    break;
+                case 'r':
+                    this.addFieldChar('\r');
+                    break;
+                case 't':
+                    this.addFieldChar('\t');
+                    break;
+                case 'u':
+
+                    if ((linePos + 4) > this.lineLength) {
+
+                        throw this.buildParseException("short unicode escape");
+                    }
+
+                    int codeUnit = 0;
+
+                    for (int ctr = 0; ctr < 4; ctr++) {
+
+                        final int digit = Character.digit(this.lineChars[linePos++], 16);
+
+                        if (digit < 0) {
+
+                            throw this.buildParseException("bad unicode escape");
+                        }
+
+                        codeUnit = (codeUnit << 4) | digit;
+                    }
+
+                    this.addFieldChar((char) codeUnit);
+                    break;
+                default:
+                    throw this.buildParseException("bad escape");
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace in current line.
+     *
+     * @param startPos Line position to start.
+     * @return Line position of next non-whitespace char (or line length).
+     */
+    private int skipWhitespace(final int startPos) {
+
+        int result = startPos;
+
+        while ((result < this.lineLength) && Character.isWhitespace(this.lineChars[result])) {
+
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a char to scratch buffer.
+     *
+     * @param input Char to add.
+     */
+    private void addFieldChar(final char input) {
+
+        if (this.fieldLength == this.fieldChars.length) {
+
+            this.fieldChars = Arrays.copyOf(this.fieldChars, this.fieldLength * 2);
+        }
+
+        this.fieldChars[this.fieldLength++] = input;
+    }
+
+    /**
+     * Checks a scratch buffer range against text.
+     *
+     * @param start Range start.
+     * @param end   Range end.
+     * @param text  Text to check.
+     * @return True if equal, false otherwise.
+     */
+    boolean isMatch(final int start,
+                    final int end,
+                    final String text) {
+
+        return NodeRecordReader.isMatch(this.fieldChars, start, end, text);
+    }
+
+    /**
+     * Checks a char range against text.
+     *
+     * @param chars Chars.
+     * @param start Range start.
+     * @param end   Range end.
+     * @param text  Text to check.
+     * @return True if equal, false otherwise.
+     */
+    private static boolean isMatch(final char[] chars,
+                                   final int start,
+                                   final int end,
+                                   final String text) {
+
+        if ((end - start) != text.length()) {
+
+            return false;
+        }
+
+        for (int ctr = start; ctr < end; ctr++) {
+
+            if (chars[ctr] != text.charAt(ctr - start)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a scratch buffer range as a (decimal) long.
+     *
+     * @param start Range start.
+     * @param end   Range end.
+     * @return Parsed value.
+     * @throws IllegalArgumentException Thrown if not a valid long.
+     */
+    long getLong(final int start,
+                 final int end)
+            throws IllegalArgumentException {
+
+        int pos = start;
+        final boolean isNegative = ((pos < end) && (this.fieldChars[pos] == '-'));
+
+        if (isNegative || ((pos < end) && (this.fieldChars[pos] == '+'))) {
+
+            pos++;
+        }
+
+        if (pos >= end) {
+
+            throw this.buildParseException("missing number");
+        }
+
+        // accumulate negatively, to cover Long.MIN_VALUE
+        long result = 0L;
+
+        for (; pos < end; pos++) {
+
+            final int digit = Character.digit(this.fieldChars[pos], 10);
+
+            if ((digit < 0)
+                    || (result < (Long.MIN_VALUE / 10L))
+                    || ((result * 10L) < (Long.MIN_VALUE + digit))) {
+
+                throw this.buildParseException("bad number");
+            }
+
+            result = (result * 10L) - digit;
+        }
+
+        if (!isNegative) {
+
+            if (result == Long.MIN_VALUE) {
+
+                throw this.buildParseException("bad number");
+            }
+
+            result = -result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a scratch buffer range as a string, re-using a pooled instance if seen before.
+     *
+     * @param start Range start.
+     * @param end   Range end.
+     * @return String.
+     */
+    String getString(final int start,
+                     final int end) {
+
+        int hash = 0;
+
+        for (int ctr = start; ctr < end; ctr++) {
+
+            hash = (31 * hash) + this.fieldChars[ctr];
+        }
+
+        final int mask = this.stringPool.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while (true) {
+
+            final String pooled = this.stringPool[slot];
+
+            if (pooled == null) {
+
+                final String result = new String(this.fieldChars, start, end - start);
+                this.stringPool[slot] = result;
+
+                if ((++this.stringPoolSize * 2) > this.stringPool.length) {
+
+                    this.growStringPool();
+                }
+
+                return result;
+            }
+
+            if ((pooled.hashCode() == hash)
+                    && NodeRecordReader.isMatch(this.fieldChars, start, end, pooled)) {
+
+                return pooled;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Doubles string pool size.
+     */
+    private void growStringPool() {
+
+        final String[] prevPool = this.stringPool;
+        this.stringPool = new String[prevPool.length * 2];
+
+        final int mask = this.stringPool.length - 1;
+
+        for (final String pooled : prevPool) {
+
+            if (pooled != null) {
+
+                final int hash = pooled.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+
+                while (this.stringPool[slot] != null) {
+
+                    slot = (slot + 1) & mask;
+                }
+
+                this.stringPool[slot] = pooled;
+            }
+        }
+    }
+
+    /**
+     * Builds a parse exception for current line.
+     *
+     * @param message Problem.
+     * @return Exception.
+     */
+    IllegalArgumentException buildParseException(final String message) {
+
+        return new IllegalArgumentException("malformed record (line " + this.lineNumber + ") - " + message);
+    }
+
+    /**
+     * Gets current line number.
+     *
+     * @return Current line number (1-based).
+     */
+    long getLineNumber() {
+
+        return this.lineNumber;
+    }
+
+    /**
+     * Gets byte count.
+     *
+     * @return Bytes read.
+     */
+    long getByteCount() {
+
+        return this.byteCount;
+    }
+}
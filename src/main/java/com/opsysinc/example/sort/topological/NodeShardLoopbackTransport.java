@@ -0,0 +1,114 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Node shard loopback transport.
+ * <p>
+ * In-process NodeShardTransport, calling workers directly, for testing sharded sorts (see
+ * NodeShardUtil) on one machine. Optionally passes every message through Java serialization,
+ * as a process boundary would, counting the bytes exchanged.
+ */
+public class NodeShardLoopbackTransport implements NodeShardTransport {
+
+    /**
+     * Workers, by shard index.
+     */
+    private final List<NodeShardWorker> workers;
+
+    /**
+     * True to serialize messages, false otherwise.
+     */
+    private final boolean isSerialized;
+
+    /**
+     * Bytes exchanged (if serialized).
+     */
+    private long byteCount;
+
+    /**
+     * Basic ctor.
+     *
+     * @param workers      Workers, by shard index.
+     * @param isSerialized True to serialize messages, false to pass them by ref.
+     */
+    public NodeShardLoopbackTransport(final Collection<NodeShardWorker> workers,
+                                      final boolean isSerialized) {
+
+        DataUtil.checkNullObject(workers, true);
+
+        this.workers = new ArrayList<>(workers);
+        this.isSerialized = isSerialized;
+    }
+
+    @Override
+    public int getShardCount() {
+
+        return this.workers.size();
+    }
+
+    @Override
+    public NodeShardMessage send(final int shardIndex,
+                                 final NodeShardMessage request)
+            throws IOException, IllegalArgumentException {
+
+        DataUtil.checkNullObject(request, true);
+
+        if ((shardIndex < 0) || (shardIndex >= this.workers.size())) {
+
+            throw new IllegalArgumentException("unknown shard - " + shardIndex);
+        }
+
+        if (!this.isSerialized) {
+
+            return this.workers.get(shardIndex).handle(request);
+        }
+
+        final NodeShardMessage response = this.workers.get(shardIndex).handle(this.copyMessage(request));
+
+        return this.copyMessage(response);
+    }
+
+    /**
+     * Copies a message via serialization.
+     *
+     * @param input Message to copy.
+     * @return Copied message.
+     * @throws IOException Thrown on serialization failure.
+     */
+    private NodeShardMessage copyMessage(final NodeShardMessage input)
+            throws IOException {
+
+        final ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+
+        try (final ObjectOutputStream objectOutput = new ObjectOutputStream(byteOutput)) {
+
+            objectOutput.writeObject(input);
+        }
+
+        this.byteCount += byteOutput.size();
+
+        try (final ObjectInputStream objectInput =
+                     new ObjectInputStream(new ByteArrayInputStream(byteOutput.toByteArray()))) {
+
+            return (NodeShardMessage) objectInput.readObject();
+
+        } catch (final ClassNotFoundException ex) {
+
+            throw new IOException("can't read message", ex);
+        }
+    }
+
+    /**
+     * Gets byte count.
+     *
+     * @return Bytes exchanged (0 if not serialized).
+     */
+    public long getByteCount() {
+
+        return this.byteCount;
+    }
+}
@@ -0,0 +1,243 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Node shard message.
+ * <p>
+ * A request from the coordinator (see NodeShardUtil) to a shard worker (see NodeShardWorker), or
+ * a worker's response, as passed over a NodeShardTransport. Which fields are used depends on
+ * kind (see Kind). Serializable, holding only standard collections, so transports may ship it
+ * between processes as-is.
+ */
+public class NodeShardMessage implements Serializable {
+
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Message kinds, in protocol order.
+     */
+    public enum Kind {
+
+        /**
+         * Request: none. Response: referencedTypes (types named by before/after types),
+         * memberTypes (types with nodes in shard).
+         */
+        DESCRIBE,
+
+        /**
+         * Request: memberTypes (types to export). Response: typeNodes (shard's node id's, by type).
+         */
+        EXPORT_TYPES,
+
+        /**
+         * Request: typeNodes (other shards' node id's, by type). Response: afterNodes (edges
+         * between shard's nodes and those, keyed by the node following).
+         */
+        FIND_EDGES,
+
+        /**
+         * Request: baseRank, entryNodeIds (shard nodes following other shards' nodes),
+         * exitNodeIds (shard nodes other shards' nodes follow). Response: nodeRanks (shard-only
+         * ranks of entry/exit nodes), afterNodes (longest in-shard rank from each entry node to
+         * each other entry/exit node it precedes, keyed by the latter).
+         */
+        SUMMARIZE,
+
+        /**
+         * Request: nodeRanks (overall ranks of entry nodes). Response: rankNodes (shard's node
+         * id's, by overall rank).
+         */
+        RANK
+    }
+
+    /**
+     * Message kind.
+     */
+    private final Kind kind;
+
+    /**
+     * Starting rank.
+     */
+    private long baseRank;
+
+    /**
+     * Referenced types.
+     */
+    private final Set<String> referencedTypes;
+
+    /**
+     * Member types.
+     */
+    private final Set<String> memberTypes;
+
+    /**
+     * Node id's, by type.
+     */
+    private final Map<String, Collection<String>> typeNodes;
+
+    /**
+     * Entry node id's.
+     */
+    private final Set<String> entryNodeIds;
+
+    /**
+     * Exit node id's.
+     */
+    private final Set<String> exitNodeIds;
+
+    /**
+     * Map of nodes to other nodes they're supposed to follow, with ranks.
+     */
+    private final Map<String, Map<String, Long>> afterNodes;
+
+    /**
+     * Ranks, by node id.
+     */
+    private final Map<String, Long> nodeRanks;
+
+    /**
+     * Node id's, by rank.
+     */
+    private final Map<Long, Collection<String>> rankNodes;
+
+    /**
+     * Basic ctor.
+     *
+     * @param kind Message kind.
+     */
+    public NodeShardMessage(final Kind kind) {
+
+        DataUtil.checkNullObject(kind, true);
+
+        this.kind = kind;
+        this.referencedTypes = new HashSet<>();
+        this.memberTypes = new HashSet<>();
+        this.typeNodes = new HashMap<>();
+        this.entryNodeIds = new HashSet<>();
+        this.exitNodeIds = new HashSet<>();
+        this.afterNodes = new HashMap<>();
+        this.nodeRanks = new HashMap<>();
+        this.rankNodes = new TreeMap<>();
+    }
+
+    /**
+     * Gets message kind.
+     *
+     * @return Message kind.
+     */
+    public Kind getKind() {
+
+        return this.kind;
+    }
+
+    /**
+     * Gets starting rank.
+     *
+     * @return Starting rank.
+     */
+    public long getBaseRank() {
+
+        return this.baseRank;
+    }
+
+    /**
+     * Sets starting rank.
+     *
+     * @param baseRank Starting rank.
+     */
+    public void setBaseRank(final long baseRank) {
+
+        this.baseRank = baseRank;
+    }
+
+    /**
+     * Gets referenced types (by ref).
+     *
+     * @return Referenced types (by ref).
+     */
+    public Set<String> getReferencedTypes() {
+
+        return this.referencedTypes;
+    }
+
+    /**
+     * Gets member types (by ref).
+     *
+     * @return Member types (by ref).
+     */
+    public Set<String> getMemberTypes() {
+
+        return this.memberTypes;
+    }
+
+    /**
+     * Gets node id's, by type (by ref).
+     *
+     * @return Node id's, by type (by ref).
+     */
+    public Map<String, Collection<String>> getTypeNodes() {
+
+        return this.typeNodes;
+    }
+
+    /**
+     * Gets entry node id's (by ref).
+     *
+     * @return Entry node id's (by ref).
+     */
+    public Set<String> getEntryNodeIds() {
+
+        return this.entryNodeIds;
+    }
+
+    /**
+     * Gets exit node id's (by ref).
+     *
+     * @return Exit node id's (by ref).
+     */
+    public Set<String> getExitNodeIds() {
+
+        return this.exitNodeIds;
+    }
+
+    /**
+     * Gets map of nodes to other nodes they're supposed to follow, with ranks (by ref).
+     *
+     * @return Map of nodes to other nodes they're supposed to follow, with ranks (by ref).
+     */
+    public Map<String, Map<String, Long>> getAfterNodes() {
+
+        return this.afterNodes;
+    }
+
+    /**
+     * Gets ranks, by node id (by ref).
+     *
+     * @return Ranks, by node id (by ref).
+     */
+    public Map<String, Long> getNodeRanks() {
+
+        return this.nodeRanks;
+    }
+
+    /**
+     * Gets node id's, by rank (by ref).
+     *
+     * @return Node id's, by rank (by ref).
+     */
+    public Map<Long, Collection<String>> getRankNodes() {
+
+        return this.rankNodes;
+    }
+
+    @Override
+    public String toString() {
+
+        return this.kind.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.IOException;
+
+/**
+ * Node shard transport.
+ * <p>
+ * Carries messages (see NodeShardMessage) from the coordinator (see NodeShardUtil) to shard
+ * workers (see NodeShardWorker), each typically in its own process, and their responses back.
+ * Requests to a given shard are sent one at a time, in protocol order.
+ * <p>
+ * See NodeShardLoopbackTransport for an in-process implementation.
+ */
+public interface NodeShardTransport {
+
+    /**
+     * Gets shard count.
+     *
+     * @return Number of shards (workers), indexed from 0.
+     */
+    int getShardCount();
+
+    /**
+     * Sends a request to a shard's worker and waits for its response.
+     *
+     * @param shardIndex Shard index.
+     * @param request    Request.
+     * @return Response.
+     * @throws IOException              Thrown on transport failure.
+     * @throws IllegalArgumentException Thrown if worker rejects request (e.g., on cycle).
+     */
+    NodeShardMessage send(int shardIndex,
+                          NodeShardMessage request)
+            throws IOException, IllegalArgumentException;
+}
@@ -0,0 +1,314 @@
+package com.opsysinc.example.sort.topological;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Node shard utilities.
+ * <p>
+ * Coordinates sorts of node graphs split into shards, each held by a worker (see
+ * NodeShardWorker), typically in its own process, over a NodeShardTransport. Workers sort and
+ * rank their own nodes; only type summaries, "boundary" edges (between shards) and rank
+ * summaries for boundary nodes are exchanged, never whole shards.
+ * <p>
+ * Node id's are expected to be unique across shards.
+ */
+public final class NodeShardUtil {
+
+    /**
+     * Private ctor for util classes.
+     */
+    private NodeShardUtil() {
+
+    }
+
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, across shards.
+     * <p>
+     * See NodeUtil.findNodesSorted(long, Collection, Map, boolean) for details. Ranks are the
+     * same as for sorting all shards' nodes at once; within a rank, node id's are grouped by
+     * shard (in shard order).
+     * <p>
+     * Runs in rounds (see NodeShardMessage.Kind): (1) workers describe types they have and
+     * name; (2) workers export members of types other shards name; (3) workers find edges from
+     * their own nodes' before/after types to those; (4) workers sort and rank their own nodes,
+     * summarizing boundary nodes; (5) the coordinator ranks boundary nodes overall (detecting
+     * cycles across shards); (6) workers rank their own nodes given those.
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param transport    Transport to shard workers.
+     * @param targetRanks  Target for sorted node id's/ranks.
+     * @param isClearFirst True to clear target collections first, false otherwise.
+     * @return True if nodes found, false otherwise.
+     * @throws IOException              Thrown on transport failure.
+     * @throws IllegalArgumentException Thrown if cycle detected or node id's not unique.
+     */
+    public static boolean findNodeIdsSorted(final long baseRank,
+                                            final NodeShardTransport transport,
+                                            final Map<Long, Collection<String>> targetRanks,
+                                            final boolean isClearFirst)
+            throws IOException, IllegalArgumentException {
+
+        DataUtil.checkNullObject(transport, true);
+        DataUtil.checkNullObject(targetRanks, true);
+
+        if (isClearFirst) {
+
+            targetRanks.clear();
+        }
+
+        final int shardCount = transport.getShardCount();
+
+        // (1) describe shards
+        final List<NodeShardMessage> descriptions = new ArrayList<>(shardCount);
+        final Map<String, Integer> typeReferenceCounts = new HashMap<>();
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            final NodeShardMessage description =
+                    transport.send(ctr, new NodeShardMessage(NodeShardMessage.Kind.DESCRIBE));
+            descriptions.add(description);
+
+            for (final String typeItem : description.getReferencedTypes()) {
+
+                typeReferenceCounts.merge(typeItem, 1, Integer::sum);
+            }
+        }
+
+        // (2) export members of types named by other shards
+        final List<Map<String, Collection<String>>> exportedTypeNodes = new ArrayList<>(shardCount);
+        final Map<String, Integer> nodeShards = new HashMap<>();
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            final NodeShardMessage description = descriptions.get(ctr);
+            final NodeShardMessage request = new NodeShardMessage(NodeShardMessage.Kind.EXPORT_TYPES);
+
+            for (final String typeItem : description.getMemberTypes()) {
+
+                final int otherCount = typeReferenceCounts.getOrDefault(typeItem, 0)
+                        - (description.getReferencedTypes().contains(typeItem) ? 1 : 0);
+
+                if (otherCount > 0) {
+
+                    request.getMemberTypes().add(typeItem);
+                }
+            }
+
+            final Map<String, Collection<String>> typeNodes = (request.getMemberTypes().isEmpty()
+                    ? Collections.emptyMap() : transport.send(ctr, request).getTypeNodes());
+            exportedTypeNodes.add(typeNodes);
+
+            for (final Collection<String> nodeIds : typeNodes.values()) {
+
+                for (final String nodeId : nodeIds) {
+
+                    NodeShardUtil.putNodeShard(nodeId, ctr, nodeShards);
+                }
+            }
+        }
+
+        // (3) find boundary edges
+        final Map<String, Map<String, Long>> boundaryAfterNodes = new HashMap<>();
+        final List<Set<String>> entryNodeIds = new ArrayList<>(shardCount);
+        final List<Set<String>> exitNodeIds = new ArrayList<>(shardCount);
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            entryNodeIds.add(new HashSet<>());
+            exitNodeIds.add(new HashSet<>());
+        }
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            final NodeShardMessage request = new NodeShardMessage(NodeShardMessage.Kind.FIND_EDGES);
+
+            for (final String typeItem : descriptions.get(ctr).getReferencedTypes()) {
+
+                for (int otherCtr = 0; otherCtr < shardCount; otherCtr++) {
+
+                    final Collection<String> typeNodes = exportedTypeNodes.get(otherCtr).get(typeItem);
+
+                    if ((otherCtr != ctr) && (typeNodes != null)) {
+
+                        request.getTypeNodes().computeIfAbsent(typeItem, key -> new ArrayList<>())
+                                .addAll(typeNodes);
+                    }
+                }
+            }
+
+            if (request.getTypeNodes().isEmpty()) {
+
+                continue;
+            }
+
+            for (final Map.Entry<String, Map<String, Long>> nodeItem
+                    : transport.send(ctr, request).getAfterNodes().entrySet()) {
+
+                // nodes not exported are this shard's own
+                final String nodeId = nodeItem.getKey();
+                NodeShardUtil.putNodeShard(nodeId, nodeShards.getOrDefault(nodeId, ctr), nodeShards);
+                entryNodeIds.get(nodeShards.get(nodeId)).add(nodeId);
+
+                for (final Map.Entry<String, Long> rankItem : nodeItem.getValue().entrySet()) {
+
+                    final String prevNodeId = rankItem.getKey();
+                    NodeShardUtil.putNodeShard(prevNodeId, nodeShards.getOrDefault(prevNodeId, ctr), nodeShards);
+                    exitNodeIds.get(nodeShards.get(prevNodeId)).add(prevNodeId);
+
+                    NodeShardWorker.mergeNodeRank(nodeId, prevNodeId, rankItem.getValue(), boundaryAfterNodes);
+                }
+            }
+        }
+
+        // (4) sort shards, summarizing boundary nodes
+        final Map<String, Long> boundaryRanks = new LinkedHashMap<>();
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            final NodeShardMessage request = new NodeShardMessage(NodeShardMessage.Kind.SUMMARIZE);
+            request.setBaseRank(baseRank);
+            request.getEntryNodeIds().addAll(entryNodeIds.get(ctr));
+            request.getExitNodeIds().addAll(exitNodeIds.get(ctr));
+
+            final NodeShardMessage response = transport.send(ctr, request);
+            boundaryRanks.putAll(response.getNodeRanks());
+
+            for (final Map.Entry<String, Map<String, Long>> nodeItem : response.getAfterNodes().entrySet()) {
+
+                for (final Map.Entry<String, Long> rankItem : nodeItem.getValue().entrySet()) {
+
+                    NodeShardWorker.mergeNodeRank(nodeItem.getKey(), rankItem.getKey(),
+                            rankItem.getValue(), boundaryAfterNodes);
+                }
+            }
+        }
+
+        // (5) rank boundary nodes overall
+        NodeShardUtil.rankBoundaryNodes(boundaryAfterNodes, boundaryRanks);
+
+        // (6) rank shards, merging buckets
+        boolean result = false;
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            final NodeShardMessage request = new NodeShardMessage(NodeShardMessage.Kind.RANK);
+
+            for (final String nodeId : entryNodeIds.get(ctr)) {
+
+                request.getNodeRanks().put(nodeId, boundaryRanks.get(nodeId));
+            }
+
+            for (final Map.Entry<Long, Collection<String>> rankItem
+                    : transport.send(ctr, request).getRankNodes().entrySet()) {
+
+                targetRanks.computeIfAbsent(rankItem.getKey(), key -> new ArrayList<>())
+                        .addAll(rankItem.getValue());
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Notes a node's shard.
+     * <p>
+     * Supports findNodeIdsSorted().
+     *
+     * @param nodeId     Node id.
+     * @param shardIndex Shard index.
+     * @param target     Target for shard indexes, by node id.
+     * @throws IllegalArgumentException Thrown if node id already in another shard.
+     */
+    private static void putNodeShard(final String nodeId,
+                                     final int shardIndex,
+                                     final Map<String, Integer> target)
+            throws IllegalArgumentException {
+
+        final Integer prevShardIndex = target.put(nodeId, shardIndex);
+
+        if ((prevShardIndex != null) && (prevShardIndex != shardIndex)) {
+
+            throw new IllegalArgumentException("node in more than one shard - " + nodeId
+                    + " (" + prevShardIndex + ", " + shardIndex + ")");
+        }
+    }
+
+    /**
+     * Rank boundary nodes overall, from their shard-only ranks and edges between them (both
+     * across and within shards), in in-degree (Kahn) order.
+     * <p>
+     * Supports findNodeIdsSorted().
+     *
+     * @param afterNodes Map of boundary nodes to other boundary nodes they're supposed to follow.
+     * @param target     Shard-only ranks, by node id, updated to overall ranks.
+     * @throws IllegalArgumentException Thrown if cycle detected.
+     */
+    private static void rankBoundaryNodes(final Map<String, Map<String, Long>> afterNodes,
+                                          final Map<String, Long> target)
+            throws IllegalArgumentException {
+
+        final Map<String, Integer> inDegrees = new HashMap<>();
+        final Map<String, List<String>> nextNodeIds = new HashMap<>();
+
+        for (final Map.Entry<String, Map<String, Long>> nodeItem : afterNodes.entrySet()) {
+
+            for (final String prevNodeId : nodeItem.getValue().keySet()) {
+
+                inDegrees.merge(nodeItem.getKey(), 1, Integer::sum);
+                nextNodeIds.computeIfAbsent(prevNodeId, key -> new ArrayList<>()).add(nodeItem.getKey());
+            }
+        }
+
+        final Deque<String> readyNodeIds = new ArrayDeque<>();
+
+        for (final String nodeId : target.keySet()) {
+
+            if (!inDegrees.containsKey(nodeId)) {
+
+                readyNodeIds.add(nodeId);
+            }
+        }
+
+        int doneCount = 0;
+
+        while (!readyNodeIds.isEmpty()) {
+
+            final String currNodeId = readyNodeIds.poll();
+            final long currRank = target.get(currNodeId);
+
+            doneCount++;
+
+            for (final String nextNodeId : nextNodeIds.getOrDefault(currNodeId, Collections.emptyList())) {
+
+                final long nextRank = currRank + afterNodes.get(nextNodeId).get(currNodeId);
+
+                if (nextRank > target.get(nextNodeId)) {
+
+                    target.put(nextNodeId, nextRank);
+                }
+
+                if (inDegrees.merge(nextNodeId, -1, Integer::sum) == 0) {
+
+                    readyNodeIds.add(nextNodeId);
+                }
+            }
+        }
+
+        if (doneCount < target.size()) {
+
+            final Set<String> cycleNodeIds = new TreeSet<>();
+
+            for (final Map.Entry<String, Integer> nodeItem : inDegrees.entrySet()) {
+
+                if (nodeItem.getValue() > 0) {
+
+                    cycleNodeIds.add(nodeItem.getKey());
+                }
+            }
+
+            throw new IllegalArgumentException("node order cycle (across shards) - " + cycleNodeIds);
+        }
+    }
+}
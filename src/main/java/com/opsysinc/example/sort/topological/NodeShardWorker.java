@@ -0,0 +1,357 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node shard worker.
+ * <p>
+ * Holds one shard of a node graph (as a NodeIndex) and answers the coordinator's requests (see
+ * NodeShardUtil, NodeShardMessage.Kind): describing the types it has and names, exporting
+ * members of types other shards name, finding edges to other shards' nodes, then sorting and
+ * ranking its own nodes, exchanging only ranks and in-shard rank summaries for "boundary"
+ * nodes (those with edges to other shards).
+ * <p>
+ * Keeps its sort between SUMMARIZE and RANK requests; one sort at a time.
+ */
+public class NodeShardWorker {
+
+    /**
+     * Shard nodes.
+     */
+    private final NodeIndex input;
+
+    /**
+     * Map of shard nodes to other shard nodes they're supposed to follow (i.e., in-shard edges).
+     */
+    private final Map<String, Map<String, Long>> afterNodes;
+
+    /**
+     * Sorted shard node id's.
+     */
+    private final List<String> sortedNodeIds;
+
+    /**
+     * Starting rank.
+     */
+    private long baseRank;
+
+    /**
+     * Basic ctor.
+     *
+     * @param input Shard nodes (held by ref; not to change during a sort).
+     */
+    public NodeShardWorker(final NodeIndex input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        this.input = input;
+        this.afterNodes = new HashMap<>();
+        this.sortedNodeIds = new ArrayList<>();
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param request Request.
+     * @return Response.
+     * @throws IllegalArgumentException Thrown if request invalid or cycle detected.
+     */
+    public NodeShardMessage handle(final NodeShardMessage request)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(request, true);
+
+        final NodeShardMessage response = new NodeShardMessage(request.getKind());
+
+        switch (request.getKind()) {
+
+            case DESCRIBE:
+
+                this.describe(response);
+                break;
+
+            case EXPORT_TYPES:
+
+                this.exportTypes(request, response);
+                break;
+
+            case FIND_EDGES:
+
+                this.findEdges(request, response);
+                break;
+
+            case SUMMARIZE:
+
+                this.summarize(request, response);
+                break;
+
+            case RANK:
+
+                this.rank(request, response);
+                break;
+
+            default:
+
+                throw new IllegalArgumentException("unknown message kind - " + request.getKind());
+        }
+
+        return response;
+    }
+
+    /**
+     * Describes types shard has and names.
+     *
+     * @param response Response.
+     */
+    private void describe(final NodeShardMessage response) {
+
+        response.getMemberTypes().addAll(this.input.getTypes());
+
+        // nodes of a type are also of its ancestor types
+        final NodeTypeHierarchy typeHierarchy = this.input.getTypeHierarchy();
+
+        if (typeHierarchy != null) {
+
+            for (final String typeItem : this.input.getTypes()) {
+
+                response.getMemberTypes().addAll(typeHierarchy.getAncestorTypeSet(typeItem));
+            }
+        }
+
+        for (final String nodeId : this.input.getNodeIds()) {
+
+            response.getReferencedTypes().addAll(this.input.getBeforeNodeTypeMap(nodeId).keySet());
+            response.getReferencedTypes().addAll(this.input.getAfterNodeTypeMap(nodeId).keySet());
+        }
+    }
+
+    /**
+     * Exports shard nodes of requested types.
+     *
+     * @param request  Request.
+     * @param response Response.
+     */
+    private void exportTypes(final NodeShardMessage request,
+                             final NodeShardMessage response) {
+
+        for (final String typeItem : request.getMemberTypes()) {
+
+            final Collection<String> typeNodes = this.input.getTypeNodeSet(typeItem);
+
+            if (typeNodes != null) {
+
+                response.getTypeNodes().put(typeItem, new ArrayList<>(typeNodes));
+            }
+        }
+    }
+
+    /**
+     * Finds edges between shard nodes and other shards' nodes, from shard nodes' before/after
+     * types (other shards find those from their own).
+     *
+     * @param request  Request.
+     * @param response Response.
+     */
+    private void findEdges(final NodeShardMessage request,
+                           final NodeShardMessage response) {
+
+        final Map<String, Collection<String>> remoteTypeNodes = request.getTypeNodes();
+
+        for (final String nodeId : this.input.getNodeIds()) {
+
+            // shard node before other node: other follows it
+            for (final Map.Entry<String, Long> typeItem : this.input.getBeforeNodeTypeMap(nodeId).entrySet()) {
+
+                final Collection<String> remoteNodeIds = remoteTypeNodes.get(typeItem.getKey());
+
+                if (remoteNodeIds != null) {
+
+                    for (final String remoteNodeId : remoteNodeIds) {
+
+                        NodeShardWorker.mergeNodeRank(remoteNodeId, nodeId,
+                                typeItem.getValue(), response.getAfterNodes());
+                    }
+                }
+            }
+
+            // shard node after other node: it follows other
+            for (final Map.Entry<String, Long> typeItem : this.input.getAfterNodeTypeMap(nodeId).entrySet()) {
+
+                final Collection<String> remoteNodeIds = remoteTypeNodes.get(typeItem.getKey());
+
+                if (remoteNodeIds != null) {
+
+                    for (final String remoteNodeId : remoteNodeIds) {
+
+                        NodeShardWorker.mergeNodeRank(nodeId, remoteNodeId,
+                                typeItem.getValue(), response.getAfterNodes());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts and ranks shard nodes on their own, then summarizes boundary nodes: shard-only
+     * ranks, plus longest in-shard rank from each entry node to each other boundary node.
+     * <p>
+     * Finding the latter takes one pass over sorted nodes, carrying each node's ranks from the
+     * entry nodes it's reachable from (so costs in-shard edges times entry nodes reaching them,
+     * rather than entry nodes times shard size).
+     *
+     * @param request  Request.
+     * @param response Response.
+     * @throws IllegalArgumentException Thrown if cycle detected.
+     */
+    private void summarize(final NodeShardMessage request,
+                           final NodeShardMessage response)
+            throws IllegalArgumentException {
+
+        this.baseRank = request.getBaseRank();
+
+        NodeUtil.findNodeOrders(this.input, true, new HashMap<>(), this.afterNodes, true);
+        NodeUtil.findNodeIdOrder(this.input.getNodeIds(), this.afterNodes, this.sortedNodeIds, true);
+
+        final Map<String, Long> localRanks = new HashMap<>();
+        this.findNodeRanks(Collections.emptyMap(), localRanks);
+
+        final Set<String> boundaryNodeIds = new HashSet<>(request.getEntryNodeIds());
+        boundaryNodeIds.addAll(request.getExitNodeIds());
+
+        for (final String nodeId : boundaryNodeIds) {
+
+            final Long localRank = localRanks.get(nodeId);
+
+            if (localRank == null) {
+
+                throw new IllegalArgumentException("unknown boundary node - " + nodeId);
+            }
+
+            response.getNodeRanks().put(nodeId, localRank);
+        }
+
+        // longest in-shard rank from each entry node, in one pass over sorted nodes; each node
+        // carries ranks only from entry nodes it's reachable from
+        final Map<String, Map<String, Long>> entryRanks = new HashMap<>();
+
+        for (final String entryNodeId : request.getEntryNodeIds()) {
+
+            NodeShardWorker.mergeNodeRank(entryNodeId, entryNodeId, 0L, entryRanks);
+        }
+
+        for (final String currNodeId : this.sortedNodeIds) {
+
+            for (final Map.Entry<String, Long> rankItem : this.afterNodes.get(currNodeId).entrySet()) {
+
+                final Map<String, Long> prevRanks = entryRanks.get(rankItem.getKey());
+
+                if (prevRanks != null) {
+
+                    for (final Map.Entry<String, Long> entryItem : prevRanks.entrySet()) {
+
+                        NodeShardWorker.mergeNodeRank(currNodeId, entryItem.getKey(),
+                                (entryItem.getValue() + rankItem.getValue()), entryRanks);
+                    }
+                }
+            }
+
+            final Map<String, Long> currRanks = entryRanks.get(currNodeId);
+
+            if ((currRanks != null) && boundaryNodeIds.contains(currNodeId)) {
+
+                for (final Map.Entry<String, Long> entryItem : currRanks.entrySet()) {
+
+                    if (!entryItem.getKey().equals(currNodeId)) {
+
+                        NodeShardWorker.mergeNodeRank(currNodeId, entryItem.getKey(),
+                                entryItem.getValue(), response.getAfterNodes());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranks shard nodes, given overall ranks of entry nodes, and buckets them by rank.
+     *
+     * @param request  Request.
+     * @param response Response.
+     * @throws IllegalArgumentException Thrown if not yet summarized.
+     */
+    private void rank(final NodeShardMessage request,
+                      final NodeShardMessage response)
+            throws IllegalArgumentException {
+
+        if (this.sortedNodeIds.size() != this.input.getNodeCount()) {
+
+            throw new IllegalArgumentException("shard not summarized");
+        }
+
+        final Map<String, Long> nodeRanks = new HashMap<>();
+        this.findNodeRanks(request.getNodeRanks(), nodeRanks);
+
+        for (final String nodeId : this.sortedNodeIds) {
+
+            final long rank = nodeRanks.get(nodeId);
+
+            Collection<String> rankNodeIds = response.getRankNodes().get(rank);
+
+            if (rankNodeIds == null) {
+
+                rankNodeIds = new ArrayList<>();
+                response.getRankNodes().put(rank, rankNodeIds);
+            }
+
+            rankNodeIds.add(nodeId);
+        }
+    }
+
+    /**
+     * Find (build a map of) shard node ranks, in sort order.
+     *
+     * @param minRanks Minimum ranks, by node id (e.g., overall ranks of entry nodes).
+     * @param target   Target for ranks, by node id.
+     */
+    private void findNodeRanks(final Map<String, Long> minRanks,
+                               final Map<String, Long> target) {
+
+        for (final String currNodeId : this.sortedNodeIds) {
+
+            final Long minRank = minRanks.get(currNodeId);
+            long currRank = ((minRank == null) ? this.baseRank : Math.max(this.baseRank, minRank));
+
+            for (final Map.Entry<String, Long> rankItem : this.afterNodes.get(currNodeId).entrySet()) {
+
+                currRank = Math.max(currRank, target.get(rankItem.getKey()) + rankItem.getValue());
+            }
+
+            target.put(currNodeId, currRank);
+        }
+    }
+
+    /**
+     * Merge an edge with a map of same, max'ing rank with any existing one.
+     *
+     * @param nodeId     Node id (following).
+     * @param prevNodeId Node id (followed).
+     * @param rank       Node-to-node rank.
+     * @param target     Target map of nodes to other nodes they're supposed to follow.
+     */
+    static void mergeNodeRank(final String nodeId,
+                              final String prevNodeId,
+                              final long rank,
+                              final Map<String, Map<String, Long>> target) {
+
+        Map<String, Long> nodeRanks = target.get(nodeId);
+
+        if (nodeRanks == null) {
+
+            nodeRanks = new HashMap<>();
+            target.put(nodeId, nodeRanks);
+        }
+
+        final Long prevRank = nodeRanks.get(prevNodeId);
+
+        nodeRanks.put(prevNodeId, ((prevRank == null) ? rank : Math.max(rank, prevRank)));
+    }
+}
@@ -0,0 +1,443 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Node sort service.
+ * <p>
+ * Sorts asynchronously, on a bounded pool (fixed threads, bounded queue), returning
+ * CompletableFuture's. Requests for a graph version already being sorted (or queued) share that
+ * sort rather than queueing another, so many callers asking at once cost one sort: for an index,
+ * the same index at the same NodeIndex.getVersion() (and type hierarchy version) and starting
+ * rank; for node data, the same caller-given graph version and starting rank.
+ * <p>
+ * Results are read-only and shared by all callers of a sort. Requests past the queue's capacity
+ * (or after close()) fail with RejectedExecutionException, rather than queueing without bound.
+ * Queue depth and request/coalescing/rejection counts are available for monitoring.
+ * <p>
+ * Thread-safe. Indexes are read by pool threads, so aren't to change while their sorts are
+ * pending; an index sort checks the index's version as it starts and ends, failing with
+ * ConcurrentModificationException (on a best-effort basis, as for collections' iterators)
+ * rather than sharing a result that doesn't match the version requested.
+ */
+public class NodeSortService implements AutoCloseable {
+
+    /**
+     * Default queue capacity (sorts waiting for a thread).
+     */
+    private static final int DEFAULT_QUEUE_DEPTH = 1024;
+
+    /**
+     * Pool.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Sorts queued or running, by key.
+     */
+    private final ConcurrentMap<SortKey, CompletableFuture<?>> pendingSorts;
+
+    /**
+     * Requests made.
+     */
+    private final AtomicLong requestCount;
+
+    /**
+     * Requests sharing a sort already pending.
+     */
+    private final AtomicLong coalescedCount;
+
+    /**
+     * Requests rejected (queue full or service closed).
+     */
+    private final AtomicLong rejectedCount;
+
+    /**
+     * Sorts run (started).
+     */
+    private final AtomicLong sortCount;
+
+    /**
+     * Sort key: what's sorted, which version of it, from what rank.
+     */
+    private static final class SortKey {
+
+        /**
+         * Index sorted (compared by ref; null for node data).
+         */
+        private final NodeIndex input;
+
+        /**
+         * Graph version (compared by value).
+         */
+        private final Object graphVersion;
+
+        /**
+         * Starting rank.
+         */
+        private final long baseRank;
+
+        /**
+         * Basic ctor.
+         *
+         * @param input        Index sorted (null for node data).
+         * @param graphVersion Graph version.
+         * @param baseRank     Starting rank.
+         */
+        SortKey(final NodeIndex input,
+                final Object graphVersion,
+                final long baseRank) {
+
+            this.input = input;
+            this.graphVersion = graphVersion;
+            this.baseRank = baseRank;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+
+            if (!(other instanceof SortKey)) {
+
+                return false;
+            }
+
+            final SortKey otherKey = (SortKey) other;
+
+            return ((this.input == otherKey.input)
+                    && this.graphVersion.equals(otherKey.graphVersion)
+                    && (this.baseRank == otherKey.baseRank));
+        }
+
+        @Override
+        public int hashCode() {
+
+            return Objects.hash(System.identityHashCode(this.input), this.graphVersion, this.baseRank);
+        }
+    }
+
+    /**
+     * Basic ctor, with a thread per available processor.
+     */
+    public NodeSortService() {
+
+        this(Runtime.getRuntime().availableProcessors(), NodeSortService.DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * Full ctor.
+     *
+     * @param threadCount   Pool threads.
+     * @param maxQueueDepth Most sorts waiting for a thread.
+     * @throws IllegalArgumentException Thrown if thread count or queue depth not positive.
+     */
+    public NodeSortService(final int threadCount,
+                           final int maxQueueDepth)
+            throws IllegalArgumentException {
+
+        if (threadCount < 1) {
+
+            throw new IllegalArgumentException("non-positive thread count - " + threadCount);
+        }
+
+        if (maxQueueDepth < 1) {
+
+            throw new IllegalArgumentException("non-positive queue depth - " + maxQueueDepth);
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueueDepth), runnable -> {
+
+            final Thread result = new Thread(runnable, "node-sort-" + threadNumber.incrementAndGet());
+            result.setDaemon(true);
+
+            return result;
+        });
+
+        this.pendingSorts = new ConcurrentHashMap<>();
+        this.requestCount = new AtomicLong();
+        this.coalescedCount = new AtomicLong();
+        this.rejectedCount = new AtomicLong();
+        this.sortCount = new AtomicLong();
+    }
+
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, from an index, asynchronously.
+     * <p>
+     * See NodeUtil.findNodeIdsSorted(long, NodeIndex, Map, boolean, NodeSortStats, boolean) for
+     * details.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input    Index of nodes to examine (held by ref until sorted; not to change till then).
+     * @return Future sorted node id's/ranks (read-only, shared); fails with
+     * IllegalArgumentException if cycle detected, RejectedExecutionException if queue full, or
+     * ConcurrentModificationException if index (or type hierarchy) changed since requested.
+     */
+    public CompletableFuture<Map<Long, Collection<String>>> findNodeIdsSorted(final long baseRank,
+                                                                            final NodeIndex input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        final Object graphVersion = NodeSortService.findGraphVersion(input);
+
+        return this.findSorted(new SortKey(input, graphVersion, baseRank), () -> {
+
+            // sort only the version keyed (and so shared), not one changed while queued or sorting
+            NodeSortService.checkGraphVersion(input, graphVersion);
+
+            final Map<Long, Collection<String>> result = new TreeMap<>();
+            NodeUtil.findNodeIdsSorted(baseRank, input, result, false, null, false);
+
+            NodeSortService.checkGraphVersion(input, graphVersion);
+
+            return NodeSortService.findReadOnlyRanks(result);
+        });
+    }
+
+    /**
+     * Find an index's graph version: its own, and its type hierarchy's (if any).
+     *
+     * @param input Index.
+     * @return Graph version.
+     */
+    private static Object findGraphVersion(final NodeIndex input) {
+
+        final NodeTypeHierarchy typeHierarchy = input.getTypeHierarchy();
+
+        return Arrays.asList(input.getVersion(),
+                ((typeHierarchy == null) ? -1L : typeHierarchy.getVersion()));
+    }
+
+    /**
+     * Check an index's graph version is still the one requested.
+     *
+     * @param input        Index.
+     * @param graphVersion Graph version requested.
+     * @throws ConcurrentModificationException Thrown if index (or type hierarchy) changed.
+     */
+    private static void checkGraphVersion(final NodeIndex input,
+                                          final Object graphVersion)
+            throws ConcurrentModificationException {
+
+        final Object currGraphVersion = NodeSortService.findGraphVersion(input);
+
+        if (!graphVersion.equals(currGraphVersion)) {
+
+            throw new ConcurrentModificationException("index changed since sort requested - "
+                    + graphVersion + " -> " + currGraphVersion);
+        }
+    }
+
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, asynchronously.
+     * <p>
+     * See NodeUtil.findNodesSorted(long, Collection, Map, boolean) for details.
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input        Collection of nodes to examine (held by ref until sorted; not to change
+     *                     till then).
+     * @param graphVersion Graph version (e.g., a revision number), naming what input holds, so
+     *                     requests with equal versions may share a sort.
+     * @return Future sorted nodes/ranks (read-only, shared); fails with IllegalArgumentException
+     * if cycle detected, or RejectedExecutionException if queue full.
+     */
+    public CompletableFuture<Map<Long, Collection<NodeData>>> findNodesSorted(final long baseRank,
+                                                                            final Collection<NodeData> input,
+                                                                            final Object graphVersion) {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(graphVersion, true);
+
+        return this.findSorted(new SortKey(null, graphVersion, baseRank), () -> {
+
+            final Map<Long, Collection<NodeData>> result = new TreeMap<>();
+            NodeUtil.findNodesSorted(baseRank, input, result, false);
+
+            return NodeSortService.findReadOnlyRanks(result);
+        });
+    }
+
+    /**
+     * Find a sort's result, sharing one pending for the same key or else queueing one.
+     *
+     * @param sortKey Sort key.
+     * @param sorter  Sort to run.
+     * @param <T>     Result type.
+     * @return Future result (the caller's own, so cancelling it leaves others be).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> findSorted(final SortKey sortKey,
+                                                final Supplier<T> sorter) {
+
+        this.requestCount.incrementAndGet();
+
+        final CompletableFuture<T> nextSort = new CompletableFuture<>();
+        final CompletableFuture<T> pendingSort =
+                (CompletableFuture<T>) this.pendingSorts.putIfAbsent(sortKey, nextSort);
+
+        if (pendingSort != null) {
+
+            this.coalescedCount.incrementAndGet();
+
+            return pendingSort.thenApply(result -> result);
+        }
+
+        try {
+
+            this.executor.execute(() -> {
+
+                this.sortCount.incrementAndGet();
+
+                try {
+
+                    nextSort.complete(sorter.get());
+
+                } catch (final Throwable ex) {
+
+                    // as with CompletableFuture.supplyAsync(), so no caller waits forever
+                    nextSort.completeExceptionally(ex);
+
+                } finally {
+
+                    // later requests start over (results done with are the caller's to keep)
+                    this.pendingSorts.remove(sortKey, nextSort);
+                }
+            });
+
+        } catch (final RejectedExecutionException ex) {
+
+            this.rejectedCount.incrementAndGet();
+            this.pendingSorts.remove(sortKey, nextSort);
+
+            nextSort.completeExceptionally(ex);
+        }
+
+        return nextSort.thenApply(result -> result);
+    }
+
+    /**
+     * Find (build) a read-only copy of a rank map.
+     *
+     * @param input Rank map.
+     * @param <T>   Node type.
+     * @return Read-only rank map.
+     */
+    private static <T> Map<Long, Collection<T>> findReadOnlyRanks(final Map<Long, Collection<T>> input) {
+
+        final Map<Long, Collection<T>> result = new TreeMap<>();
+
+        for (final Map.Entry<Long, Collection<T>> rankItem : input.entrySet()) {
+
+            result.put(rankItem.getKey(), Collections.unmodifiableList(new ArrayList<>(rankItem.getValue())));
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Gets queue depth.
+     *
+     * @return Sorts waiting for a thread.
+     */
+    public int getQueueDepth() {
+
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Gets active count.
+     *
+     * @return Sorts running (approximate).
+     */
+    public int getActiveCount() {
+
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * Gets pending count.
+     *
+     * @return Distinct sorts queued or running.
+     */
+    public int getPendingCount() {
+
+        return this.pendingSorts.size();
+    }
+
+    /**
+     * Gets request count.
+     *
+     * @return Requests made.
+     */
+    public long getRequestCount() {
+
+        return this.requestCount.get();
+    }
+
+    /**
+     * Gets coalesced count.
+     *
+     * @return Requests sharing a sort already pending.
+     */
+    public long getCoalescedCount() {
+
+        return this.coalescedCount.get();
+    }
+
+    /**
+     * Gets coalescing rate.
+     *
+     * @return Share of requests sharing a sort already pending (0.0 if none made).
+     */
+    public double getCoalescedRate() {
+
+        final long currRequestCount = this.requestCount.get();
+
+        return ((currRequestCount == 0L) ? 0.0 : (((double) this.coalescedCount.get()) / currRequestCount));
+    }
+
+    /**
+     * Gets rejected count.
+     *
+     * @return Requests rejected (queue full or service closed).
+     */
+    public long getRejectedCount() {
+
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * Gets sort count.
+     *
+     * @return Sorts run (started).
+     */
+    public long getSortCount() {
+
+        return this.sortCount.get();
+    }
+
+    /**
+     * Closes service: sorts already queued still run; later requests are rejected.
+     */
+    @Override
+    public void close() {
+
+        this.executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+
+        return "requests=" + this.getRequestCount()
+                + ", coalesced=" + this.getCoalescedCount()
+                + ", rejected=" + this.getRejectedCount()
+                + ", sorts=" + this.getSortCount()
+                + ", queueDepth=" + this.getQueueDepth()
+                + ", active=" + this.getActiveCount();
+    }
+}
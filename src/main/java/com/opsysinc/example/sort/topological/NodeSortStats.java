@@ -0,0 +1,160 @@
+package com.opsysinc.example.sort.topological;
+
+/**
+ * Node sort statistics.
+ * <p>
+ * Optionally passed to NodeUtil.findNodesSorted() to report what a sort did, e.g., how many
+ * edges (before/after relationships) were found and how many were removed as redundant.
+ * <p>
+ * Counts accumulate across sorts until reset.
+ */
+public class NodeSortStats {
+
+    /**
+     * Nodes sorted.
+     */
+    private long nodeCount;
+
+    /**
+     * Edges found (before any reduction).
+     */
+    private long edgeCount;
+
+    /**
+     * Edges removed by transitive reduction.
+     */
+    private long removedEdgeCount;
+
+    /**
+     * Weakly-connected components found.
+     */
+    private long componentCount;
+
+    /**
+     * Nodes collapsed into others with the same types and before/after types.
+     */
+    private long collapsedNodeCount;
+
+    /**
+     * Adds to component count.
+     *
+     * @param input Components found.
+     */
+    void addComponentCount(final long input) {
+
+        this.componentCount += input;
+    }
+
+    /**
+     * Adds to collapsed node count.
+     *
+     * @param input Nodes collapsed.
+     */
+    void addCollapsedNodeCount(final long input) {
+
+        this.collapsedNodeCount += input;
+    }
+
+    /**
+     * Adds to node count.
+     *
+     * @param input Nodes sorted.
+     */
+    void addNodeCount(final long input) {
+
+        this.nodeCount += input;
+    }
+
+    /**
+     * Adds to edge count.
+     *
+     * @param input Edges found.
+     */
+    void addEdgeCount(final long input) {
+
+        this.edgeCount += input;
+    }
+
+    /**
+     * Adds to removed edge count.
+     *
+     * @param input Edges removed.
+     */
+    void addRemovedEdgeCount(final long input) {
+
+        this.removedEdgeCount += input;
+    }
+
+    /**
+     * Gets component count.
+     *
+     * @return Weakly-connected components found (1 unless sorting by component).
+     */
+    public long getComponentCount() {
+
+        return this.componentCount;
+    }
+
+    /**
+     * Gets collapsed node count.
+     *
+     * @return Nodes collapsed into others with the same types and before/after types (0 unless
+     * sorting collapsed).
+     */
+    public long getCollapsedNodeCount() {
+
+        return this.collapsedNodeCount;
+    }
+
+    /**
+     * Gets node count.
+     *
+     * @return Nodes sorted.
+     */
+    public long getNodeCount() {
+
+        return this.nodeCount;
+    }
+
+    /**
+     * Gets edge count.
+     *
+     * @return Edges found (before any reduction).
+     */
+    public long getEdgeCount() {
+
+        return this.edgeCount;
+    }
+
+    /**
+     * Gets removed edge count.
+     *
+     * @return Edges removed by transitive reduction.
+     */
+    public long getRemovedEdgeCount() {
+
+        return this.removedEdgeCount;
+    }
+
+    /**
+     * Resets all counts.
+     */
+    public void reset() {
+
+        this.nodeCount = 0L;
+        this.edgeCount = 0L;
+        this.removedEdgeCount = 0L;
+        this.componentCount = 0L;
+        this.collapsedNodeCount = 0L;
+    }
+
+    @Override
+    public String toString() {
+
+        return "nodes=" + this.nodeCount
+                + ", edges=" + this.edgeCount
+                + ", removedEdges=" + this.removedEdgeCount
+                + ", components=" + this.componentCount
+                + ", collapsedNodes=" + this.collapsedNodeCount;
+    }
+}
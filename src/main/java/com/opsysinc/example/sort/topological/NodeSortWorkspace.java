@@ -0,0 +1,644 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Node sort workspace.
+ * <p>
+ * Reusable buffers for sorting a NodeIndex by its interned node indexes (see
+ * NodeUtil.findNodeIdsSorted(long, NodeIndex, NodeSortWorkspace)): edges as primitive arrays
+ * (grouped by node, in compressed-row form), int stacks in place of recursion and bitsets for
+ * traversal state, plus sort results. Buffers only grow, so back-to-back sorts of similar-sized
+ * graphs allocate next to nothing once warmed up.
+ * <p>
+ * Results describe the most recent sort, and refer to its index by ref (valid until that
+ * changes). Not thread-safe; one workspace per thread.
+ */
+public class NodeSortWorkspace {
+
+    /**
+     * Initial buffer capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Bits per bitset word.
+     */
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Index sorted (by ref).
+     */
+    private NodeIndex input;
+
+    /**
+     * Edge sources (nodes followed), in the order found.
+     */
+    private int[] edgeFromIndexes;
+
+    /**
+     * Edge targets (nodes following), in the order found.
+     */
+    private int[] edgeToIndexes;
+
+    /**
+     * Edge (node-to-node) ranks, in the order found.
+     */
+    private long[] edgeRanks;
+
+    /**
+     * Edges found.
+     */
+    private int edgeCount;
+
+    /**
+     * Per node index, start of its nodes followed (one more for the end).
+     */
+    private int[] prevStarts;
+
+    /**
+     * Nodes followed, grouped by node.
+     */
+    private int[] prevIndexes;
+
+    /**
+     * Node-to-node ranks of nodes followed, grouped by node.
+     */
+    private long[] prevRanks;
+
+    /**
+     * Per node index, stamp of the last node whose group it was seen in (when dropping
+     * duplicates; see seenStamp).
+     */
+    private int[] seenStamps;
+
+    /**
+     * Per node index, scratch (fill cursor while grouping, then position kept at when last
+     * seen, while dropping duplicates).
+     */
+    private int[] seenPositions;
+
+    /**
+     * Current stamp.
+     */
+    private int seenStamp;
+
+    /**
+     * Scratch for a type's node indexes.
+     */
+    private int[] typeIndexes;
+
+    /**
+     * Nodes completely evaluated (bitset).
+     */
+    private long[] doneWords;
+
+    /**
+     * Nodes in evaluation (bitset).
+     */
+    private long[] checkingWords;
+
+    /**
+     * Stack of nodes in evaluation.
+     */
+    private int[] nodeStack;
+
+    /**
+     * Stack of next position in nodes followed, per node in evaluation.
+     */
+    private int[] edgeStack;
+
+    /**
+     * Sorted node indexes.
+     */
+    private int[] sortedIndexes;
+
+    /**
+     * Sorted node count.
+     */
+    private int sortedCount;
+
+    /**
+     * Ranks, by node index.
+     */
+    private long[] nodeRanks;
+
+    /**
+     * Edge finder, for a node's before/after types (reused, so iterating type maps allocates
+     * no iterators).
+     */
+    private final TypeEdgeFinder typeEdgeFinder;
+
+    /**
+     * Edge finder, for a node's before/after types.
+     */
+    private final class TypeEdgeFinder implements BiConsumer<String, Long> {
+
+        /**
+         * Node index.
+         */
+        private int nodeIndex;
+
+        /**
+         * True for before types, false for after types.
+         */
+        private boolean isBefore;
+
+        @Override
+        public void accept(final String nodeType,
+                           final Long rank) {
+
+            final int typeCount = NodeSortWorkspace.this.copyTypeIndexes(nodeType);
+
+            for (int ctr = 0; ctr < typeCount; ctr++) {
+
+                final int typeIndex = NodeSortWorkspace.this.typeIndexes[ctr];
+
+                if (this.isBefore) {
+
+                    // followed by nodes of its before types
+                    NodeSortWorkspace.this.addEdge(this.nodeIndex, typeIndex, rank);
+
+                } else {
+
+                    // follows nodes of its after types
+                    NodeSortWorkspace.this.addEdge(typeIndex, this.nodeIndex, rank);
+                }
+            }
+        }
+    }
+
+    /**
+     * Basic ctor.
+     */
+    public NodeSortWorkspace() {
+
+        this.edgeFromIndexes = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.edgeToIndexes = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.edgeRanks = new long[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.prevStarts = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.prevIndexes = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.prevRanks = new long[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.seenStamps = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.seenPositions = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.typeIndexes = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.doneWords = new long[1];
+        this.checkingWords = new long[1];
+        this.nodeStack = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.edgeStack = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.sortedIndexes = new int[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.nodeRanks = new long[NodeSortWorkspace.INITIAL_CAPACITY];
+        this.typeEdgeFinder = new TypeEdgeFinder();
+    }
+
+    /**
+     * Sorts and ranks an index.
+     * <p>
+     * Supports NodeUtil.findNodeIdsSorted().
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks.
+     * @param input    Index of nodes to examine (held by ref).
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    void sort(final long baseRank,
+              final NodeIndex input)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+
+        this.input = input;
+        this.sortedCount = 0;
+
+        final int indexLimit = input.getNodeIndexLimit();
+
+        this.findEdges(indexLimit);
+        this.groupEdges(indexLimit);
+        this.sortNodes(indexLimit);
+        this.rankNodes(baseRank);
+    }
+
+    /**
+     * Find edges from before/after types, in the order found (duplicates included).
+     *
+     * @param indexLimit One past the highest node index.
+     */
+    private void findEdges(final int indexLimit) {
+
+        this.edgeCount = 0;
+
+        for (int nodeIndex = 0; nodeIndex < indexLimit; nodeIndex++) {
+
+            if (this.input.getNodeId(nodeIndex) == null) {
+
+                continue;
+            }
+
+            this.typeEdgeFinder.nodeIndex = nodeIndex;
+
+            this.typeEdgeFinder.isBefore = false;
+            this.input.getAfterNodeTypeMap(nodeIndex).forEach(this.typeEdgeFinder);
+
+            this.typeEdgeFinder.isBefore = true;
+            this.input.getBeforeNodeTypeMap(nodeIndex).forEach(this.typeEdgeFinder);
+        }
+    }
+
+    /**
+     * Copies a type's node indexes to scratch.
+     *
+     * @param nodeType Node type.
+     * @return Node indexes copied (0 if type not found).
+     */
+    private int copyTypeIndexes(final String nodeType) {
+
+        final NodeIdSet typeNodes = this.input.getTypeNodeIdSet(nodeType);
+
+        if (typeNodes == null) {
+
+            return 0;
+        }
+
+        this.typeIndexes = NodeSortWorkspace.ensureCapacity(this.typeIndexes, typeNodes.size());
+
+        return typeNodes.copyTo(this.typeIndexes);
+    }
+
+    /**
+     * Adds an edge.
+     *
+     * @param fromIndex Node followed.
+     * @param toIndex   Node following.
+     * @param rank      Node-to-node rank.
+     */
+    private void addEdge(final int fromIndex,
+                         final int toIndex,
+                         final long rank) {
+
+        if (this.edgeCount == this.edgeFromIndexes.length) {
+
+            this.edgeFromIndexes = NodeSortWorkspace.ensureCapacity(this.edgeFromIndexes, this.edgeCount + 1);
+            this.edgeToIndexes = NodeSortWorkspace.ensureCapacity(this.edgeToIndexes, this.edgeCount + 1);
+            this.edgeRanks = NodeSortWorkspace.ensureCapacity(this.edgeRanks, this.edgeCount + 1);
+        }
+
+        this.edgeFromIndexes[this.edgeCount] = fromIndex;
+        this.edgeToIndexes[this.edgeCount] = toIndex;
+        this.edgeRanks[this.edgeCount] = rank;
+        this.edgeCount++;
+    }
+
+    /**
+     * Group edges by node following (counting sort), then drop duplicates, max'ing ranks.
+     *
+     * @param indexLimit One past the highest node index.
+     */
+    private void groupEdges(final int indexLimit) {
+
+        this.prevStarts = NodeSortWorkspace.ensureCapacity(this.prevStarts, indexLimit + 1);
+        this.prevIndexes = NodeSortWorkspace.ensureCapacity(this.prevIndexes, this.edgeCount);
+        this.prevRanks = NodeSortWorkspace.ensureCapacity(this.prevRanks, this.edgeCount);
+
+        if (this.seenStamps.length < indexLimit) {
+
+            this.seenStamps = NodeSortWorkspace.ensureCapacity(this.seenStamps, indexLimit);
+            this.seenPositions = NodeSortWorkspace.ensureCapacity(this.seenPositions, indexLimit);
+        }
+
+        // count, then find starts
+        Arrays.fill(this.prevStarts, 0, indexLimit + 1, 0);
+
+        for (int ctr = 0; ctr < this.edgeCount; ctr++) {
+
+            this.prevStarts[this.edgeToIndexes[ctr] + 1]++;
+        }
+
+        for (int ctr = 0; ctr < indexLimit; ctr++) {
+
+            this.prevStarts[ctr + 1] += this.prevStarts[ctr];
+        }
+
+        // fill, using positions as cursors
+        System.arraycopy(this.prevStarts, 0, this.seenPositions, 0, indexLimit);
+
+        for (int ctr = 0; ctr < this.edgeCount; ctr++) {
+
+            final int position = this.seenPositions[this.edgeToIndexes[ctr]]++;
+
+            this.prevIndexes[position] = this.edgeFromIndexes[ctr];
+            this.prevRanks[position] = this.edgeRanks[ctr];
+        }
+
+        // compact each node's group in place, dropping duplicates
+        if (this.seenStamp > (Integer.MAX_VALUE - indexLimit)) {
+
+            Arrays.fill(this.seenStamps, 0);
+            this.seenStamp = 0;
+        }
+
+        int writePosition = 0;
+        int readStart = 0;
+
+        for (int nodeIndex = 0; nodeIndex < indexLimit; nodeIndex++) {
+
+            final int readEnd = this.prevStarts[nodeIndex + 1];
+            final int stamp = ++this.seenStamp;
+
+            this.prevStarts[nodeIndex] = writePosition;
+
+            for (int position = readStart; position < readEnd; position++) {
+
+                final int prevIndex = this.prevIndexes[position];
+
+                if (this.seenStamps[prevIndex] == stamp) {
+
+                    final int seenPosition = this.seenPositions[prevIndex];
+                    this.prevRanks[seenPosition] = Math.max(this.prevRanks[seenPosition], this.prevRanks[position]);
+
+                } else {
+
+                    this.seenStamps[prevIndex] = stamp;
+                    this.seenPositions[prevIndex] = writePosition;
+                    this.prevIndexes[writePosition] = prevIndex;
+                    this.prevRanks[writePosition] = this.prevRanks[position];
+                    writePosition++;
+                }
+            }
+
+            readStart = readEnd;
+        }
+
+        this.prevStarts[indexLimit] = writePosition;
+    }
+
+    /**
+     * Sort nodes, depth-first (following nodes followed), with int stacks and bitsets.
+     *
+     * @param indexLimit One past the highest node index.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    private void sortNodes(final int indexLimit)
+            throws IllegalArgumentException {
+
+        final int wordCount = (indexLimit / NodeSortWorkspace.WORD_BITS) + 1;
+
+        this.doneWords = NodeSortWorkspace.ensureCapacity(this.doneWords, wordCount);
+        this.checkingWords = NodeSortWorkspace.ensureCapacity(this.checkingWords, wordCount);
+        this.nodeStack = NodeSortWorkspace.ensureCapacity(this.nodeStack, indexLimit);
+        this.edgeStack = NodeSortWorkspace.ensureCapacity(this.edgeStack, indexLimit);
+        this.sortedIndexes = NodeSortWorkspace.ensureCapacity(this.sortedIndexes, indexLimit);
+
+        Arrays.fill(this.doneWords, 0, wordCount, 0L);
+        Arrays.fill(this.checkingWords, 0, wordCount, 0L);
+
+        for (int startIndex = 0; startIndex < indexLimit; startIndex++) {
+
+            if ((this.input.getNodeId(startIndex) == null)
+                    || NodeSortWorkspace.isBitSet(this.doneWords, startIndex)) {
+
+                continue;
+            }
+
+            int stackSize = this.pushNode(startIndex, 0);
+
+            while (stackSize > 0) {
+
+                final int currIndex = this.nodeStack[stackSize - 1];
+                final int position = this.edgeStack[stackSize - 1];
+
+                if (position < this.prevStarts[currIndex + 1]) {
+
+                    // traverse next node followed
+                    this.edgeStack[stackSize - 1]++;
+                    stackSize = this.pushNode(this.prevIndexes[position], stackSize);
+
+                } else {
+
+                    // done, so after all nodes it follows
+                    stackSize--;
+                    NodeSortWorkspace.clearBit(this.checkingWords, currIndex);
+                    NodeSortWorkspace.setBit(this.doneWords, currIndex);
+                    this.sortedIndexes[this.sortedCount++] = currIndex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start traversal of a node, if not already done with.
+     *
+     * @param nodeIndex Node index.
+     * @param stackSize Stack size.
+     * @return New stack size.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    private int pushNode(final int nodeIndex,
+                         final int stackSize)
+            throws IllegalArgumentException {
+
+        if (NodeSortWorkspace.isBitSet(this.checkingWords, nodeIndex)) {
+
+            final Set<String> checkingNodes = new LinkedHashSet<>();
+
+            for (int ctr = 0; ctr < stackSize; ctr++) {
+
+                checkingNodes.add(this.input.getNodeId(this.nodeStack[ctr]));
+            }
+
+            throw new IllegalArgumentException("node order cycle - " + checkingNodes
+                    + " <-> " + this.input.getNodeId(nodeIndex));
+        }
+
+        if (NodeSortWorkspace.isBitSet(this.doneWords, nodeIndex)) {
+
+            return stackSize;
+        }
+
+        NodeSortWorkspace.setBit(this.checkingWords, nodeIndex);
+        this.nodeStack[stackSize] = nodeIndex;
+        this.edgeStack[stackSize] = this.prevStarts[nodeIndex];
+
+        return (stackSize + 1);
+    }
+
+    /**
+     * Rank nodes, in sort order, from base rank + node-to-node ranks.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks.
+     */
+    private void rankNodes(final long baseRank) {
+
+        this.nodeRanks = NodeSortWorkspace.ensureCapacity(this.nodeRanks, this.input.getNodeIndexLimit());
+
+        for (int ctr = 0; ctr < this.sortedCount; ctr++) {
+
+            final int currIndex = this.sortedIndexes[ctr];
+            final int prevEnd = this.prevStarts[currIndex + 1];
+
+            long currRank = baseRank;
+
+            for (int position = this.prevStarts[currIndex]; position < prevEnd; position++) {
+
+                currRank = Math.max(currRank, this.nodeRanks[this.prevIndexes[position]] + this.prevRanks[position]);
+            }
+
+            this.nodeRanks[currIndex] = currRank;
+        }
+    }
+
+    /**
+     * Gets sorted node count.
+     *
+     * @return Nodes sorted by the most recent sort.
+     */
+    public int getNodeCount() {
+
+        return this.sortedCount;
+    }
+
+    /**
+     * Gets edge count.
+     *
+     * @return Distinct edges (before/after relationships) found by the most recent sort.
+     */
+    public int getEdgeCount() {
+
+        return ((this.input == null) ? 0 : this.prevStarts[this.input.getNodeIndexLimit()]);
+    }
+
+    /**
+     * Gets a sorted node's id.
+     *
+     * @param position Position in sort order (0 to getNodeCount() - 1).
+     * @return Node id.
+     * @throws IndexOutOfBoundsException Thrown if position invalid.
+     */
+    public String getNodeId(final int position)
+            throws IndexOutOfBoundsException {
+
+        return this.input.getNodeId(this.getSortedIndex(position));
+    }
+
+    /**
+     * Gets a sorted node's rank.
+     *
+     * @param position Position in sort order (0 to getNodeCount() - 1).
+     * @return Rank.
+     * @throws IndexOutOfBoundsException Thrown if position invalid.
+     */
+    public long getRank(final int position)
+            throws IndexOutOfBoundsException {
+
+        return this.nodeRanks[this.getSortedIndex(position)];
+    }
+
+    /**
+     * Gets a sorted node's index.
+     *
+     * @param position Position in sort order.
+     * @return Node index.
+     * @throws IndexOutOfBoundsException Thrown if position invalid.
+     */
+    private int getSortedIndex(final int position)
+            throws IndexOutOfBoundsException {
+
+        if ((position < 0) || (position >= this.sortedCount)) {
+
+            throw new IndexOutOfBoundsException("position - " + position);
+        }
+
+        return this.sortedIndexes[position];
+    }
+
+    /**
+     * Find (build a map of) sorted node id's and ranks, from the most recent sort (allocating;
+     * for callers not needing the allocation-free accessors above).
+     *
+     * @param targetRanks  Target for sorted node id's/ranks.
+     * @param isClearFirst True to clear target collections first, false otherwise.
+     * @return True if nodes found, false otherwise.
+     */
+    public boolean findNodeIdsSorted(final Map<Long, Collection<String>> targetRanks,
+                                     final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(targetRanks, true);
+
+        if (isClearFirst) {
+
+            targetRanks.clear();
+        }
+
+        for (int ctr = 0; ctr < this.sortedCount; ctr++) {
+
+            final int currIndex = this.sortedIndexes[ctr];
+
+            targetRanks.computeIfAbsent(this.nodeRanks[currIndex], key -> new ArrayList<>())
+                    .add(this.input.getNodeId(currIndex));
+        }
+
+        return (this.sortedCount > 0);
+    }
+
+    /**
+     * Checks a bit.
+     *
+     * @param words Bitset words.
+     * @param index Bit index.
+     * @return True if set, false otherwise.
+     */
+    private static boolean isBitSet(final long[] words,
+                                    final int index) {
+
+        return ((words[index / NodeSortWorkspace.WORD_BITS] & (1L << index)) != 0L);
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @param words Bitset words.
+     * @param index Bit index.
+     */
+    private static void setBit(final long[] words,
+                               final int index) {
+
+        words[index / NodeSortWorkspace.WORD_BITS] |= (1L << index);
+    }
+
+    /**
+     * Clears a bit.
+     *
+     * @param words Bitset words.
+     * @param index Bit index.
+     */
+    private static void clearBit(final long[] words,
+                                 final int index) {
+
+        words[index / NodeSortWorkspace.WORD_BITS] &= ~(1L << index);
+    }
+
+    /**
+     * Ensures an int buffer's capacity, growing (by at least double) if needed.
+     *
+     * @param input Buffer.
+     * @param size  Size needed.
+     * @return Buffer (input, if big enough).
+     */
+    private static int[] ensureCapacity(final int[] input,
+                                        final int size) {
+
+        return ((input.length >= size) ? input : Arrays.copyOf(input, Math.max(size, input.length * 2)));
+    }
+
+    /**
+     * Ensures a long buffer's capacity, growing (by at least double) if needed.
+     *
+     * @param input Buffer.
+     * @param size  Size needed.
+     * @return Buffer (input, if big enough).
+     */
+    private static long[] ensureCapacity(final long[] input,
+                                         final int size) {
+
+        return ((input.length >= size) ? input : Arrays.copyOf(input, Math.max(size, input.length * 2)));
+    }
+}
@@ -0,0 +1,268 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node type hierarchy.
+ * <p>
+ * Parent/child relationships among node types (e.g., "service.db.postgres" is a "service.db",
+ * which is a "service"), so nodes need only their most specific types: given to a NodeIndex (see
+ * NodeIndex.setTypeHierarchy()), a before/after type also covers nodes of its descendant types.
+ * <p>
+ * Ancestor/descendant types (transitive closure) are found once, on first use after a change,
+ * then kept, so one hierarchy may serve any number of indexes and sorts. Thread-safe.
+ */
+public class NodeTypeHierarchy {
+
+    /**
+     * Parent types, by type.
+     */
+    private final Map<String, Set<String>> parentTypes;
+
+    /**
+     * Ancestor types, by type (types with parents only; null if changed since found).
+     */
+    private Map<String, Set<String>> ancestorTypes;
+
+    /**
+     * Descendant types, by type (types with children only; null if changed since found).
+     */
+    private Map<String, Set<String>> descendantTypes;
+
+    /**
+     * Change count.
+     */
+    private long version;
+
+    /**
+     * Basic ctor.
+     */
+    public NodeTypeHierarchy() {
+
+        this.parentTypes = new HashMap<>();
+    }
+
+    /**
+     * Adds a parent type to a type.
+     *
+     * @param nodeType   Node type.
+     * @param parentType Parent type.
+     * @return True if pair was new, false otherwise.
+     * @throws IllegalArgumentException Thrown if parent type is the type or one of its
+     *                                  descendants (i.e., a cycle).
+     */
+    public synchronized boolean addParentType(final String nodeType,
+                                              final String parentType)
+            throws IllegalArgumentException {
+
+        DataUtil.checkEmptyString(nodeType, true);
+        DataUtil.checkEmptyString(parentType, true);
+
+        Set<String> nodeParentTypes = this.parentTypes.get(nodeType);
+
+        if ((nodeParentTypes != null) && nodeParentTypes.contains(parentType)) {
+
+            return false;
+        }
+
+        if (nodeType.equals(parentType)
+                || this.findAncestorTypes(parentType).contains(nodeType)) {
+
+            throw new IllegalArgumentException("type hierarchy cycle - " + nodeType + " <-> " + parentType);
+        }
+
+        if (nodeParentTypes == null) {
+
+            nodeParentTypes = new LinkedHashSet<>();
+            this.parentTypes.put(nodeType, nodeParentTypes);
+        }
+
+        nodeParentTypes.add(parentType);
+
+        this.ancestorTypes = null;
+        this.descendantTypes = null;
+        this.version++;
+
+        return true;
+    }
+
+    /**
+     * Adds a type path, each prefix (up to a separator) being the parent of the next, e.g.,
+     * "service.db.postgres" with "." adds "service.db" (parent "service") and
+     * "service.db.postgres" (parent "service.db").
+     *
+     * @param typePath  Type path.
+     * @param separator Separator (e.g., ".").
+     * @return True if any pairs were new, false otherwise.
+     */
+    public boolean addTypePath(final String typePath,
+                               final String separator) {
+
+        DataUtil.checkEmptyString(typePath, true);
+        DataUtil.checkEmptyString(separator, true);
+
+        boolean result = false;
+        int endIndex = typePath.indexOf(separator);
+
+        while (endIndex > 0) {
+
+            final int nextIndex = typePath.indexOf(separator, endIndex + separator.length());
+            final String childType = ((nextIndex < 0) ? typePath : typePath.substring(0, nextIndex));
+
+            if (this.addParentType(childType, typePath.substring(0, endIndex))) {
+
+                result = true;
+            }
+
+            endIndex = nextIndex;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a type's parent types (read-only copy).
+     *
+     * @param nodeType Node type.
+     * @return Parent types (empty if none).
+     */
+    public synchronized Set<String> getParentTypes(final String nodeType) {
+
+        final Set<String> result = this.parentTypes.get(nodeType);
+
+        return ((result == null) ? Collections.emptySet()
+                : Collections.unmodifiableSet(new LinkedHashSet<>(result)));
+    }
+
+    /**
+     * Gets a type's ancestor types (read-only).
+     *
+     * @param nodeType Node type.
+     * @return Ancestor types (empty if none).
+     */
+    public Set<String> getAncestorTypes(final String nodeType) {
+
+        return Collections.unmodifiableSet(this.getAncestorTypeSet(nodeType));
+    }
+
+    /**
+     * Gets a type's descendant types (read-only).
+     *
+     * @param nodeType Node type.
+     * @return Descendant types (empty if none).
+     */
+    public Set<String> getDescendantTypes(final String nodeType) {
+
+        return Collections.unmodifiableSet(this.getDescendantTypeSet(nodeType));
+    }
+
+    /**
+     * Gets a type's ancestor types (by ref; not to be changed).
+     * <p>
+     * Supports NodeIndex and NodeShardWorker.
+     *
+     * @param nodeType Node type.
+     * @return Ancestor types (empty if none).
+     */
+    synchronized Set<String> getAncestorTypeSet(final String nodeType) {
+
+        this.findTypeClosure();
+
+        return this.ancestorTypes.getOrDefault(nodeType, Collections.emptySet());
+    }
+
+    /**
+     * Gets a type's descendant types (by ref; not to be changed).
+     * <p>
+     * Supports NodeIndex.
+     *
+     * @param nodeType Node type.
+     * @return Descendant types (empty if none).
+     */
+    synchronized Set<String> getDescendantTypeSet(final String nodeType) {
+
+        this.findTypeClosure();
+
+        return this.descendantTypes.getOrDefault(nodeType, Collections.emptySet());
+    }
+
+    /**
+     * Gets change count, so users may tell when what they found from the hierarchy is stale.
+     * <p>
+     * Supports NodeIndex.
+     *
+     * @return Change count.
+     */
+    synchronized long getVersion() {
+
+        return this.version;
+    }
+
+    /**
+     * Find ancestor/descendant types (transitive closure), if changed since last found.
+     */
+    private void findTypeClosure() {
+
+        if (this.ancestorTypes != null) {
+
+            return;
+        }
+
+        final Map<String, Set<String>> nextAncestorTypes = new HashMap<>();
+        final Map<String, Set<String>> nextDescendantTypes = new HashMap<>();
+
+        for (final String nodeType : this.parentTypes.keySet()) {
+
+            final Set<String> nodeAncestorTypes = this.findAncestorTypes(nodeType);
+            nextAncestorTypes.put(nodeType, nodeAncestorTypes);
+
+            for (final String ancestorType : nodeAncestorTypes) {
+
+                Set<String> ancestorDescendantTypes = nextDescendantTypes.get(ancestorType);
+
+                if (ancestorDescendantTypes == null) {
+
+                    ancestorDescendantTypes = new HashSet<>();
+                    nextDescendantTypes.put(ancestorType, ancestorDescendantTypes);
+                }
+
+                ancestorDescendantTypes.add(nodeType);
+            }
+        }
+
+        this.ancestorTypes = nextAncestorTypes;
+        this.descendantTypes = nextDescendantTypes;
+    }
+
+    /**
+     * Find (build a set of) a type's ancestor types, from parent types.
+     *
+     * @param nodeType Node type.
+     * @return Ancestor types, nearest first.
+     */
+    private Set<String> findAncestorTypes(final String nodeType) {
+
+        final Set<String> result = new LinkedHashSet<>();
+        final Deque<String> workTypes = new ArrayDeque<>();
+
+        workTypes.add(nodeType);
+
+        while (!workTypes.isEmpty()) {
+
+            final Set<String> nodeParentTypes = this.parentTypes.get(workTypes.poll());
+
+            if (nodeParentTypes != null) {
+
+                for (final String parentType : nodeParentTypes) {
+
+                    if (result.add(parentType)) {
+
+                        workTypes.add(parentType);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
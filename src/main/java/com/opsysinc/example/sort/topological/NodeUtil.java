@@ -2,6 +2,8 @@ package com.opsysinc.example.sort.topological;
 
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Node utilities.
@@ -19,6 +21,11 @@ public class NodeUtil {
      */
     private static final Logger LOGGER = Logger.getLogger(NodeUtil.class.getName());
 
+    /**
+     * Component batches per available processor, for parallel sorts.
+     */
+    private static final int COMPONENTS_PER_THREAD = 4;
+
     /**
      * Private ctor for util classes.
      */
@@ -27,63 +34,45 @@ public class NodeUtil {
     }
 
     /**
-     * Find (build a map of) nodes by type.
+     * Find (build) a node index from node data.
+     * <p>
+     * Node before/after type maps are held by ref (not copied).
      * <p>
      * Supports findNodesSorted().
      *
      * @param input        Collection of nodes to examine.
-     * @param target       Keys are node types, values are node id lists.
-     * @param isClearFirst True to clear target collection first, false otherwise.
-     * @return True if input valid and any types found, false otherwise.
+     * @param target       Target index.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if input valid and any nodes found, false otherwise.
      */
-    private static boolean findNodeTypes(final Collection<NodeData> input,
-                                         final Map<String, Collection<String>> target,
-                                         final boolean isClearFirst) {
+    public static boolean findNodeIndex(final Collection<NodeData> input,
+                                        final NodeIndex target,
+                                        final boolean isClearFirst) {
 
         DataUtil.checkNullObject(input, true);
         DataUtil.checkNullObject(target, true);
 
-        boolean result = false;
-
         if (isClearFirst) {
 
             target.clear();
-            result = true;
         }
 
         // iterate node data
         for (final NodeData nodeItem : input) {
 
-            // iterate types
-            for (final String typeItem : nodeItem.getNodeTypeSet()) {
-
-                // normalize type and get node list
-                Collection<String> nodeList = target.get(typeItem);
-
-                if (nodeList == null) {
-
-                    nodeList = new HashSet<>();
-
-                    if (target.put(typeItem, nodeList) == null) {
-
-                        result = true;
-                    }
-                }
-
-                // add id to set
-                nodeList.add(nodeItem.getNodeId());
-            }
+            target.addNode(nodeItem.getNodeId(), nodeItem.getNodeTypeSet(),
+                    nodeItem.getBeforeNodeTypeMap(), nodeItem.getAfterNodeTypeMap());
         }
 
-        return result;
+        return !input.isEmpty();
     }
 
     /**
      * Find (build) node order maps.
      * <p>
-     * Supports findNodesSorted().
+     * Supports findNodesSorted() and NodeShardWorker.
      *
-     * @param input         Collection of nodes to examine.
+     * @param input         Index of nodes to examine.
      * @param isReverseAlso True to add reverse mappings to each result, incorporating
      *                      before- to the after maps and after- to the before maps.
      * @param beforeNodes   Keys are id's in input, values are their before ranks with
@@ -94,11 +83,11 @@ public class NodeUtil {
      * @return True if input valid and at least one order found, false
      * otherwise.
      */
-    private static boolean findNodeOrders(final Collection<NodeData> input,
-                                          final boolean isReverseAlso,
-                                          final Map<String, Map<String, Long>> beforeNodes,
-                                          final Map<String, Map<String, Long>> afterNodes,
-                                          final boolean isClearFirst) {
+    static boolean findNodeOrders(final NodeIndex input,
+                                  final boolean isReverseAlso,
+                                  final Map<String, Map<String, Long>> beforeNodes,
+                                  final Map<String, Map<String, Long>> afterNodes,
+                                  final boolean isClearFirst) {
 
         DataUtil.checkNullObject(input, true);
         DataUtil.checkNullObject(beforeNodes, true);
@@ -110,30 +99,26 @@ public class NodeUtil {
             afterNodes.clear();
         }
 
-        // index input
-        final Map<String, Collection<String>> nodeTypes = new HashMap<>();
-        NodeUtil.findNodeTypes(input, nodeTypes, false);
-
         final Map<String, Map<String, Long>> tempBeforeNodes = new HashMap<>();
         final Map<String, Map<String, Long>> tempAfterNodes = new HashMap<>();
 
         // iterate nodes
-        for (final NodeData nodeItem : input) {
+        for (final String nodeId : input.getNodeIds()) {
 
             // get/build "before" target map (nodes->ranks).
-            Map<String, Long> beforeMap = tempBeforeNodes.get(nodeItem.getNodeId());
+            Map<String, Long> beforeMap = tempBeforeNodes.get(nodeId);
 
             if (beforeMap == null) {
 
                 beforeMap = new HashMap<>();
-                tempBeforeNodes.put(nodeItem.getNodeId(), beforeMap);
+                tempBeforeNodes.put(nodeId, beforeMap);
             }
 
             // iterate "before" types
-            for (final Map.Entry<String, Long> beforeTypeEntry : nodeItem.getBeforeNodeTypeMap().entrySet()) {
+            for (final Map.Entry<String, Long> beforeTypeEntry : input.getBeforeNodeTypeMap(nodeId).entrySet()) {
 
                 // get all nodes of this type
-                final Collection<String> beforeTypeNodes = nodeTypes.get(beforeTypeEntry.getKey());
+                final Collection<String> beforeTypeNodes = input.getTypeNodeSet(beforeTypeEntry.getKey());
 
                 if (beforeTypeNodes != null) {
 
@@ -148,19 +133,19 @@ public class NodeUtil {
             }
 
             // get/build "after" target map (nodes->ranks).
-            Map<String, Long> afterMap = tempAfterNodes.get(nodeItem.getNodeId());
+            Map<String, Long> afterMap = tempAfterNodes.get(nodeId);
 
             if (afterMap == null) {
 
                 afterMap = new HashMap<>();
-                tempAfterNodes.put(nodeItem.getNodeId(), afterMap);
+                tempAfterNodes.put(nodeId, afterMap);
             }
 
             // iterate "after" types
-            for (final Map.Entry<String, Long> afterTypeEntry : nodeItem.getAfterNodeTypeMap().entrySet()) {
+            for (final Map.Entry<String, Long> afterTypeEntry : input.getAfterNodeTypeMap(nodeId).entrySet()) {
 
                 // get all nodes of this type
-                final Collection<String> afterTypeNodes = nodeTypes.get(afterTypeEntry.getKey());
+                final Collection<String> afterTypeNodes = input.getTypeNodeSet(afterTypeEntry.getKey());
 
                 if (afterTypeNodes != null) {
 
@@ -277,6 +262,8 @@ public class NodeUtil {
      * Merge a rank pair with a map of same, max'ing the value with that in the
      * map or adding it.
      * <p>
+     * Called per edge, so doesn't check arguments (node id's are checked once, by NodeIndex).
+     * <p>
      * Supports findNodesSorted().
      *
      * @param rankKey   Rank key.
@@ -288,9 +275,6 @@ public class NodeUtil {
                                           final long rankValue,
                                           final Map<String, Long> target) {
 
-        DataUtil.checkEmptyString(rankKey, true);
-        DataUtil.checkNullObject(target, true);
-
         boolean result = false;
 
         // fetch previous (existing) rank
@@ -392,198 +376,1415 @@ public class NodeUtil {
                                           final boolean isClearFirst)
             throws IllegalArgumentException {
 
-        DataUtil.checkNullObject(input, true);
-        DataUtil.checkNullObject(targetRanks, true);
+        return NodeUtil.findNodesSorted(baseRank, input, targetRanks, false, null, isClearFirst);
+    }
 
-        if (isClearFirst) {
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, optionally removing redundant
+     * edges before ranking.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean) for details.
+     * <p>
+     * If isReduceEdges is true, edges (before/after relationships) already implied by a
+     * longer-or-equal path through other nodes are removed once an order is established (see
+     * reduceNodeOrders()), so the rank pass only walks edges that could raise a node's rank.
+     * Results are the same either way.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodesSorted(final long baseRank,
+                                          final Collection<NodeData> input,
+                                          final Map<Long, Collection<NodeData>> targetRanks,
+                                          final boolean isReduceEdges,
+                                          final NodeSortStats stats,
+                                          final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-            targetRanks.clear();
-        }
+        return NodeUtil.findNodesSorted(baseRank, input, targetRanks,
+                isReduceEdges, stats, null, isClearFirst);
+    }
 
-        // index input
-        final Map<String, NodeData> inputMap = new HashMap<>();
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, optionally tracing how each
+     * rank was set.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, boolean) for details.
+     * <p>
+     * If trace is given, the rank pass also records, per node, the earlier node whose rank +
+     * node-to-node rank set its rank (at one map entry per node), from which the trace finds
+     * critical paths and slack (see NodeRankTrace).
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param trace         Target for rank trace (may be null; reset first).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodesSorted(final long baseRank,
+                                          final Collection<NodeData> input,
+                                          final Map<Long, Collection<NodeData>> targetRanks,
+                                          final boolean isReduceEdges,
+                                          final NodeSortStats stats,
+                                          final NodeRankTrace trace,
+                                          final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-        for (final NodeData item : input) {
+        return NodeUtil.findNodesSorted(baseRank, input, null, targetRanks,
+                isReduceEdges, false, stats, trace, isClearFirst);
+    }
 
-            inputMap.put(item.getNodeId(), item);
-        }
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, resolving types through a type
+     * hierarchy.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, boolean) for details.
+     * <p>
+     * A before/after type also covers nodes of its descendant types (see NodeTypeHierarchy), so
+     * nodes need only their most specific types. The hierarchy's closure is found once and kept
+     * across sorts.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param typeHierarchy Type hierarchy (may be null).
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodesSorted(final long baseRank,
+                                          final Collection<NodeData> input,
+                                          final NodeTypeHierarchy typeHierarchy,
+                                          final Map<Long, Collection<NodeData>> targetRanks,
+                                          final boolean isReduceEdges,
+                                          final NodeSortStats stats,
+                                          final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-        // before/after relationships (edges)
-        final Map<String, Map<String, Long>> beforeNodes = new HashMap<>();
-        final Map<String, Map<String, Long>> afterNodes = new HashMap<>();
-        NodeUtil.findNodeOrders(input, true, beforeNodes, afterNodes, false);
+        return NodeUtil.findNodesSorted(baseRank, input, typeHierarchy, targetRanks,
+                isReduceEdges, false, stats, null, isClearFirst);
+    }
 
-        // nodes we're checking
-        final Set<String> workNodes = new HashSet<>(inputMap.keySet());
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, sorting unrelated parts of the
+     * input in parallel.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, boolean) for details.
+     * <p>
+     * Splits input into weakly-connected components (groups of nodes with no edges between them) in
+     * a single union-find pass, sorts and ranks the components concurrently on the common fork/join
+     * pool, then merges them. Results are the same as for findNodesSorted().
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodesSortedParallel(final long baseRank,
+                                                  final Collection<NodeData> input,
+                                                  final Map<Long, Collection<NodeData>> targetRanks,
+                                                  final boolean isReduceEdges,
+                                                  final NodeSortStats stats,
+                                                  final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-        // tracks done nodes (traversal finished)
-        final LinkedHashSet<String> doneNodes = new LinkedHashSet<>();
+        return NodeUtil.findNodesSorted(baseRank, input, null, targetRanks,
+                isReduceEdges, true, stats, null, isClearFirst);
+    }
 
-        // tracks in-progress nodes (traversal in progress)
-        final LinkedHashSet<String> checkingNodes = new LinkedHashSet<>();
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, from an index.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, boolean) for details.
+     * <p>
+     * Works on the sort's internal form, so needs no NodeData (e.g., for input loaded
+     * directly, via NodeLoadUtil).
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Index of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodeIdsSorted(final long baseRank,
+                                            final NodeIndex input,
+                                            final Map<Long, Collection<String>> targetRanks,
+                                            final boolean isReduceEdges,
+                                            final NodeSortStats stats,
+                                            final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-        // destination for sorted results
-        final List<String> currSortedNodeIds = new ArrayList<>();
-        final List<String> allSortedNodeIds = new ArrayList<>();
+        return NodeUtil.findNodeIdsSorted(baseRank, input, targetRanks,
+                isReduceEdges, stats, null, isClearFirst);
+    }
+
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, from an index, optionally
+     * tracing how each rank was set.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, NodeRankTrace, boolean)
+     * for details.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Index of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param trace         Target for rank trace (may be null; reset first).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodeIdsSorted(final long baseRank,
+                                            final NodeIndex input,
+                                            final Map<Long, Collection<String>> targetRanks,
+                                            final boolean isReduceEdges,
+                                            final NodeSortStats stats,
+                                            final NodeRankTrace trace,
+                                            final boolean isClearFirst)
+            throws IllegalArgumentException {
+
+        return NodeUtil.findNodeIdsSorted(baseRank, input, targetRanks,
+                isReduceEdges, false, stats, trace, isClearFirst);
+    }
 
-        int prevSize = workNodes.size();
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, from an index, sorting
+     * unrelated parts of the input in parallel.
+     * <p>
+     * See findNodesSortedParallel() for details.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Index of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodeIdsSortedParallel(final long baseRank,
+                                                    final NodeIndex input,
+                                                    final Map<Long, Collection<String>> targetRanks,
+                                                    final boolean isReduceEdges,
+                                                    final NodeSortStats stats,
+                                                    final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-        while (true) {
+        return NodeUtil.findNodeIdsSorted(baseRank, input, targetRanks,
+                isReduceEdges, true, stats, null, isClearFirst);
+    }
 
-            // iterate with recursive method
-            for (final String item : workNodes) {
+    /**
+     * Find node id's and ranks sorted by dependency, from an index, into a reusable workspace.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean) for details.
+     * <p>
+     * Works on interned node indexes with the workspace's primitive buffers and bitsets rather
+     * than maps and sets of node id's, so repeated sorts of similar-sized graphs allocate next
+     * to nothing once the workspace has grown to fit. Results (read from the workspace) are in
+     * sort order, with the same ranks as findNodeIdsSorted() (order may differ).
+     *
+     * @param baseRank  Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input     Index of nodes to examine.
+     * @param workspace Workspace (reset first; holds results).
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodeIdsSorted(final long baseRank,
+                                            final NodeIndex input,
+                                            final NodeSortWorkspace workspace)
+            throws IllegalArgumentException {
 
-                // clear working set.
-                currSortedNodeIds.clear();
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(workspace, true);
 
-                // sort
-                NodeUtil.sortNodeIds(item, afterNodes, doneNodes, checkingNodes, currSortedNodeIds);
+        workspace.sort(baseRank, input);
 
-                // add to aggregate set
-                allSortedNodeIds.addAll(currSortedNodeIds);
-            }
+        return (workspace.getNodeCount() > 0);
+    }
 
-            // remove nodes we're done with
-            workNodes.removeAll(doneNodes);
-            workNodes.removeAll(checkingNodes);
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, at most a given number per rank.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean) for details.
+     * <p>
+     * Ranks are levels for a fixed-size worker pool: list scheduling fills each rank with up to
+     * maxWidth ready nodes (all nodes they follow placed, at least their node-to-node ranks back),
+     * those heading the longest remaining chains first. Every node still ranks at least as high
+     * as each node it follows plus their node-to-node rank, but may rank higher where a rank
+     * would otherwise be too wide, so narrow ranks fill in from later ones.
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input        Collection of nodes to examine.
+     * @param maxWidth     Maximum nodes per rank (e.g., worker count).
+     * @param targetRanks  Target for sorted nodes/ranks.
+     * @param isClearFirst True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected or width not positive.
+     */
+    public static boolean findNodesScheduled(final long baseRank,
+                                             final Collection<NodeData> input,
+                                             final int maxWidth,
+                                             final Map<Long, Collection<NodeData>> targetRanks,
+                                             final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-            // if we've worked down the node list or the list didn't change, bail
-            if (workNodes.isEmpty() ||
-                    (workNodes.size() == prevSize)) {
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
 
-                break;
-            }
+        if (isClearFirst) {
 
-            prevSize = workNodes.size();
+            targetRanks.clear();
         }
 
-        // if any nodes are left over (orphans), add to the beginning
-        if (!workNodes.isEmpty()) {
+        // index input
+        final Map<String, NodeData> inputMap = new HashMap<>();
 
-            for (final String item : workNodes) {
+        for (final NodeData item : input) {
 
-                allSortedNodeIds.add(0, item);
-            }
+            inputMap.put(item.getNodeId(), item);
         }
 
-        // build aggregate ranks from base rank + individual, node-to-node
-        // ranks (viable after an order is established, above).
-        final List<Long> sortedRanks = new ArrayList<>();
+        final NodeIndex inputIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(input, inputIndex, false);
 
-        // iterate sorted nodes
-        for (int ctr1 = 0; ctr1 < allSortedNodeIds.size(); ctr1++) {
+        // schedule id's
+        final Map<Long, Collection<String>> tempRanks = new TreeMap<>();
+        final boolean result = NodeUtil.findNodeIdsScheduled(baseRank, inputIndex, maxWidth, tempRanks, false);
 
-            // start with base rank for each node
-            long currRank = baseRank;
+        // dereference the found id's into node data.
+        NodeUtil.findNodeRanks(tempRanks, inputMap, targetRanks);
 
-            // get current node id and map of node-to-node ranks for that node id
-            final String currNodeId = allSortedNodeIds.get(ctr1);
-            final Map<String, Long> nodeRanks = afterNodes.get(currNodeId);
+        return result;
+    }
 
-            // iterate sorted nodes preceding current (above) one (first one
-            // only gets base rank)
-            for (int ctr2 = 0; ctr2 < ctr1; ctr2++) {
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, at most a given number per
+     * rank, from an index.
+     * <p>
+     * See findNodesScheduled(long, Collection, int, Map, boolean) for details.
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input        Index of nodes to examine.
+     * @param maxWidth     Maximum nodes per rank (e.g., worker count).
+     * @param targetRanks  Target for sorted node id's/ranks.
+     * @param isClearFirst True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected or width not positive.
+     */
+    public static boolean findNodeIdsScheduled(final long baseRank,
+                                               final NodeIndex input,
+                                               final int maxWidth,
+                                               final Map<Long, Collection<String>> targetRanks,
+                                               final boolean isClearFirst)
+            throws IllegalArgumentException {
 
-                // get node id and cumulative rank for that, earlier node id
-                final String prevNodeId = allSortedNodeIds.get(ctr2);
-                final Long prevRank = sortedRanks.get(ctr2);
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
 
-                // get any node-to-node rank between the current and
-                // earlier node
-                final Long nodeRank = nodeRanks.get(prevNodeId);
+        if (isClearFirst) {
 
-                if (nodeRank != null) {
+            targetRanks.clear();
+        }
 
-                    // current rank equals earlier, cumulative rank +
-                    // node-to-node rank, maxed with itself (running total)
-                    currRank = Math.max(currRank, prevRank + nodeRank);
-                }
-            }
+        return new NodeLevelScheduler(baseRank, input, maxWidth).findNodeIdsScheduled(targetRanks);
+    }
 
-            // tack on to the results
-            sortedRanks.add(currRank);
+    /**
+     * Find (build) node equivalence classes: nodes with the same types and before/after types,
+     * which necessarily sort alike (same rank, and no edges between them short of a cycle), as
+     * one representative node per class.
+     * <p>
+     * Supports findNodesSortedCollapsed().
+     *
+     * @param input         Index of nodes to examine.
+     * @param targetIndex   Target index of representative nodes (first member of each class),
+     *                      with types and (read-only) before/after types held by ref, and
+     *                      input's type hierarchy (if any).
+     * @param targetMembers Target member node id's (in input order), by representative node id.
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and any nodes found, false otherwise.
+     */
+    public static boolean findNodeClasses(final NodeIndex input,
+                                          final NodeIndex targetIndex,
+                                          final Map<String, List<String>> targetMembers,
+                                          final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetIndex, true);
+        DataUtil.checkNullObject(targetMembers, true);
+
+        if (isClearFirst) {
+
+            targetIndex.clear();
+            targetMembers.clear();
         }
 
-        // dereference the found id's into node data.
-        for (int ctr = 0;
-             ctr < Math.min(allSortedNodeIds.size(), sortedRanks.size());
-             ctr++) {
+        if (input.getTypeHierarchy() != null) {
+
+            targetIndex.setTypeHierarchy(input.getTypeHierarchy());
+        }
 
-            final String nodeId = allSortedNodeIds.get(ctr);
-            final long rank = sortedRanks.get(ctr);
+        // member node id's, by signature (types, before types, after types)
+        final Map<List<Object>, List<String>> classMembers = new HashMap<>();
 
-            Collection<NodeData> sortedNodes = targetRanks.get(rank);
+        for (final String nodeId : input.getNodeIds()) {
 
-            if (sortedNodes == null) {
+            final List<String> nodeTypes = input.getNodeTypes(nodeId);
+            final List<Object> classKey = Arrays.asList(new HashSet<>(nodeTypes),
+                    input.getBeforeNodeTypeMap(nodeId), input.getAfterNodeTypeMap(nodeId));
 
-                sortedNodes = new ArrayList<>();
-                targetRanks.put(rank, sortedNodes);
+            List<String> memberNodeIds = classMembers.get(classKey);
+
+            if (memberNodeIds == null) {
+
+                memberNodeIds = new ArrayList<>();
+                classMembers.put(classKey, memberNodeIds);
+
+                targetIndex.addNode(nodeId, nodeTypes,
+                        input.getBeforeNodeTypes(nodeId), input.getAfterNodeTypes(nodeId));
+                targetMembers.put(nodeId, memberNodeIds);
             }
 
-            sortedNodes.add(inputMap.get(nodeId));
+            memberNodeIds.add(nodeId);
         }
 
-        return !allSortedNodeIds.isEmpty();
+        return (input.getNodeCount() > 0);
     }
 
     /**
-     * Recursive node topological sort method (re: Wikipedia "topological sort"
-     * pseudocode -- Cormen, Trajan, et al.).
+     * Find (build a map of) nodes and ranks sorted by dependency, sorting each equivalence class
+     * of nodes once.
      * <p>
-     * Supports findNodesSorted().
+     * See findNodesSorted(long, Collection, Map, boolean, NodeSortStats, boolean) for details.
+     * <p>
+     * Nodes with the same types and before/after types (e.g., replicas of one worker type) rank
+     * alike, so only one of each such class is sorted (see findNodeClasses()): edges are expanded
+     * and traversed between classes, not nodes, and members join their class's rank afterwards
+     * (together, in input order). Much faster where inputs are replica-heavy, and about the same
+     * otherwise. Sort statistics count classes as nodes, plus the nodes collapsed.
      *
-     * @param currNodeId    Node to traverse.
-     * @param afterNodes    Map of nodes to other nodes they're supposed to follow (i.e.,
-     *                      edges).
-     * @param doneNodes     Set of nodes completely evaluated.
-     * @param checkingNodes Set of nodes in evlauation.
-     * @throws IllegalArgumentException Thrown if start order cycle detected.
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param targetRanks   Target for sorted nodes/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
      */
-    private static void sortNodeIds(final String currNodeId,
-                                    final Map<String, Map<String, Long>> afterNodes,
-                                    final Set<String> doneNodes,
-                                    final Set<String> checkingNodes,
-                                    final Collection<String> sortedNodeIds)
+    public static boolean findNodesSortedCollapsed(final long baseRank,
+                                                   final Collection<NodeData> input,
+                                                   final Map<Long, Collection<NodeData>> targetRanks,
+                                                   final boolean isReduceEdges,
+                                                   final NodeSortStats stats,
+                                                   final boolean isClearFirst)
             throws IllegalArgumentException {
 
-        DataUtil.checkEmptyString(currNodeId, true);
-        DataUtil.checkNullObject(afterNodes, true);
-        DataUtil.checkNullObject(doneNodes, true);
-        DataUtil.checkNullObject(checkingNodes, true);
-        DataUtil.checkNullObject(sortedNodeIds, true);
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
 
-        // if node is in the check set, we've hit a cycle (not a DAG)
-        if (checkingNodes.contains(currNodeId)) {
+        if (isClearFirst) {
 
-            throw new IllegalArgumentException("node order cycle - " + checkingNodes + " <-> " + currNodeId);
+            targetRanks.clear();
+        }
 
-            // if node is not done with, traverse
-        } else if (!doneNodes.contains(currNodeId)) {
+        // index input
+        final Map<String, NodeData> inputMap = new HashMap<>();
 
-            // track to detect cycles
-            checkingNodes.add(currNodeId);
+        for (final NodeData item : input) {
 
-            // traverse edges from this node to others ("after" relationships)
-            final Map<String, Long> nodeList = afterNodes.get(currNodeId);
+            inputMap.put(item.getNodeId(), item);
+        }
 
-            if ((nodeList != null) && !nodeList.isEmpty()) {
+        final NodeIndex inputIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(input, inputIndex, false);
 
-                // iterate edges, recurse (depth-first search)
-                for (final Map.Entry<String, Long> item : nodeList.entrySet()) {
+        // sort id's
+        final Map<Long, Collection<String>> tempRanks = new TreeMap<>();
+        final boolean result = NodeUtil.findNodeIdsSortedCollapsed(baseRank, inputIndex, tempRanks,
+                isReduceEdges, stats, false);
 
-                    NodeUtil.sortNodeIds(item.getKey(), afterNodes, doneNodes, checkingNodes, sortedNodeIds);
-                }
-            }
+        // dereference the found id's into node data.
+        NodeUtil.findNodeRanks(tempRanks, inputMap, targetRanks);
 
-            // remove cycle check
-            checkingNodes.remove(currNodeId);
+        return result;
+    }
 
-            // mark as done
-            doneNodes.add(currNodeId);
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, from an index, sorting each
+     * equivalence class of nodes once.
+     * <p>
+     * See findNodesSortedCollapsed(long, Collection, Map, boolean, NodeSortStats, boolean) for
+     * details.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Index of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param stats         Target for sort statistics (may be null).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    public static boolean findNodeIdsSortedCollapsed(final long baseRank,
+                                                     final NodeIndex input,
+                                                     final Map<Long, Collection<String>> targetRanks,
+                                                     final boolean isReduceEdges,
+                                                     final NodeSortStats stats,
+                                                     final boolean isClearFirst)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
+
+        if (isClearFirst) {
+
+            targetRanks.clear();
+        }
+
+        // collapse classes
+        final NodeIndex classIndex = new NodeIndex();
+        final Map<String, List<String>> classMembers = new HashMap<>();
+        NodeUtil.findNodeClasses(input, classIndex, classMembers, false);
+
+        if (stats != null) {
+
+            stats.addCollapsedNodeCount(input.getNodeCount() - classIndex.getNodeCount());
+        }
+
+        // sort classes
+        final Map<Long, Collection<String>> classRanks = new TreeMap<>();
+        final boolean result = NodeUtil.findNodeIdsSorted(baseRank, classIndex, classRanks,
+                isReduceEdges, false, stats, null, false);
+
+        // expand classes into their members
+        for (final Map.Entry<Long, Collection<String>> rankItem : classRanks.entrySet()) {
+
+            Collection<String> sortedNodeIds = targetRanks.get(rankItem.getKey());
+
+            if (sortedNodeIds == null) {
+
+                sortedNodeIds = new ArrayList<>();
+                targetRanks.put(rankItem.getKey(), sortedNodeIds);
+            }
+
+            for (final String nodeId : rankItem.getValue()) {
+
+                sortedNodeIds.addAll(classMembers.get(nodeId));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Iterate over node id's sorted by dependency, by rank, lazily.
+     * <p>
+     * See findNodesSorted(long, Collection, Map, boolean) for details.
+     * <p>
+     * Sorts and ranks only as buckets are pulled, lowest rank first, in in-degree (Kahn) order,
+     * tracking readiness by type rather than expanding edges (before/after relationships) up
+     * front; stopping early (e.g., to find just what can start now) leaves the rest unsorted.
+     * Buckets hold the same node id's as findNodeIdsSorted() (order within a bucket may differ).
+     * <p>
+     * Buckets come in ascending rank only where node-to-node ranks are non-negative. With
+     * negative ones, a node may rank below buckets already produced; it then comes in a later
+     * bucket of its own (lower) rank, so ranks may go down and the same rank may come more than
+     * once. Merge buckets by rank (e.g., into a TreeMap) to get findNodeIdsSorted()'s ranks.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input    Index of nodes to examine (read as buckets are pulled; not to change till then).
+     * @return Iterator over rank/node id's buckets; next() throws IllegalArgumentException if
+     * cycle detected among nodes not yet produced (naming the cycle's nodes).
+     */
+    public static Iterator<Map.Entry<Long, Collection<String>>> iterateNodeIdsSorted(final long baseRank,
+                                                                                   final NodeIndex input) {
+
+        return new NodeRankIterator(baseRank, input);
+    }
+
+    /**
+     * Stream node id's sorted by dependency, by rank, lazily.
+     * <p>
+     * See iterateNodeIdsSorted() for details; in particular, buckets come in ascending rank only
+     * where node-to-node ranks are non-negative.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input    Index of nodes to examine (read as buckets are pulled; not to change till then).
+     * @return Sequential, ordered stream of rank/node id's buckets.
+     */
+    public static Stream<Map.Entry<Long, Collection<String>>> streamNodeIdsSorted(final long baseRank,
+                                                                                final NodeIndex input) {
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                NodeUtil.iterateNodeIdsSorted(baseRank, input),
+                (Spliterator.ORDERED | Spliterator.NONNULL)), false);
+    }
+
+    /**
+     * Stream nodes sorted by dependency, by rank, lazily.
+     * <p>
+     * See iterateNodeIdsSorted() for details; in particular, buckets come in ascending rank only
+     * where node-to-node ranks are non-negative.
+     *
+     * @param baseRank Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input    Collection of nodes to examine (read as buckets are pulled; not to change till then).
+     * @return Sequential, ordered stream of rank/nodes buckets.
+     */
+    public static Stream<Map.Entry<Long, Collection<NodeData>>> streamNodesSorted(final long baseRank,
+                                                                                final Collection<NodeData> input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        // index input
+        final Map<String, NodeData> inputMap = new HashMap<>();
+
+        for (final NodeData item : input) {
+
+            inputMap.put(item.getNodeId(), item);
+        }
+
+        final NodeIndex inputIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(input, inputIndex, false);
+
+        // dereference id's into node data, per bucket
+        return NodeUtil.streamNodeIdsSorted(baseRank, inputIndex)
+                .<Map.Entry<Long, Collection<NodeData>>>map(rankItem -> {
+
+                    final Collection<NodeData> sortedNodes = new ArrayList<>(rankItem.getValue().size());
+
+                    for (final String nodeId : rankItem.getValue()) {
+
+                        sortedNodes.add(inputMap.get(nodeId));
+                    }
+
+                    return new AbstractMap.SimpleImmutableEntry<>(rankItem.getKey(), sortedNodes);
+                });
+    }
+
+    /**
+     * Find (build a map of) nodes and ranks sorted by dependency, as a whole or by component.
+     * <p>
+     * Supports findNodesSorted() and findNodesSortedParallel().
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Collection of nodes to examine.
+     * @param typeHierarchy Type hierarchy (may be null).
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param isParallel    True to sort weakly-connected components in parallel, false to sort
+     *                      input as a whole.
+     * @param stats         Target for sort statistics (may be null).
+     * @param trace         Target for rank trace (may be null; reset first).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    private static boolean findNodesSorted(final long baseRank,
+                                           final Collection<NodeData> input,
+                                           final NodeTypeHierarchy typeHierarchy,
+                                           final Map<Long, Collection<NodeData>> targetRanks,
+                                           final boolean isReduceEdges,
+                                           final boolean isParallel,
+                                           final NodeSortStats stats,
+                                           final NodeRankTrace trace,
+                                           final boolean isClearFirst)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
+
+        if (isClearFirst) {
+
+            targetRanks.clear();
+        }
+
+        // index input
+        final Map<String, NodeData> inputMap = new HashMap<>();
+
+        for (final NodeData item : input) {
+
+            inputMap.put(item.getNodeId(), item);
+        }
+
+        final NodeIndex inputIndex = new NodeIndex();
+        inputIndex.setTypeHierarchy(typeHierarchy);
+        NodeUtil.findNodeIndex(input, inputIndex, false);
+
+        // sort id's
+        final Map<Long, Collection<String>> tempRanks = new TreeMap<>();
+        final boolean result = NodeUtil.findNodeIdsSorted(baseRank, inputIndex, tempRanks,
+                isReduceEdges, isParallel, stats, trace, false);
+
+        // dereference the found id's into node data.
+        NodeUtil.findNodeRanks(tempRanks, inputMap, targetRanks);
+
+        return result;
+    }
+
+    /**
+     * Find (build a map of) nodes by rank from node id's by rank, merging with any already in target.
+     * <p>
+     * Supports findNodesSorted() and its variants.
+     *
+     * @param input       Sorted node id's/ranks.
+     * @param inputMap    Nodes, by node id.
+     * @param targetRanks Target for sorted nodes/ranks.
+     */
+    private static void findNodeRanks(final Map<Long, Collection<String>> input,
+                                      final Map<String, NodeData> inputMap,
+                                      final Map<Long, Collection<NodeData>> targetRanks) {
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : input.entrySet()) {
+
+            Collection<NodeData> sortedNodes = targetRanks.get(rankItem.getKey());
+
+            if (sortedNodes == null) {
+
+                sortedNodes = new ArrayList<>();
+                targetRanks.put(rankItem.getKey(), sortedNodes);
+            }
+
+            for (final String nodeId : rankItem.getValue()) {
+
+                sortedNodes.add(inputMap.get(nodeId));
+            }
+        }
+    }
+
+    /**
+     * Find (build a map of) node id's and ranks sorted by dependency, as a whole or by component.
+     * <p>
+     * Supports findNodesSorted(), findNodeIdsSorted() and their parallel forms.
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks (used for layered runs; good default=0L).
+     * @param input         Index of nodes to examine.
+     * @param targetRanks   Target for sorted node id's/ranks.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param isParallel    True to sort weakly-connected components in parallel, false to sort
+     *                      input as a whole.
+     * @param stats         Target for sort statistics (may be null).
+     * @param trace         Target for rank trace (may be null; reset first).
+     * @param isClearFirst  True to clear target collections first, false otherwise.
+     * @return True if input valid and nodes found, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    private static boolean findNodeIdsSorted(final long baseRank,
+                                             final NodeIndex input,
+                                             final Map<Long, Collection<String>> targetRanks,
+                                             final boolean isReduceEdges,
+                                             final boolean isParallel,
+                                             final NodeSortStats stats,
+                                             final NodeRankTrace trace,
+                                             final boolean isClearFirst)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(targetRanks, true);
+
+        if (isClearFirst) {
+
+            targetRanks.clear();
+        }
+
+        // before/after relationships (edges)
+        final Map<String, Map<String, Long>> beforeNodes = new HashMap<>();
+        final Map<String, Map<String, Long>> afterNodes = new HashMap<>();
+        NodeUtil.findNodeOrders(input, true, beforeNodes, afterNodes, false);
+
+        // nodes we're checking
+        final Set<String> workNodes = new HashSet<>(input.getNodeIds());
+
+        // split into components, if called for
+        final List<NodeComponent> components = new ArrayList<>();
+        final Map<String, NodeComponent> nodeComponents = new HashMap<>();
+
+        final int componentCount = (isParallel
+                ? NodeUtil.findNodeComponents(workNodes, afterNodes, components, nodeComponents)
+                : NodeUtil.findNodeComponents(workNodes, components, nodeComponents));
+
+        if (stats != null) {
+
+            stats.addEdgeCount(NodeUtil.countNodeOrders(afterNodes));
+        }
+
+        // sort, rank each component
+        (isParallel ? components.parallelStream() : components.stream())
+                .forEach(item -> NodeUtil.sortNodeComponent(baseRank, item,
+                        beforeNodes, afterNodes, isReduceEdges, (trace != null)));
+
+        // merge components' sorted chunks back in visit order, for the
+        // same order as sorting all at once.
+        final List<String> allSortedNodeIds = new ArrayList<>(workNodes.size());
+
+        for (final String item : workNodes) {
+
+            nodeComponents.get(item).mergeNextChunk(allSortedNodeIds);
+        }
+
+        if (stats != null) {
+
+            stats.addNodeCount(allSortedNodeIds.size());
+            stats.addComponentCount(componentCount);
+
+            for (final NodeComponent item : components) {
+
+                stats.addRemovedEdgeCount(item.getRemovedEdgeCount());
+            }
+        }
+
+        if (trace != null) {
+
+            trace.reset(afterNodes);
+        }
+
+        // bucket id's by rank
+        for (final String nodeId : allSortedNodeIds) {
+
+            final NodeComponent component = nodeComponents.get(nodeId);
+            final long rank = component.getNodeRanks().get(nodeId);
+
+            if (trace != null) {
+
+                trace.addNode(nodeId, rank, component.getCriticalNodeIds().get(nodeId));
+            }
+
+            Collection<String> sortedNodeIds = targetRanks.get(rank);
+
+            if (sortedNodeIds == null) {
+
+                sortedNodeIds = new ArrayList<>();
+                targetRanks.put(rank, sortedNodeIds);
+            }
+
+            sortedNodeIds.add(nodeId);
+        }
+
+        return !allSortedNodeIds.isEmpty();
+    }
+
+    /**
+     * Find (build) a single component from all nodes.
+     * <p>
+     * Supports findNodesSorted().
+     *
+     * @param workNodes      Nodes to examine, in visit order.
+     * @param components     Target for components.
+     * @param nodeComponents Target for components, by node id.
+     * @return Number of components (always 1).
+     */
+    private static int findNodeComponents(final Collection<String> workNodes,
+                                          final Collection<NodeComponent> components,
+                                          final Map<String, NodeComponent> nodeComponents) {
+
+        DataUtil.checkNullObject(workNodes, true);
+        DataUtil.checkNullObject(components, true);
+        DataUtil.checkNullObject(nodeComponents, true);
+
+        final NodeComponent component = new NodeComponent();
+        component.getNodeIds().addAll(workNodes);
+        components.add(component);
+
+        for (final String item : workNodes) {
+
+            nodeComponents.put(item, component);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Find (build) weakly-connected components from nodes and edges.
+     * <p>
+     * Joins nodes across edges in a single union-find pass, then packs the components found into
+     * roughly COMPONENTS_PER_THREAD as many batches as available processors (largest first, each
+     * into the least-loaded batch), so many tiny components don't each become a separate task.
+     * <p>
+     * Supports findNodesSortedParallel().
+     *
+     * @param workNodes      Nodes to examine, in visit order.
+     * @param afterNodes     Map of nodes to other nodes they're supposed to follow (i.e.,
+     *                       edges).
+     * @param components     Target for (batched) components.
+     * @param nodeComponents Target for (batched) components, by node id.
+     * @return Number of weakly-connected components found.
+     */
+    private static int findNodeComponents(final Collection<String> workNodes,
+                                          final Map<String, Map<String, Long>> afterNodes,
+                                          final Collection<NodeComponent> components,
+                                          final Map<String, NodeComponent> nodeComponents) {
+
+        DataUtil.checkNullObject(workNodes, true);
+        DataUtil.checkNullObject(afterNodes, true);
+        DataUtil.checkNullObject(components, true);
+        DataUtil.checkNullObject(nodeComponents, true);
+
+        // index nodes
+        final Map<String, Integer> nodeIndexes = new HashMap<>();
+        final String[] indexedNodeIds = new String[workNodes.size()];
+
+        for (final String item : workNodes) {
+
+            indexedNodeIds[nodeIndexes.size()] = item;
+            nodeIndexes.put(item, nodeIndexes.size());
+        }
+
+        // union-find (path halving, union by size)
+        final int[] parents = new int[indexedNodeIds.length];
+        final int[] sizes = new int[indexedNodeIds.length];
+
+        for (int ctr = 0; ctr < parents.length; ctr++) {
+
+            parents[ctr] = ctr;
+            sizes[ctr] = 1;
+        }
+
+        for (final Map.Entry<String, Map<String, Long>> nodeItem : afterNodes.entrySet()) {
+
+            final Integer nodeIndex = nodeIndexes.get(nodeItem.getKey());
+
+            if (nodeIndex == null) {
+
+                continue;
+            }
+
+            for (final String rankKey : nodeItem.getValue().keySet()) {
+
+                final Integer rankIndex = nodeIndexes.get(rankKey);
+
+                if (rankIndex != null) {
+
+                    int nodeRoot = NodeUtil.findComponentRoot(parents, nodeIndex);
+                    int rankRoot = NodeUtil.findComponentRoot(parents, rankIndex);
+
+                    if (nodeRoot != rankRoot) {
+
+                        if (sizes[nodeRoot] < sizes[rankRoot]) {
+
+                            final int swapRoot = nodeRoot;
+                            nodeRoot = rankRoot;
+                            rankRoot = swapRoot;
+                        }
+
+                        parents[rankRoot] = nodeRoot;
+                        sizes[nodeRoot] += sizes[rankRoot];
+                    }
+                }
+            }
+        }
+
+        // collect component roots, largest first
+        final List<Integer> componentRoots = new ArrayList<>();
+
+        for (int ctr = 0; ctr < parents.length; ctr++) {
+
+            if (parents[ctr] == ctr) {
+
+                componentRoots.add(ctr);
+            }
+        }
+
+        componentRoots.sort((left, right) -> Integer.compare(sizes[right], sizes[left]));
+
+        // pack components into batches, each into the least-loaded batch
+        final int batchCount = Math.max(1, Math.min(componentRoots.size(),
+                Runtime.getRuntime().availableProcessors() * NodeUtil.COMPONENTS_PER_THREAD));
+
+        final NodeComponent[] batches = new NodeComponent[batchCount];
+        final int[] batchSizes = new int[batchCount];
+        final PriorityQueue<Integer> batchQueue = new PriorityQueue<>(batchCount,
+                (left, right) -> Integer.compare(batchSizes[left], batchSizes[right]));
+
+        for (int ctr = 0; ctr < batchCount; ctr++) {
+
+            batches[ctr] = new NodeComponent();
+            components.add(batches[ctr]);
+            batchQueue.add(ctr);
+        }
+
+        final NodeComponent[] rootBatches = new NodeComponent[parents.length];
+
+        for (final int rootIndex : componentRoots) {
+
+            final int batchIndex = batchQueue.poll();
+
+            rootBatches[rootIndex] = batches[batchIndex];
+            batchSizes[batchIndex] += sizes[rootIndex];
+            batchQueue.add(batchIndex);
+        }
+
+        // fill batches in visit order
+        for (int ctr = 0; ctr < indexedNodeIds.length; ctr++) {
+
+            final NodeComponent component = rootBatches[NodeUtil.findComponentRoot(parents, ctr)];
+
+            component.getNodeIds().add(indexedNodeIds[ctr]);
+            nodeComponents.put(indexedNodeIds[ctr], component);
+        }
+
+        return componentRoots.size();
+    }
+
+    /**
+     * Find a union-find root, halving the path along the way.
+     * <p>
+     * Supports findNodeComponents().
+     *
+     * @param parents   Parent indexes.
+     * @param nodeIndex Node index.
+     * @return Root index.
+     */
+    private static int findComponentRoot(final int[] parents,
+                                         final int nodeIndex) {
+
+        int result = nodeIndex;
+
+        while (parents[result] != result) {
+
+            parents[result] = parents[parents[result]];
+            result = parents[result];
+        }
+
+        return result;
+    }
+
+    /**
+     * Sort and rank a component.
+     * <p>
+     * Components share edge maps; each only reads (or, if reducing, updates) the entries for its
+     * own nodes, so components may be sorted concurrently.
+     * <p>
+     * Supports findNodesSorted().
+     *
+     * @param baseRank      Starting rank, offsetting node-to-node ranks.
+     * @param component     Component to sort (updated in place).
+     * @param beforeNodes   Keys are node id's, values are their before ranks with respect to
+     *                      other nodes.
+     * @param afterNodes    Keys are node id's, values are their after ranks with respect to
+     *                      other nodes.
+     * @param isReduceEdges True to remove redundant edges before ranking, false otherwise.
+     * @param isTraced      True to record each node's critical (rank-setting) node, false otherwise.
+     * @throws IllegalArgumentException thrown if cycle detected.
+     */
+    private static void sortNodeComponent(final long baseRank,
+                                          final NodeComponent component,
+                                          final Map<String, Map<String, Long>> beforeNodes,
+                                          final Map<String, Map<String, Long>> afterNodes,
+                                          final boolean isReduceEdges,
+                                          final boolean isTraced)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(component, true);
+        DataUtil.checkNullObject(beforeNodes, true);
+        DataUtil.checkNullObject(afterNodes, true);
+
+        final List<String> workNodeIds = component.getNodeIds();
+
+        // tracks done nodes (traversal finished)
+        final Set<String> doneNodes = new HashSet<>();
+
+        // tracks in-progress nodes (traversal in progress)
+        final LinkedHashSet<String> checkingNodes = new LinkedHashSet<>();
+
+        // destination for sorted results, w/chunk per visited node
+        final List<String> allSortedNodeIds = component.getSortedNodeIds();
+        final int[] chunkEnds = new int[workNodeIds.size()];
+
+        // iterate with traversal method (every node is visited once, so
+        // nothing can be left over)
+        for (int ctr = 0; ctr < workNodeIds.size(); ctr++) {
+
+            NodeUtil.sortNodeIds(workNodeIds.get(ctr), afterNodes, doneNodes, checkingNodes, allSortedNodeIds);
+            chunkEnds[ctr] = allSortedNodeIds.size();
+        }
+
+        component.setChunkEnds(chunkEnds);
+
+        // drop redundant edges, if called for
+        if (isReduceEdges) {
+
+            component.setRemovedEdgeCount(
+                    NodeUtil.reduceNodeOrders(allSortedNodeIds, beforeNodes, afterNodes));
+        }
+
+        // build aggregate ranks from base rank + individual, node-to-node
+        // ranks (viable after an order is established, above).
+        final Map<String, Long> visitedRanks = component.getNodeRanks();
+        final Map<String, String> criticalNodeIds = component.getCriticalNodeIds();
+
+        // iterate sorted nodes
+        for (final String currNodeId : allSortedNodeIds) {
+
+            // start with base rank for each node
+            long currRank = baseRank;
+            String criticalNodeId = null;
+
+            // get map of node-to-node ranks for current node id
+            final Map<String, Long> nodeRanks = afterNodes.get(currNodeId);
+
+            if (nodeRanks != null) {
+
+                // iterate edges to earlier nodes only (first one only gets
+                // base rank), looking up their cumulative ranks by id rather
+                // than scanning every preceding node.
+                for (final Map.Entry<String, Long> rankItem : nodeRanks.entrySet()) {
+
+                    final Long prevRank = visitedRanks.get(rankItem.getKey());
+
+                    if (prevRank != null) {
+
+                        // current rank equals earlier, cumulative rank +
+                        // node-to-node rank, maxed with itself (running total),
+                        // noting which earlier node set it.
+                        final long nextRank = prevRank + rankItem.getValue();
+
+                        if (nextRank > currRank) {
+
+                            currRank = nextRank;
+                            criticalNodeId = rankItem.getKey();
+                        }
+                    }
+                }
+            }
+
+            // tack on to the results
+            visitedRanks.put(currNodeId, currRank);
+
+            if (isTraced && (criticalNodeId != null)) {
+
+                criticalNodeIds.put(currNodeId, criticalNodeId);
+            }
+        }
+    }
+
+    /**
+     * Count edges in a node order map.
+     * <p>
+     * Supports findNodesSorted().
+     *
+     * @param input Keys are node id's, values are maps of related node id's to ranks.
+     * @return Edge count.
+     */
+    private static long countNodeOrders(final Map<String, Map<String, Long>> input) {
+
+        DataUtil.checkNullObject(input, true);
+
+        long result = 0L;
+
+        for (final Map<String, Long> nodeItem : input.values()) {
+
+            result += nodeItem.size();
+        }
+
+        return result;
+    }
+
+    /**
+     * Transitively reduce node order maps, given a sort order.
+     * <p>
+     * Removes each edge (x->y, rank r) for which another path from x to y exists with a combined
+     * rank of at least r, since y's rank is already pushed at least that far by the other path.
+     * Edges whose rank would raise y's rank are kept, so ranks built from the result are unchanged.
+     * <p>
+     * For each node, searches back from its "after" nodes, bounded by the earliest of them in the
+     * sort order (no path between them can leave that window), and finds the longest indirect path
+     * from each. Cost is proportional to those windows, so it's cheap for type-dense graphs with
+     * short spans and up to quadratic for graphs where every node spans most of the order.
+     * <p>
+     * Supports findNodesSorted().
+     *
+     * @param sortedNodeIds Node id's, in sort order.
+     * @param beforeNodes   Keys are node id's, values are their before ranks with respect to
+     *                      other nodes (updated in place).
+     * @param afterNodes    Keys are node id's, values are their after ranks with respect to
+     *                      other nodes (updated in place).
+     * @return Number of edges removed.
+     */
+    private static long reduceNodeOrders(final List<String> sortedNodeIds,
+                                         final Map<String, Map<String, Long>> beforeNodes,
+                                         final Map<String, Map<String, Long>> afterNodes) {
+
+        DataUtil.checkNullObject(sortedNodeIds, true);
+        DataUtil.checkNullObject(beforeNodes, true);
+        DataUtil.checkNullObject(afterNodes, true);
+
+        long result = 0L;
+
+        // index sort order
+        final Map<String, Integer> nodePositions = new HashMap<>();
+
+        for (int ctr = 0; ctr < sortedNodeIds.size(); ctr++) {
+
+            nodePositions.put(sortedNodeIds.get(ctr), ctr);
+        }
+
+        final Comparator<String> positionComparator =
+                (left, right) -> Integer.compare(nodePositions.get(right), nodePositions.get(left));
+
+        // working sets, re-used per node
+        final Set<String> windowNodes = new HashSet<>();
+        final List<String> windowNodeIds = new ArrayList<>();
+        final Deque<String> pendingNodeIds = new ArrayDeque<>();
+        final Map<String, Long> indirectRanks = new HashMap<>();
+
+        for (final String currNodeId : sortedNodeIds) {
+
+            final Map<String, Long> nodeRanks = afterNodes.get(currNodeId);
+
+            // any indirect path passes through another "after" node, so
+            // we need at least two.
+            if ((nodeRanks == null) || (nodeRanks.size() < 2)) {
+
+                continue;
+            }
+
+            // earliest "after" node bounds the search window
+            int minPosition = Integer.MAX_VALUE;
+
+            for (final String rankKey : nodeRanks.keySet()) {
+
+                minPosition = Math.min(minPosition, nodePositions.get(rankKey));
+            }
+
+            windowNodes.clear();
+            windowNodeIds.clear();
+            pendingNodeIds.clear();
+            indirectRanks.clear();
+
+            // collect window, searching back from "after" nodes
+            for (final String rankKey : nodeRanks.keySet()) {
+
+                if (windowNodes.add(rankKey)) {
+
+                    pendingNodeIds.push(rankKey);
+                }
+            }
+
+            while (!pendingNodeIds.isEmpty()) {
+
+                final String windowNodeId = pendingNodeIds.pop();
+                windowNodeIds.add(windowNodeId);
+
+                for (final String prevNodeId : afterNodes.get(windowNodeId).keySet()) {
+
+                    if ((nodePositions.get(prevNodeId) >= minPosition)
+                            && windowNodes.add(prevNodeId)) {
+
+                        pendingNodeIds.push(prevNodeId);
+                    }
+                }
+            }
+
+            // latest first, so every path onward from a node is known
+            // before that node is pushed back to its own "after" nodes.
+            windowNodeIds.sort(positionComparator);
+
+            for (final String windowNodeId : windowNodeIds) {
+
+                // longest path from this node to the current one, direct or not
+                final Long directRank = nodeRanks.get(windowNodeId);
+                final Long indirectRank = indirectRanks.get(windowNodeId);
+
+                final long pathRank = ((directRank == null) ? indirectRank
+                        : ((indirectRank == null) ? directRank : Math.max(directRank, indirectRank)));
+
+                for (final Map.Entry<String, Long> rankItem : afterNodes.get(windowNodeId).entrySet()) {
+
+                    if (windowNodes.contains(rankItem.getKey())) {
+
+                        NodeUtil.mergeNodeRanks(rankItem.getKey(), rankItem.getValue() + pathRank, indirectRanks);
+                    }
+                }
+            }
+
+            // drop edges an indirect path covers
+            final Iterator<Map.Entry<String, Long>> rankIter = nodeRanks.entrySet().iterator();
+
+            while (rankIter.hasNext()) {
+
+                final Map.Entry<String, Long> rankItem = rankIter.next();
+                final Long indirectRank = indirectRanks.get(rankItem.getKey());
+
+                if ((indirectRank != null) && (indirectRank >= rankItem.getValue())) {
+
+                    rankIter.remove();
+
+                    final Map<String, Long> reverseRanks = beforeNodes.get(rankItem.getKey());
+
+                    if (reverseRanks != null) {
+
+                        reverseRanks.remove(currNodeId);
+                    }
+
+                    result++;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find (build a list of) node id's sorted by dependency, without ranking.
+     * <p>
+     * Supports NodeShardWorker.
+     *
+     * @param workNodeIds  Node id's to sort, in visit order.
+     * @param afterNodes   Map of nodes to other nodes they're supposed to follow (i.e.,
+     *                     edges).
+     * @param target       Target for sorted node id's.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if any node id's found, false otherwise.
+     * @throws IllegalArgumentException Thrown if start order cycle detected.
+     */
+    static boolean findNodeIdOrder(final Collection<String> workNodeIds,
+                                   final Map<String, Map<String, Long>> afterNodes,
+                                   final List<String> target,
+                                   final boolean isClearFirst)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(workNodeIds, true);
+        DataUtil.checkNullObject(afterNodes, true);
+        DataUtil.checkNullObject(target, true);
+
+        if (isClearFirst) {
+
+            target.clear();
+        }
+
+        final Set<String> doneNodes = new HashSet<>();
+        final LinkedHashSet<String> checkingNodes = new LinkedHashSet<>();
+
+        for (final String item : workNodeIds) {
+
+            NodeUtil.sortNodeIds(item, afterNodes, doneNodes, checkingNodes, target);
+        }
+
+        return !workNodeIds.isEmpty();
+    }
+
+    /**
+     * Iterative node topological sort method (re: Wikipedia "topological sort"
+     * pseudocode -- Cormen, Trajan, et al.).
+     * <p>
+     * Depth-first search with an explicit stack in place of recursion, so long
+     * dependency chains don't exhaust the thread stack. Visit order and output
+     * are the same as the recursive form.
+     * <p>
+     * Supports findNodesSorted().
+     *
+     * @param startNodeId   Node to traverse.
+     * @param afterNodes    Map of nodes to other nodes they're supposed to follow (i.e.,
+     *                      edges).
+     * @param doneNodes     Set of nodes completely evaluated.
+     * @param checkingNodes Set of nodes in evlauation.
+     * @throws IllegalArgumentException Thrown if start order cycle detected.
+     */
+    private static void sortNodeIds(final String startNodeId,
+                                    final Map<String, Map<String, Long>> afterNodes,
+                                    final Set<String> doneNodes,
+                                    final Set<String> checkingNodes,
+                                    final Collection<String> sortedNodeIds)
+            throws IllegalArgumentException {
+
+        DataUtil.checkNullObject(startNodeId, true);
+        DataUtil.checkNullObject(afterNodes, true);
+        DataUtil.checkNullObject(doneNodes, true);
+        DataUtil.checkNullObject(checkingNodes, true);
+        DataUtil.checkNullObject(sortedNodeIds, true);
+
+        // nodes being traversed and their remaining edges, in step
+        final Deque<String> nodeStack = new ArrayDeque<>();
+        final Deque<Iterator<String>> edgeStack = new ArrayDeque<>();
+
+        NodeUtil.pushNodeId(startNodeId, afterNodes, doneNodes, checkingNodes, nodeStack, edgeStack);
+
+        while (!nodeStack.isEmpty()) {
+
+            final Iterator<String> edgeIter = edgeStack.peek();
+
+            if (edgeIter.hasNext()) {
+
+                // traverse next edge from this node to another ("after" relationship)
+                NodeUtil.pushNodeId(edgeIter.next(), afterNodes, doneNodes, checkingNodes, nodeStack, edgeStack);
+
+            } else {
+
+                final String currNodeId = nodeStack.pop();
+                edgeStack.pop();
+
+                // remove cycle check
+                checkingNodes.remove(currNodeId);
+
+                // mark as done
+                doneNodes.add(currNodeId);
+
+                // add to end of result (depth-first search, so by now deeper levels
+                // have been added)
+                sortedNodeIds.add(currNodeId);
+            }
+        }
+    }
+
+    /**
+     * Start traversal of a node, if not already done with.
+     * <p>
+     * Supports sortNodeIds().
+     *
+     * @param currNodeId    Node to traverse.
+     * @param afterNodes    Map of nodes to other nodes they're supposed to follow (i.e.,
+     *                      edges).
+     * @param doneNodes     Set of nodes completely evaluated.
+     * @param checkingNodes Set of nodes in evlauation.
+     * @param nodeStack     Stack of nodes in evaluation.
+     * @param edgeStack     Stack of remaining edges for nodes in evaluation.
+     * @throws IllegalArgumentException Thrown if start order cycle detected.
+     */
+    private static void pushNodeId(final String currNodeId,
+                                   final Map<String, Map<String, Long>> afterNodes,
+                                   final Set<String> doneNodes,
+                                   final Set<String> checkingNodes,
+                                   final Deque<String> nodeStack,
+                                   final Deque<Iterator<String>> edgeStack)
+            throws IllegalArgumentException {
+
+        // if node is in the check set, we've hit a cycle (not a DAG)
+        if (checkingNodes.contains(currNodeId)) {
+
+            throw new IllegalArgumentException("node order cycle - " + checkingNodes + " <-> " + currNodeId);
+
+            // if node is not done with, traverse
+        } else if (!doneNodes.contains(currNodeId)) {
+
+            // track to detect cycles
+            checkingNodes.add(currNodeId);
+
+            // edges from this node to others ("after" relationships)
+            final Map<String, Long> nodeList = afterNodes.get(currNodeId);
 
-            // add to end of result (depth-first search, so by now deeper levels
-            // have been added)
-            sortedNodeIds.add(currNodeId);
+            nodeStack.push(currNodeId);
+            edgeStack.push(((nodeList == null) ? Collections.<String>emptySet() : nodeList.keySet()).iterator());
         }
     }
 }
@@ -0,0 +1,477 @@
+package com.opsysinc.example.sort.topological;
+
+import java.util.*;
+
+/**
+ * Node verify utilities.
+ * <p>
+ * Checks a proposed order or rank map (e.g., from a cache or a remote peer) against the
+ * before/after constraints of the nodes it's meant to sort, without sorting: one pass over nodes
+ * and their type-expanded edges, plus an in-degree (Kahn) pass tracked by type (see
+ * NodeRankIterator) for cycles, i.e., O(V+E), with no edge maps built. Cheap enough to replace a
+ * re-sort (and compare) when a known result only needs confirming.
+ * <p>
+ * Violations are reported as NodeOrderViolation's: nodes missing, unknown or proposed twice, then
+ * edges broken (one per pair of nodes, at their node-to-node rank; those on a cycle as order
+ * violations, even where ranks alone would pass, e.g., with zero node-to-node ranks), then
+ * (optionally) ranks above what's needed. Edges to/from nodes missing or unknown aren't checked.
+ */
+public final class NodeVerifyUtil {
+
+    /**
+     * Private ctor for util classes.
+     */
+    private NodeVerifyUtil() {
+
+    }
+
+    /**
+     * Find violations of a proposed order.
+     * <p>
+     * An order is valid if it holds every node once, each after every node it follows (i.e.,
+     * as findNodesSorted() output, flattened). Ranks aren't checked.
+     *
+     * @param input        Collection of nodes to sort.
+     * @param proposed     Proposed order.
+     * @param target       Target violations, in the order found.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if input valid and any violations found, false otherwise (i.e., proposed
+     * order valid).
+     */
+    public static boolean findOrderViolations(final Collection<NodeData> input,
+                                              final List<NodeData> proposed,
+                                              final List<NodeOrderViolation> target,
+                                              final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(proposed, true);
+
+        final NodeIndex inputIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(input, inputIndex, false);
+
+        final List<String> proposedNodeIds = new ArrayList<>(proposed.size());
+
+        for (final NodeData nodeItem : proposed) {
+
+            proposedNodeIds.add(nodeItem.getNodeId());
+        }
+
+        return NodeVerifyUtil.findOrderViolations(inputIndex, proposedNodeIds, target, isClearFirst);
+    }
+
+    /**
+     * Find violations of a proposed order, by node id.
+     * <p>
+     * See findOrderViolations(Collection, List, List, boolean) for details.
+     *
+     * @param input        Index of nodes to sort.
+     * @param proposed     Proposed order, by node id.
+     * @param target       Target violations, in the order found.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if input valid and any violations found, false otherwise (i.e., proposed
+     * order valid).
+     */
+    public static boolean findOrderViolations(final NodeIndex input,
+                                              final List<String> proposed,
+                                              final List<NodeOrderViolation> target,
+                                              final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(proposed, true);
+        DataUtil.checkNullObject(target, true);
+
+        if (isClearFirst) {
+
+            target.clear();
+        }
+
+        final int prevCount = target.size();
+
+        final long[] places = new long[input.getNodeIndexLimit()];
+        final boolean[] isPlaced = new boolean[places.length];
+
+        long position = 0L;
+
+        for (final String nodeId : proposed) {
+
+            NodeVerifyUtil.placeNode(input, nodeId, position++, places, isPlaced, target);
+        }
+
+        NodeVerifyUtil.checkNodes(0L, input, false, false, places, isPlaced, target);
+
+        return (target.size() > prevCount);
+    }
+
+    /**
+     * Find violations of a proposed rank map.
+     * <p>
+     * A rank map is valid if it holds every node once, none ranked below the starting rank, and
+     * each ranked at least as high as every node it follows plus their node-to-node rank. With
+     * exact ranks, each must also rank no higher than that (i.e., as findNodesSorted() output,
+     * order within a rank aside).
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks.
+     * @param input        Collection of nodes to sort.
+     * @param proposed     Proposed rank map (nodes, by rank).
+     * @param isExactRanks True to also report ranks above what's needed, false otherwise.
+     * @param target       Target violations, in the order found.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if input valid and any violations found, false otherwise (i.e., proposed
+     * rank map valid).
+     */
+    public static boolean findRankViolations(final long baseRank,
+                                             final Collection<NodeData> input,
+                                             final Map<Long, Collection<NodeData>> proposed,
+                                             final boolean isExactRanks,
+                                             final List<NodeOrderViolation> target,
+                                             final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(proposed, true);
+
+        final NodeIndex inputIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(input, inputIndex, false);
+
+        final Map<Long, Collection<String>> proposedNodeIds = new LinkedHashMap<>();
+
+        for (final Map.Entry<Long, Collection<NodeData>> rankItem : proposed.entrySet()) {
+
+            final List<String> rankNodeIds = new ArrayList<>(rankItem.getValue().size());
+            proposedNodeIds.put(rankItem.getKey(), rankNodeIds);
+
+            for (final NodeData nodeItem : rankItem.getValue()) {
+
+                rankNodeIds.add(nodeItem.getNodeId());
+            }
+        }
+
+        return NodeVerifyUtil.findRankViolations(baseRank, inputIndex, proposedNodeIds,
+                isExactRanks, target, isClearFirst);
+    }
+
+    /**
+     * Find violations of a proposed rank map, by node id.
+     * <p>
+     * See findRankViolations(long, Collection, Map, boolean, List, boolean) for details.
+     *
+     * @param baseRank     Starting rank, offsetting node-to-node ranks.
+     * @param input        Index of nodes to sort.
+     * @param proposed     Proposed rank map (node id's, by rank).
+     * @param isExactRanks True to also report ranks above what's needed, false otherwise.
+     * @param target       Target violations, in the order found.
+     * @param isClearFirst True to clear target first, false otherwise.
+     * @return True if input valid and any violations found, false otherwise (i.e., proposed
+     * rank map valid).
+     */
+    public static boolean findRankViolations(final long baseRank,
+                                             final NodeIndex input,
+                                             final Map<Long, Collection<String>> proposed,
+                                             final boolean isExactRanks,
+                                             final List<NodeOrderViolation> target,
+                                             final boolean isClearFirst) {
+
+        DataUtil.checkNullObject(input, true);
+        DataUtil.checkNullObject(proposed, true);
+        DataUtil.checkNullObject(target, true);
+
+        if (isClearFirst) {
+
+            target.clear();
+        }
+
+        final int prevCount = target.size();
+
+        final long[] places = new long[input.getNodeIndexLimit()];
+        final boolean[] isPlaced = new boolean[places.length];
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : proposed.entrySet()) {
+
+            for (final String nodeId : rankItem.getValue()) {
+
+                NodeVerifyUtil.placeNode(input, nodeId, rankItem.getKey(), places, isPlaced, target);
+            }
+        }
+
+        NodeVerifyUtil.checkNodes(baseRank, input, true, isExactRanks, places, isPlaced, target);
+
+        return (target.size() > prevCount);
+    }
+
+    /**
+     * Places a proposed node, noting it if unknown or already placed.
+     *
+     * @param input    Index of nodes to sort.
+     * @param nodeId   Node id.
+     * @param place    Proposed rank (or position).
+     * @param places   Proposed ranks (or positions), by node index.
+     * @param isPlaced Whether placed, by node index.
+     * @param target   Target violations.
+     */
+    private static void placeNode(final NodeIndex input,
+                                  final String nodeId,
+                                  final long place,
+                                  final long[] places,
+                                  final boolean[] isPlaced,
+                                  final List<NodeOrderViolation> target) {
+
+        final int nodeIndex = input.getNodeIndex(nodeId);
+
+        if (nodeIndex < 0) {
+
+            target.add(new NodeOrderViolation(NodeOrderViolation.Kind.UNKNOWN_NODE,
+                    nodeId, null, place, place));
+
+        } else if (isPlaced[nodeIndex]) {
+
+            target.add(new NodeOrderViolation(NodeOrderViolation.Kind.DUPLICATE_NODE,
+                    nodeId, null, place, places[nodeIndex]));
+
+        } else {
+
+            places[nodeIndex] = place;
+            isPlaced[nodeIndex] = true;
+        }
+    }
+
+    /**
+     * Checks placed nodes against their before/after types.
+     *
+     * @param baseRank     Starting rank (ranks only).
+     * @param input        Index of nodes to sort.
+     * @param isRanks      True if places are ranks, false if positions.
+     * @param isExactRanks True to also report ranks above what's needed, false otherwise.
+     * @param places       Proposed ranks (or positions), by node index.
+     * @param isPlaced     Whether placed, by node index.
+     * @param target       Target violations.
+     */
+    private static void checkNodes(final long baseRank,
+                                   final NodeIndex input,
+                                   final boolean isRanks,
+                                   final boolean isExactRanks,
+                                   final long[] places,
+                                   final boolean[] isPlaced,
+                                   final List<NodeOrderViolation> target) {
+
+        final int indexLimit = input.getNodeIndexLimit();
+
+        // highest rank each node needs (exact ranks only)
+        final long[] requiredPlaces = (isExactRanks ? new long[indexLimit] : null);
+
+        if (requiredPlaces != null) {
+
+            Arrays.fill(requiredPlaces, baseRank);
+        }
+
+        // edges broken, by pair of node indexes (the same pair may come from several types)
+        final Map<Long, NodeOrderViolation> edgeViolations = new LinkedHashMap<>();
+
+        for (int nodeIndex = 0; nodeIndex < indexLimit; nodeIndex++) {
+
+            final String nodeId = input.getNodeId(nodeIndex);
+
+            if (nodeId == null) {
+
+                continue;
+            }
+
+            if (!isPlaced[nodeIndex]) {
+
+                target.add(new NodeOrderViolation(NodeOrderViolation.Kind.MISSING_NODE,
+                        nodeId, null, 0L, 0L));
+
+                continue;
+            }
+
+            if (isRanks && (places[nodeIndex] < baseRank)) {
+
+                target.add(new NodeOrderViolation(NodeOrderViolation.Kind.RANK,
+                        nodeId, null, places[nodeIndex], baseRank));
+            }
+
+            // follows nodes of its after types
+            for (final Map.Entry<String, Long> typeItem : input.getAfterNodeTypeMap(nodeIndex).entrySet()) {
+
+                final NodeIdSet typeNodes = input.getTypeNodeIdSet(typeItem.getKey());
+
+                if (typeNodes != null) {
+
+                    final PrimitiveIterator.OfInt typeIter = typeNodes.iterator();
+
+                    while (typeIter.hasNext()) {
+
+                        NodeVerifyUtil.checkEdge(input, typeIter.nextInt(), nodeIndex, typeItem.getValue(),
+                                isRanks, places, isPlaced, requiredPlaces, edgeViolations);
+                    }
+                }
+            }
+
+            // followed by nodes of its before types
+            for (final Map.Entry<String, Long> typeItem : input.getBeforeNodeTypeMap(nodeIndex).entrySet()) {
+
+                final NodeIdSet typeNodes = input.getTypeNodeIdSet(typeItem.getKey());
+
+                if (typeNodes != null) {
+
+                    final PrimitiveIterator.OfInt typeIter = typeNodes.iterator();
+
+                    while (typeIter.hasNext()) {
+
+                        NodeVerifyUtil.checkEdge(input, nodeIndex, typeIter.nextInt(), typeItem.getValue(),
+                                isRanks, places, isPlaced, requiredPlaces, edgeViolations);
+                    }
+                }
+            }
+        }
+
+        // ranks alone may pass a cycle (e.g., zero node-to-node ranks), so check order, too
+        final List<Integer> cycleIndexes = new ArrayList<>();
+
+        if (new NodeRankIterator(baseRank, input).findCycle(cycleIndexes)) {
+
+            for (int ctr = 0; ctr < cycleIndexes.size(); ctr++) {
+
+                NodeVerifyUtil.checkCycleEdge(input, cycleIndexes.get((ctr + 1) % cycleIndexes.size()),
+                        cycleIndexes.get(ctr), isRanks, places, isPlaced, edgeViolations);
+            }
+        }
+
+        target.addAll(edgeViolations.values());
+
+        if (requiredPlaces != null) {
+
+            for (int nodeIndex = 0; nodeIndex < indexLimit; nodeIndex++) {
+
+                if ((input.getNodeId(nodeIndex) != null)
+                        && isPlaced[nodeIndex]
+                        && (places[nodeIndex] > requiredPlaces[nodeIndex])) {
+
+                    target.add(new NodeOrderViolation(NodeOrderViolation.Kind.EXCESS_RANK,
+                            input.getNodeId(nodeIndex), null, places[nodeIndex], requiredPlaces[nodeIndex]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks an edge (one node following another).
+     *
+     * @param input          Index of nodes to sort.
+     * @param prevIndex      Node index of node followed.
+     * @param nodeIndex      Node index of node following.
+     * @param nodeRank       Node-to-node rank.
+     * @param isRanks        True if places are ranks, false if positions.
+     * @param places         Proposed ranks (or positions), by node index.
+     * @param isPlaced       Whether placed, by node index.
+     * @param requiredPlaces Highest rank each node needs, by node index (null if not tracked).
+     * @param target         Target edge violations, by pair of node indexes.
+     */
+    private static void checkEdge(final NodeIndex input,
+                                  final int prevIndex,
+                                  final int nodeIndex,
+                                  final long nodeRank,
+                                  final boolean isRanks,
+                                  final long[] places,
+                                  final boolean[] isPlaced,
+                                  final long[] requiredPlaces,
+                                  final Map<Long, NodeOrderViolation> target) {
+
+        if (!isPlaced[prevIndex] || !isPlaced[nodeIndex]) {
+
+            return;
+        }
+
+        final long requiredPlace = places[prevIndex] + (isRanks ? nodeRank : 1L);
+
+        if (requiredPlaces != null) {
+
+            requiredPlaces[nodeIndex] = Math.max(requiredPlaces[nodeIndex], requiredPlace);
+        }
+
+        // a node following itself is a cycle, whatever its places
+        final boolean isCycle = (prevIndex == nodeIndex);
+
+        if (isCycle || (places[nodeIndex] < requiredPlace)) {
+
+            final Long pairKey = ((((long) prevIndex) << Integer.SIZE) | nodeIndex);
+            final NodeOrderViolation prevViolation = target.get(pairKey);
+
+            if ((prevViolation == null) || (prevViolation.getRequired() < requiredPlace)) {
+
+                target.put(pairKey, new NodeOrderViolation(
+                        ((isCycle || !isRanks) ? NodeOrderViolation.Kind.ORDER : NodeOrderViolation.Kind.RANK),
+                        input.getNodeId(nodeIndex), input.getNodeId(prevIndex),
+                        places[nodeIndex], requiredPlace));
+            }
+        }
+    }
+
+    /**
+     * Checks an edge on a cycle (one node following another), which is broken whatever its
+     * places.
+     *
+     * @param input     Index of nodes to sort.
+     * @param prevIndex Node index of node followed.
+     * @param nodeIndex Node index of node following.
+     * @param isRanks   True if places are ranks, false if positions.
+     * @param places    Proposed ranks (or positions), by node index.
+     * @param isPlaced  Whether placed, by node index.
+     * @param target    Target edge violations, by pair of node indexes.
+     */
+    private static void checkCycleEdge(final NodeIndex input,
+                                       final int prevIndex,
+                                       final int nodeIndex,
+                                       final boolean isRanks,
+                                       final long[] places,
+                                       final boolean[] isPlaced,
+                                       final Map<Long, NodeOrderViolation> target) {
+
+        if (!isPlaced[prevIndex] || !isPlaced[nodeIndex]) {
+
+            return;
+        }
+
+        final long requiredPlace = places[prevIndex]
+                + (isRanks ? NodeVerifyUtil.findEdgeRank(input, prevIndex, nodeIndex) : 1L);
+
+        // replaces any rank violation for the same pair
+        target.put(((((long) prevIndex) << Integer.SIZE) | nodeIndex), new NodeOrderViolation(
+                NodeOrderViolation.Kind.ORDER, input.getNodeId(nodeIndex), input.getNodeId(prevIndex),
+                places[nodeIndex], requiredPlace));
+    }
+
+    /**
+     * Find the node-to-node rank of an edge, i.e., the highest among the before/after types
+     * relating the pair.
+     *
+     * @param input     Index of nodes to sort.
+     * @param prevIndex Node index of node followed.
+     * @param nodeIndex Node index of node following.
+     * @return Node-to-node rank.
+     */
+    private static long findEdgeRank(final NodeIndex input,
+                                     final int prevIndex,
+                                     final int nodeIndex) {
+
+        long result = Long.MIN_VALUE;
+
+        for (final Map.Entry<String, Long> typeItem : input.getAfterNodeTypeMap(nodeIndex).entrySet()) {
+
+            final NodeIdSet typeNodes = input.getTypeNodeIdSet(typeItem.getKey());
+
+            if ((typeNodes != null) && typeNodes.contains(prevIndex)) {
+
+                result = Math.max(result, typeItem.getValue());
+            }
+        }
+
+        for (final Map.Entry<String, Long> typeItem : input.getBeforeNodeTypeMap(prevIndex).entrySet()) {
+
+            final NodeIdSet typeNodes = input.getTypeNodeIdSet(typeItem.getKey());
+
+            if ((typeNodes != null) && typeNodes.contains(nodeIndex)) {
+
+                result = Math.max(result, typeItem.getValue());
+            }
+        }
+
+        return result;
+    }
+}
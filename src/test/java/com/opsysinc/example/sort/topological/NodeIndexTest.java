@@ -0,0 +1,206 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Node index test.
+ */
+public class NodeIndexTest {
+
+    /**
+     * Builds a chain node.
+     *
+     * @param nodeIndex Chain position.
+     * @return Node.
+     */
+    private static NodeData buildChainNode(final int nodeIndex) {
+
+        final NodeData result = new NodeData("Node" + nodeIndex);
+        result.getNodeTypeSet().add("type" + nodeIndex);
+        result.getNodeTypeSet().add("chain");
+
+        if (nodeIndex > 0) {
+
+            result.getAfterNodeTypeMap().put("type" + (nodeIndex - 1), 1L);
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testIncrementalIndex() {
+
+        final List<NodeData> inputList = new ArrayList<>();
+        final NodeIndex index = new NodeIndex();
+
+        for (int ctr = 0; ctr < 5; ctr++) {
+
+            final NodeData node = NodeIndexTest.buildChainNode(ctr);
+            inputList.add(node);
+
+            NodeUtil.findNodeIndex(Collections.singletonList(node), index, false);
+        }
+
+        // drop the middle, re-add it (w/different rank)
+        assertEquals(true, index.removeNode("Node2"));
+        assertEquals(false, index.removeNode("Node2"));
+        assertEquals(4, index.getTypeNodes("chain").size());
+        assertEquals(null, index.getTypeNodes("type2"));
+
+        inputList.get(2).getAfterNodeTypeMap().put("type1", 3L);
+        NodeUtil.findNodeIndex(Collections.singletonList(inputList.get(2)), index, false);
+
+        final Map<Long, Collection<String>> incrementalMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, incrementalMap, false, null, false);
+
+        final NodeIndex rebuiltIndex = new NodeIndex();
+        NodeUtil.findNodeIndex(inputList, rebuiltIndex, false);
+
+        final Map<Long, Collection<String>> rebuiltMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, rebuiltIndex, rebuiltMap, false, null, false);
+
+        final String incrementalMapText = incrementalMap.toString();
+        assertEquals("{0=[Node0], 1=[Node1], 4=[Node2], 5=[Node3], 6=[Node4]}", incrementalMapText);
+        assertEquals(rebuiltMap.toString(), incrementalMapText);
+        assertEquals(5, index.getTypeNodes("chain").size());
+        assertEquals(6, index.getTypeCount());
+
+        System.out.println("testIncrementalIndex() = " + incrementalMapText);
+    }
+
+    /**
+     * Find (build a map of) ranks, by node id, from sorted node id's/ranks.
+     *
+     * @param input Sorted node id's/ranks.
+     * @return Ranks, by node id.
+     */
+    private static Map<String, Long> findNodeRanks(final Map<Long, Collection<String>> input) {
+
+        final Map<String, Long> result = new TreeMap<>();
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : input.entrySet()) {
+
+            for (final String nodeId : rankItem.getValue()) {
+
+                result.put(nodeId, rankItem.getKey());
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testTypeHierarchy() {
+
+        final NodeTypeHierarchy hierarchy = new NodeTypeHierarchy();
+
+        hierarchy.addTypePath("service.db.postgres", ".");
+        hierarchy.addTypePath("service.cache", ".");
+
+        assertEquals("[service.db, service]", hierarchy.getAncestorTypes("service.db.postgres").toString());
+        assertEquals(new HashSet<>(Arrays.asList("service.db", "service.db.postgres", "service.cache")),
+                hierarchy.getDescendantTypes("service"));
+
+        // nodes carry only their most specific types
+        final NodeIndex index = new NodeIndex();
+        index.setTypeHierarchy(hierarchy);
+
+        index.addNodeType("Postgres", "service.db.postgres");
+        index.addNodeType("Redis", "service.cache");
+        index.addAfterNodeType("App", "service", 1L);
+        index.addAfterNodeType("Migrate", "service.db", 1L);
+        index.addAfterNodeType("Smoke", "app", 1L);
+
+        final Map<Long, Collection<String>> sortedMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, sortedMap, false, null, false);
+
+        assertEquals("{App=1, Migrate=1, Postgres=0, Redis=0, Smoke=0}",
+                NodeIndexTest.findNodeRanks(sortedMap).toString());
+
+        // resolved types kept up to date as nodes come and go
+        index.addNodeType("App", "app");
+        index.addNodeType("Mysql", "service.db");
+        index.removeNode("Redis");
+
+        assertEquals("[Postgres, Mysql]", new ArrayList<>(index.getTypeNodes("service")).toString());
+
+        NodeUtil.findNodeIdsSorted(0L, index, sortedMap, false, null, true);
+        assertEquals("{App=1, Migrate=1, Mysql=0, Postgres=0, Smoke=2}",
+                NodeIndexTest.findNodeRanks(sortedMap).toString());
+
+        // ... and as the hierarchy changes
+        hierarchy.addParentType("app", "service");
+
+        try {
+
+            NodeUtil.findNodeIdsSorted(0L, index, sortedMap, false, null, true);
+            fail("cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            // expected (App follows service, now incl. itself)
+        }
+
+        try {
+
+            hierarchy.addParentType("service", "service.db.postgres");
+            fail("hierarchy cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            assertEquals("type hierarchy cycle - service <-> service.db.postgres", ex.getMessage());
+        }
+
+        System.out.println("testTypeHierarchy() = " + hierarchy.getDescendantTypes("service"));
+    }
+
+    @Test
+    public void testNodeIdSet() {
+
+        final NodeIdSet idSet = new NodeIdSet();
+
+        // sparse stays an array
+        idSet.add(1000);
+        idSet.add(10);
+        idSet.add(500);
+        assertEquals(false, idSet.add(500));
+        assertEquals(false, idSet.isBitmap());
+
+        // dense goes to a bitmap
+        for (int ctr = 0; ctr < 200; ctr++) {
+
+            idSet.add(ctr);
+        }
+
+        assertEquals(true, idSet.isBitmap());
+        assertEquals(202, idSet.size());
+
+        // emptied out goes back to an array
+        for (int ctr = 0; ctr < 200; ctr++) {
+
+            idSet.remove(ctr);
+        }
+
+        assertEquals(false, idSet.isBitmap());
+        assertEquals(false, idSet.contains(10));
+        assertEquals(true, idSet.contains(1000));
+
+        final List<Integer> idList = new ArrayList<>();
+        final PrimitiveIterator.OfInt idIter = idSet.iterator();
+
+        while (idIter.hasNext()) {
+
+            idList.add(idIter.nextInt());
+        }
+
+        final String idListText = idList.toString();
+        assertEquals("[500, 1000]", idListText);
+
+        System.out.println("testNodeIdSet() = " + idListText);
+    }
+}
@@ -0,0 +1,184 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Node load utilities test.
+ */
+public class NodeLoadUtilTest {
+
+    /**
+     * Diamond topology (see NodeUtilTest) as CSV records.
+     */
+    private static final String DIAMOND_CSV = ""
+            + "# diamond\n"
+            + "type,Node1,foo\n"
+            + "type,Node1,bar\n"
+            + "after,Node1,burp,1\n"
+            + "before,Node1,derp\n"
+            + "\n"
+            + "type,Node2,itty\r\n"
+            + "type,Node2,bitty\r\n"
+            + "after,Node2,foo,1\r\n"
+            + "type, Node3 ,\"zip\"\n"
+            + "type,Node3,bitty\n"
+            + "after,Node3,bar,1\n"
+            + "before,Node3,derp,1\n"
+            + "type,Node4,derp\n"
+            + "type,Node4,itty\n"
+            + "after,Node4,bitty,1\n"
+            + "before,Node4,boop,1";
+
+    /**
+     * Diamond topology (see NodeUtilTest) as line-delimited JSON records.
+     */
+    private static final String DIAMOND_JSON = ""
+            + "{\"kind\": \"type\", \"node\": \"Node1\", \"type\": \"foo\"}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node1\", \"type\": \"bar\"}\n"
+            + "{\"kind\": \"after\", \"node\": \"Node1\", \"type\": \"burp\", \"rank\": 1}\n"
+            + "{\"kind\": \"before\", \"node\": \"Node1\", \"type\": \"derp\", \"rank\": 1}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node2\", \"type\": \"itty\"}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node2\", \"type\": \"bitty\"}\n"
+            + "{\"kind\": \"after\", \"node\": \"Node2\", \"type\": \"foo\", \"rank\": 1}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node3\", \"type\": \"zip\", \"comment\": \"ignored\"}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node3\", \"type\": \"bitty\"}\n"
+            + "{\"kind\": \"after\", \"node\": \"Node3\", \"type\": \"bar\", \"rank\": 1}\n"
+            + "{\"kind\": \"before\", \"node\": \"Node3\", \"type\": \"derp\"}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node4\", \"type\": \"d\\u0065rp\"}\n"
+            + "{\"kind\": \"type\", \"node\": \"Node4\", \"type\": \"itty\"}\n"
+            + "{\"kind\": \"after\", \"node\": \"Node4\", \"type\": \"bitty\", \"rank\": 1}\n"
+            + "{\"kind\": \"before\", \"node\": \"Node4\", \"type\": \"boop\", \"rank\": 1}\n";
+
+    /**
+     * Builds a channel over text.
+     *
+     * @param input Text.
+     * @return Channel.
+     */
+    private static ReadableByteChannel buildChannel(final String input) {
+
+        return Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test loading CSV records and sorting them.
+     */
+    @Test
+    public void testCsvLoad() throws IOException {
+
+        final NodeIndex index = new NodeIndex();
+        final NodeLoadStats stats = new NodeLoadStats();
+
+        NodeLoadUtil.loadCsv(NodeLoadUtilTest.buildChannel(NodeLoadUtilTest.DIAMOND_CSV), index, stats);
+
+        assertEquals(4, index.getNodeCount());
+        assertEquals(17L, stats.getLineCount());
+        assertEquals(15L, stats.getRecordCount());
+
+        final Map<Long, Collection<String>> outputMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, outputMap, false, null, false);
+
+        final String outputMapText = outputMap.toString();
+        assertEquals("{0=[Node1], 1=[Node3, Node2], 2=[Node4]}", outputMapText);
+
+        System.out.println("testCsvLoad() = " + outputMapText + " (" + stats + ")");
+    }
+
+    /**
+     * Test loading line-delimited JSON records and sorting them.
+     */
+    @Test
+    public void testJsonLoad() throws IOException {
+
+        final NodeIndex index = new NodeIndex();
+        final NodeLoadStats stats = new NodeLoadStats();
+
+        NodeLoadUtil.loadJson(NodeLoadUtilTest.buildChannel(NodeLoadUtilTest.DIAMOND_JSON), index, stats);
+
+        assertEquals(4, index.getNodeCount());
+        assertEquals(15L, stats.getRecordCount());
+
+        final Map<Long, Collection<String>> outputMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, outputMap, false, null, false);
+
+        final String outputMapText = outputMap.toString();
+        assertEquals("{0=[Node1], 1=[Node3, Node2], 2=[Node4]}", outputMapText);
+
+        System.out.println("testJsonLoad() = " + outputMapText + " (" + stats + ")");
+    }
+
+    /**
+     * Test a malformed CSV record (unknown kind).
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCsvLoad() throws IOException {
+
+        NodeLoadUtil.loadCsv(NodeLoadUtilTest.buildChannel("type,Node1,foo\nbeside,Node1,bar\n"),
+                new NodeIndex(), null);
+    }
+
+    /**
+     * Test a malformed JSON record (nested value).
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadJsonLoad() throws IOException {
+
+        NodeLoadUtil.loadJson(NodeLoadUtilTest.buildChannel("{\"kind\": \"type\", \"node\": [\"Node1\"]}\n"),
+                new NodeIndex(), null);
+    }
+
+    /**
+     * Test JSON null values (as missing fields) and bare (unquoted) words (allowed for rank only).
+     */
+    @Test
+    public void testNullJsonLoad() throws IOException {
+
+        final NodeIndex index = new NodeIndex();
+
+        // null rank takes the default
+        NodeLoadUtil.loadJson(NodeLoadUtilTest.buildChannel(
+                "{\"kind\": \"after\", \"node\": \"Node1\", \"type\": \"foo\", \"rank\": null}\n"), index, null);
+
+        assertEquals("{foo=1}", index.getAfterNodeTypes("Node1").toString());
+
+        final String[] badRecords = {
+                "{\"kind\": \"type\", \"node\": \"Node1\", \"type\": null}",
+                "{\"kind\": \"node\", \"node\": null}",
+                "{\"kind\": \"node\", \"node\": Node2}",
+                "{\"kind\": type, \"node\": \"Node1\", \"type\": \"foo\"}",
+                "{\"kind\": \"type\", \"node\": \"Node1\", \"type\": true}"};
+
+        final String[] badMessages = {
+                "missing type", "missing node", "expected string value - node",
+                "expected string value - kind", "expected string value - type"};
+
+        for (int ctr = 0; ctr < badRecords.length; ctr++) {
+
+            try {
+
+                NodeLoadUtil.loadJson(NodeLoadUtilTest.buildChannel(badRecords[ctr] + "\n"), index, null);
+                fail("bad record loaded - " + badRecords[ctr]);
+
+            } catch (final IllegalArgumentException ex) {
+
+                assertEquals("malformed record (line 1) - " + badMessages[ctr], ex.getMessage());
+            }
+        }
+
+        // nothing added by bad records
+        assertEquals("[Node1]", index.getNodeIds().toString());
+        assertEquals(0, index.getTypeCount());
+
+        System.out.println("testNullJsonLoad() = " + index.getNodeIds());
+    }
+}
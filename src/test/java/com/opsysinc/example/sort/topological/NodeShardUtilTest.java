@@ -0,0 +1,202 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Node shard utilities test.
+ */
+public class NodeShardUtilTest {
+
+    /**
+     * Find (build a map of) ranks, by node id, from sorted node id's/ranks.
+     *
+     * @param input Sorted node id's/ranks.
+     * @return Ranks, by node id.
+     */
+    private static Map<String, Long> findNodeRanks(final Map<Long, Collection<String>> input) {
+
+        final Map<String, Long> result = new TreeMap<>();
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : input.entrySet()) {
+
+            for (final String nodeId : rankItem.getValue()) {
+
+                result.put(nodeId, rankItem.getKey());
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testShardedSort()
+            throws IOException {
+
+        final int nodeCount = 300;
+        final int shardCount = 3;
+
+        final NodeIndex fullIndex = new NodeIndex();
+        final List<NodeIndex> shardIndexes = new ArrayList<>();
+
+        for (int ctr = 0; ctr < shardCount; ctr++) {
+
+            shardIndexes.add(new NodeIndex());
+        }
+
+        // binary tree w/mixed ranks, plus early nodes before a late group
+        for (int ctr = 0; ctr < nodeCount; ctr++) {
+
+            final String nodeId = "Node" + ctr;
+
+            for (final NodeIndex index : Arrays.asList(fullIndex, shardIndexes.get(ctr % shardCount))) {
+
+                index.addNodeType(nodeId, "type" + ctr);
+
+                if (ctr > 0) {
+
+                    index.addAfterNodeType(nodeId, "type" + (ctr / 2), (ctr % 3));
+                }
+
+                if (ctr >= (nodeCount - 50)) {
+
+                    index.addNodeType(nodeId, "late");
+
+                } else if ((ctr % 10) == 0) {
+
+                    index.addBeforeNodeType(nodeId, "late", 7L);
+                }
+            }
+        }
+
+        final Map<Long, Collection<String>> fullMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(5L, fullIndex, fullMap, false, null, false);
+
+        final List<NodeShardWorker> workers = new ArrayList<>();
+
+        for (final NodeIndex shardIndex : shardIndexes) {
+
+            workers.add(new NodeShardWorker(shardIndex));
+        }
+
+        final NodeShardLoopbackTransport transport = new NodeShardLoopbackTransport(workers, true);
+
+        final Map<Long, Collection<String>> shardedMap = new TreeMap<>();
+        NodeShardUtil.findNodeIdsSorted(5L, transport, shardedMap, false);
+
+        assertEquals(NodeShardUtilTest.findNodeRanks(fullMap), NodeShardUtilTest.findNodeRanks(shardedMap));
+        assertEquals(fullMap.keySet(), shardedMap.keySet());
+
+        System.out.println("testShardedSort() = ranks=" + shardedMap.size()
+                + ", nodes=" + NodeShardUtilTest.findNodeRanks(shardedMap).size()
+                + ", bytes=" + transport.getByteCount());
+    }
+
+    /**
+     * Sort w/many entry nodes per shard, each reaching only a few of the shard's nodes.
+     * <pre>
+     *   shard 0:  Src0  Src1  Src2 ...                        Sink
+     *              |     |     |                               ^
+     *   shard 1:  Entry0 <- Entry1 <- Entry2 ... (Entry i after Entry i/2)
+     *              |     |     |                               |
+     *             Chain0_0..Chain0_4, Chain1_0..Chain1_4 ... --+ (tails)
+     * </pre>
+     *
+     * @throws IOException Thrown on transport failure.
+     */
+    @Test
+    public void testShardedManyEntries()
+            throws IOException {
+
+        final int entryCount = 2000;
+        final int chainLength = 5;
+
+        final NodeIndex fullIndex = new NodeIndex();
+        final NodeIndex firstIndex = new NodeIndex();
+        final NodeIndex secondIndex = new NodeIndex();
+
+        for (final NodeIndex index : Arrays.asList(fullIndex, firstIndex)) {
+
+            index.addNodeType("Sink", "sink");
+            index.addAfterNodeType("Sink", "tail", 2L);
+        }
+
+        for (int ctr = 0; ctr < entryCount; ctr++) {
+
+            final String srcNodeId = "Src" + ctr;
+            final String entryNodeId = "Entry" + ctr;
+
+            for (final NodeIndex index : Arrays.asList(fullIndex, firstIndex)) {
+
+                index.addNodeType(srcNodeId, "src" + ctr);
+            }
+
+            for (final NodeIndex index : Arrays.asList(fullIndex, secondIndex)) {
+
+                index.addNodeType(entryNodeId, "entry" + ctr);
+                index.addAfterNodeType(entryNodeId, "src" + ctr, ((ctr % 3) + 1));
+
+                if (ctr > 0) {
+
+                    index.addAfterNodeType(entryNodeId, "entry" + (ctr / 2), 1L);
+                }
+
+                String prevType = "entry" + ctr;
+
+                for (int chainCtr = 0; chainCtr < chainLength; chainCtr++) {
+
+                    final String chainNodeId = "Chain" + ctr + "_" + chainCtr;
+
+                    index.addNodeType(chainNodeId, chainNodeId);
+                    index.addAfterNodeType(chainNodeId, prevType, (chainCtr % 2));
+
+                    prevType = chainNodeId;
+                }
+
+                index.addNodeType(("Chain" + ctr + "_" + (chainLength - 1)), "tail");
+            }
+        }
+
+        final Map<Long, Collection<String>> fullMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, fullIndex, fullMap, false, null, false);
+
+        final NodeShardLoopbackTransport transport = new NodeShardLoopbackTransport(
+                Arrays.asList(new NodeShardWorker(firstIndex), new NodeShardWorker(secondIndex)), false);
+
+        final Map<Long, Collection<String>> shardedMap = new TreeMap<>();
+        NodeShardUtil.findNodeIdsSorted(0L, transport, shardedMap, false);
+
+        assertEquals(NodeShardUtilTest.findNodeRanks(fullMap), NodeShardUtilTest.findNodeRanks(shardedMap));
+        assertEquals(fullMap.keySet(), shardedMap.keySet());
+
+        System.out.println("testShardedManyEntries() = ranks=" + shardedMap.size()
+                + ", nodes=" + NodeShardUtilTest.findNodeRanks(shardedMap).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardedCycle()
+            throws IOException {
+
+        // Node1 -> Node2 (in shard 0) -> Node3 (in shard 1) -> Node1
+        final NodeIndex firstIndex = new NodeIndex();
+
+        firstIndex.addNodeType("Node1", "one");
+        firstIndex.addAfterNodeType("Node1", "three", 1L);
+        firstIndex.addNodeType("Node2", "two");
+        firstIndex.addAfterNodeType("Node2", "one", 1L);
+
+        final NodeIndex secondIndex = new NodeIndex();
+
+        secondIndex.addNodeType("Node3", "three");
+        secondIndex.addAfterNodeType("Node3", "two", 1L);
+
+        final NodeShardTransport transport = new NodeShardLoopbackTransport(
+                Arrays.asList(new NodeShardWorker(firstIndex), new NodeShardWorker(secondIndex)), false);
+
+        NodeShardUtil.findNodeIdsSorted(0L, transport, new TreeMap<>(), false);
+    }
+}
@@ -0,0 +1,219 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Node sort service test.
+ */
+public class NodeSortServiceTest {
+
+    /**
+     * Build nodes whose iteration waits for a latch, to hold a pool thread.
+     *
+     * @param latch Latch.
+     * @return Nodes.
+     */
+    private static Collection<NodeData> buildBlockingNodes(final CountDownLatch latch) {
+
+        final List<NodeData> nodes = Collections.singletonList(new NodeData("Blocker"));
+
+        return new AbstractCollection<NodeData>() {
+
+            @Override
+            public Iterator<NodeData> iterator() {
+
+                try {
+
+                    latch.await();
+
+                } catch (final InterruptedException ex) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                return nodes.iterator();
+            }
+
+            @Override
+            public int size() {
+
+                return nodes.size();
+            }
+        };
+    }
+
+    /**
+     * Build an index to sort.
+     *
+     * @return Index.
+     */
+    private static NodeIndex buildIndex() {
+
+        final NodeIndex result = new NodeIndex();
+
+        result.addNodeType("Node1", "one");
+        result.addNodeType("Node2", "two");
+        result.addAfterNodeType("Node2", "one", 1L);
+        result.addAfterNodeType("Node3", "two", 1L);
+
+        return result;
+    }
+
+    @Test
+    public void testCoalescedSort() {
+
+        final NodeIndex index = NodeSortServiceTest.buildIndex();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        try (final NodeSortService service = new NodeSortService(1, 10)) {
+
+            // hold the only thread, so requests pile up
+            final CompletableFuture<Map<Long, Collection<NodeData>>> blockerSort =
+                    service.findNodesSorted(0L, NodeSortServiceTest.buildBlockingNodes(latch), "blocker");
+
+            while (service.getActiveCount() == 0) {
+
+                Thread.yield();
+            }
+
+            final List<CompletableFuture<Map<Long, Collection<String>>>> sorts = new ArrayList<>();
+
+            for (int ctr = 0; ctr < 10; ctr++) {
+
+                sorts.add(service.findNodeIdsSorted(0L, index));
+            }
+
+            assertEquals(1, service.getQueueDepth());
+            assertEquals(9L, service.getCoalescedCount());
+
+            latch.countDown();
+
+            for (final CompletableFuture<Map<Long, Collection<String>>> sort : sorts) {
+
+                assertEquals("{0=[Node1], 1=[Node2], 2=[Node3]}", sort.join().toString());
+            }
+
+            // one result, shared (and read-only)
+            assertTrue(sorts.get(0).join() == sorts.get(9).join());
+            assertEquals(1, blockerSort.join().size());
+
+            try {
+
+                sorts.get(0).join().clear();
+                fail("shared result changed");
+
+            } catch (final UnsupportedOperationException ex) {
+
+                // expected
+            }
+
+            // a new version is a new sort
+            index.addAfterNodeType("Node4", "one", 5L);
+
+            assertEquals("{0=[Node1], 1=[Node2], 2=[Node3], 5=[Node4]}",
+                    service.findNodeIdsSorted(0L, index).join().toString());
+
+            assertEquals(12L, service.getRequestCount());
+            assertEquals(3L, service.getSortCount());
+
+            System.out.println("testCoalescedSort() = " + service
+                    + ", rate=" + String.format("%.2f", service.getCoalescedRate()));
+        }
+    }
+
+    /**
+     * Sort of an index changed while queued fails, rather than sharing a result under the
+     * version requested:
+     * <pre>
+     *   request (version v) -> queued -> index changed (v+1) -> sort fails
+     *   request (version v+1) -> sorted
+     * </pre>
+     */
+    @Test
+    public void testChangedSort() {
+
+        final NodeIndex index = NodeSortServiceTest.buildIndex();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        try (final NodeSortService service = new NodeSortService(1, 10)) {
+
+            service.findNodesSorted(0L, NodeSortServiceTest.buildBlockingNodes(latch), "blocker");
+
+            while (service.getActiveCount() == 0) {
+
+                Thread.yield();
+            }
+
+            final CompletableFuture<Map<Long, Collection<String>>> changedSort =
+                    service.findNodeIdsSorted(0L, index);
+
+            index.addAfterNodeType("Node4", "one", 5L);
+            latch.countDown();
+
+            try {
+
+                changedSort.join();
+                fail("index change not detected");
+
+            } catch (final CompletionException ex) {
+
+                assertTrue(ex.getCause() instanceof ConcurrentModificationException);
+            }
+
+            assertEquals("{0=[Node1], 1=[Node2], 2=[Node3], 5=[Node4]}",
+                    service.findNodeIdsSorted(0L, index).join().toString());
+
+            System.out.println("testChangedSort() = " + service);
+        }
+    }
+
+    @Test
+    public void testRejectedSort() {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        try (final NodeSortService service = new NodeSortService(1, 1)) {
+
+            service.findNodesSorted(0L, NodeSortServiceTest.buildBlockingNodes(latch), "blocker");
+
+            // wait for the thread to take the blocker, leaving the queue empty
+            while (service.getActiveCount() == 0) {
+
+                Thread.yield();
+            }
+
+            final CompletableFuture<Map<Long, Collection<String>>> queuedSort =
+                    service.findNodeIdsSorted(0L, NodeSortServiceTest.buildIndex());
+            final CompletableFuture<Map<Long, Collection<String>>> rejectedSort =
+                    service.findNodeIdsSorted(0L, NodeSortServiceTest.buildIndex());
+
+            latch.countDown();
+
+            assertEquals(3, queuedSort.join().size());
+
+            try {
+
+                rejectedSort.join();
+                fail("queue depth not enforced");
+
+            } catch (final CompletionException ex) {
+
+                assertTrue(ex.getCause() instanceof RejectedExecutionException);
+            }
+
+            assertEquals(1L, service.getRejectedCount());
+
+            System.out.println("testRejectedSort() = " + service);
+        }
+    }
+}
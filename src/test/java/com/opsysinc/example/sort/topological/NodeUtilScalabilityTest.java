@@ -0,0 +1,645 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Node utilities scalability test.
+ * <p>
+ * Sorts generated graphs of increasing size (default: 1k, 10k, 100k, 1M nodes) across several
+ * shapes, fits time and allocation growth on a log-log scale and fails if either grows
+ * clearly faster than linear.
+ * <p>
+ * Excluded from the default build; run with:
+ * <pre>
+ *     mvn -Pscalability test
+ * </pre>
+ * Tunable via system properties "scalability.sizes" (comma-separated node counts),
+ * "scalability.maxExponent" (largest acceptable fitted time exponent; default=1.5) and
+ * "scalability.maxAllocExponent" (largest acceptable fitted allocation exponent; default=1.2).
+ * <p>
+ * Wall time picks up GC and cache effects as heaps grow, hence the looser time bound; a
+ * quadratic pass still fits at ~2.0. Allocation is deterministic, so its bound is tighter.
+ */
+public class NodeUtilScalabilityTest {
+
+    /**
+     * Node counts to sort, per shape.
+     */
+    private static final int[] SIZES = NodeUtilScalabilityTest.parseSizes(
+            System.getProperty("scalability.sizes", "1000,10000,100000,1000000"));
+
+    /**
+     * Largest acceptable fitted time growth exponent (1.0=linear, 2.0=quadratic).
+     */
+    private static final double MAX_EXPONENT = Double.parseDouble(
+            System.getProperty("scalability.maxExponent", "1.5"));
+
+    /**
+     * Largest acceptable fitted allocation growth exponent.
+     */
+    private static final double MAX_ALLOC_EXPONENT = Double.parseDouble(
+            System.getProperty("scalability.maxAllocExponent", "1.2"));
+
+    /**
+     * Margin over MAX_EXPONENT at which growth between two adjacent sizes fails
+     * immediately (rather than waiting out larger, super-linear sizes).
+     */
+    private static final double FAIL_FAST_MARGIN = 0.3;
+
+    /**
+     * Minimum measured time per size, in nanos (small sizes are repeated until reached).
+     */
+    private static final long MIN_SAMPLE_NANOS = 250L * 1000L * 1000L;
+
+    /**
+     * Layer width for layered shape.
+     */
+    private static final int LAYER_WIDTH = 4;
+
+    /**
+     * Cluster size for clustered shape.
+     */
+    private static final int CLUSTER_SIZE = 10;
+
+    /**
+     * Layers each node follows, for type-dense shape.
+     */
+    private static final int TYPE_DENSE_SPAN = 3;
+
+    /**
+     * Rank width, for scheduled sorts.
+     */
+    private static final int SCHEDULE_WIDTH = 16;
+
+    /**
+     * Sorts to warm up a workspace before measuring.
+     */
+    private static final int WORKSPACE_WARMUP_SORTS = 5;
+
+    /**
+     * Most bytes a warmed-up workspace sort may allocate (any size).
+     */
+    private static final long MAX_WORKSPACE_BYTES = 64L * 1024L;
+
+    /**
+     * Parses a comma-separated list of sizes.
+     *
+     * @param input Sizes text.
+     * @return Sizes.
+     */
+    private static int[] parseSizes(final String input) {
+
+        final String[] parts = input.split(",");
+        final int[] result = new int[parts.length];
+
+        for (int ctr = 0; ctr < parts.length; ctr++) {
+
+            result[ctr] = Integer.parseInt(parts[ctr].trim());
+        }
+
+        return result;
+    }
+
+    /**
+     * Test nodes with no constraints at all (every node an orphan).
+     */
+    @Test
+    public void testIndependentScaling() {
+
+        this.checkScaling("independent", size -> {
+
+            final List<NodeData> result = new ArrayList<>(size);
+
+            for (int ctr = 0; ctr < size; ctr++) {
+
+                final NodeData node = new NodeData("Node" + ctr);
+                node.getNodeTypeSet().add("t" + ctr);
+                result.add(node);
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Test a single chain, e.g.: 1 -> 2 -> 3 -> ... (one rank per node).
+     */
+    @Test
+    public void testChainScaling() {
+
+        this.checkScaling("chain", size -> {
+
+            final List<NodeData> result = new ArrayList<>(size);
+
+            for (int ctr = 0; ctr < size; ctr++) {
+
+                final NodeData node = new NodeData("Node" + ctr);
+                node.getNodeTypeSet().add("t" + ctr);
+
+                if (ctr > 0) {
+
+                    node.getAfterNodeTypeMap().put("t" + (ctr - 1), 1L);
+                }
+
+                result.add(node);
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Test fixed-width layers, each node following every node in the previous layer via
+     * a shared layer type.
+     */
+    @Test
+    public void testLayeredScaling() {
+
+        this.checkScaling("layered", size -> {
+
+            final List<NodeData> result = new ArrayList<>(size);
+
+            for (int ctr = 0; ctr < size; ctr++) {
+
+                final int layer = ctr / NodeUtilScalabilityTest.LAYER_WIDTH;
+
+                final NodeData node = new NodeData("Node" + ctr);
+                node.getNodeTypeSet().add("l" + layer);
+
+                if (layer > 0) {
+
+                    node.getAfterNodeTypeMap().put("l" + (layer - 1), 1L);
+                }
+
+                result.add(node);
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Test many small, unrelated clusters, each a hub with members that sort before it.
+     */
+    @Test
+    public void testClusteredScaling() {
+
+        this.checkScaling("clustered", NodeUtilScalabilityTest::buildClustered);
+    }
+
+    /**
+     * Test many small, unrelated clusters (as above), sorted by component in parallel.
+     */
+    @Test
+    public void testParallelClusteredScaling() {
+
+        this.checkScaling("clustered (parallel)", NodeUtilScalabilityTest::buildClustered,
+                (input, output) -> NodeUtil.findNodesSortedParallel(0L, input, output, false, null, false));
+    }
+
+    /**
+     * Test many small, unrelated clusters (as above), scheduled into fixed-width ranks.
+     */
+    @Test
+    public void testScheduledClusteredScaling() {
+
+        this.checkScaling("clustered (scheduled)", NodeUtilScalabilityTest::buildClustered,
+                (input, output) -> NodeUtil.findNodesScheduled(0L, input,
+                        NodeUtilScalabilityTest.SCHEDULE_WIDTH, output, false));
+    }
+
+    /**
+     * Test type-dense layers, each node following every node in the previous
+     * TYPE_DENSE_SPAN layers, so most edges are implied by others.
+     */
+    @Test
+    public void testTypeDenseScaling() {
+
+        this.checkScaling("type-dense", NodeUtilScalabilityTest::buildTypeDense,
+                (input, output) -> NodeUtil.findNodesSorted(0L, input, output, false));
+    }
+
+    /**
+     * Test type-dense layers (as above) with transitive reduction, for comparison.
+     */
+    @Test
+    public void testReducedTypeDenseScaling() {
+
+        final NodeSortStats stats = new NodeSortStats();
+
+        this.checkScaling("type-dense (reduced)", NodeUtilScalabilityTest::buildTypeDense,
+                (input, output) -> {
+
+                    stats.reset();
+                    NodeUtil.findNodesSorted(0L, input, output, true, stats, false);
+                });
+
+        System.out.println("testReducedTypeDenseScaling() = " + stats);
+    }
+
+    /**
+     * Test loading layered (as above) CSV records straight into an index.
+     */
+    @Test
+    public void testCsvLoadScaling() throws IOException {
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final com.sun.management.ThreadMXBean allocBean =
+                ((threadBean instanceof com.sun.management.ThreadMXBean)
+                        ? (com.sun.management.ThreadMXBean) threadBean : null);
+        final long threadId = Thread.currentThread().getId();
+
+        final double[] nanos = new double[NodeUtilScalabilityTest.SIZES.length];
+        final double[] bytes = new double[NodeUtilScalabilityTest.SIZES.length];
+
+        for (int ctr = 0; ctr < NodeUtilScalabilityTest.SIZES.length; ctr++) {
+
+            final int size = NodeUtilScalabilityTest.SIZES[ctr];
+            final byte[] input = NodeUtilScalabilityTest.buildLayeredCsv(size);
+
+            System.gc();
+
+            final NodeLoadStats stats = new NodeLoadStats();
+            final long startBytes = ((allocBean == null) ? 0L : allocBean.getThreadAllocatedBytes(threadId));
+
+            NodeLoadUtil.loadCsv(Channels.newChannel(new ByteArrayInputStream(input)), new NodeIndex(), stats);
+
+            nanos[ctr] = stats.getElapsedNanos();
+            bytes[ctr] = ((allocBean == null) ? -1L
+                    : (allocBean.getThreadAllocatedBytes(threadId) - startBytes));
+
+            System.out.println("testCsvLoadScaling() = nodes=" + size + ", " + stats);
+        }
+
+        NodeUtilScalabilityTest.checkExponents("csv load", nanos, bytes);
+    }
+
+    /**
+     * Test repeated layered (as above) sorts into a reused workspace, checking they allocate
+     * next to nothing once it's warmed up.
+     */
+    @Test
+    public void testWorkspaceSteadyState() {
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final com.sun.management.ThreadMXBean allocBean =
+                ((threadBean instanceof com.sun.management.ThreadMXBean)
+                        ? (com.sun.management.ThreadMXBean) threadBean : null);
+        final long threadId = Thread.currentThread().getId();
+
+        final NodeSortWorkspace workspace = new NodeSortWorkspace();
+
+        for (final int size : NodeUtilScalabilityTest.SIZES) {
+
+            final NodeIndex index = new NodeIndex();
+
+            for (int ctr = 0; ctr < size; ctr++) {
+
+                final int layer = ctr / NodeUtilScalabilityTest.LAYER_WIDTH;
+                index.addNodeType("Node" + ctr, "l" + layer);
+
+                if (layer > 0) {
+
+                    index.addAfterNodeType("Node" + ctr, "l" + (layer - 1), 1L);
+                }
+            }
+
+            // warm up (growing buffers, compiling)
+            for (int ctr = 0; ctr < NodeUtilScalabilityTest.WORKSPACE_WARMUP_SORTS; ctr++) {
+
+                NodeUtil.findNodeIdsSorted(0L, index, workspace);
+            }
+
+            final long startBytes = ((allocBean == null) ? 0L : allocBean.getThreadAllocatedBytes(threadId));
+            final long startNanos = System.nanoTime();
+
+            NodeUtil.findNodeIdsSorted(0L, index, workspace);
+
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            final long bytes = ((allocBean == null) ? -1L
+                    : (allocBean.getThreadAllocatedBytes(threadId) - startBytes));
+
+            assertEquals(size, workspace.getNodeCount());
+            assertEquals((size - 1) / NodeUtilScalabilityTest.LAYER_WIDTH, workspace.getRank(size - 1));
+
+            System.out.println("testWorkspaceSteadyState() = nodes=" + size
+                    + ", edges=" + workspace.getEdgeCount()
+                    + ", ms=" + (elapsedNanos / 1000000L)
+                    + ", bytes=" + bytes);
+
+            assertTrue("workspace sort allocated " + bytes + " bytes (nodes=" + size + ")",
+                    bytes <= NodeUtilScalabilityTest.MAX_WORKSPACE_BYTES);
+        }
+    }
+
+    /**
+     * Builds layered CSV records.
+     *
+     * @param size Node count.
+     * @return CSV (UTF-8).
+     */
+    private static byte[] buildLayeredCsv(final int size) {
+
+        final StringBuilder result = new StringBuilder(size * 32);
+
+        for (int ctr = 0; ctr < size; ctr++) {
+
+            final int layer = ctr / NodeUtilScalabilityTest.LAYER_WIDTH;
+
+            result.append("type,Node").append(ctr).append(",l").append(layer).append('\n');
+
+            if (layer > 0) {
+
+                result.append("after,Node").append(ctr).append(",l").append(layer - 1).append(",1\n");
+            }
+        }
+
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds small, unrelated clusters.
+     *
+     * @param size Node count.
+     * @return Input nodes.
+     */
+    private static List<NodeData> buildClustered(final int size) {
+
+        final List<NodeData> result = new ArrayList<>(size);
+
+        for (int ctr = 0; ctr < size; ctr++) {
+
+            final int cluster = ctr / NodeUtilScalabilityTest.CLUSTER_SIZE;
+            final NodeData node = new NodeData("Node" + ctr);
+
+            if ((ctr % NodeUtilScalabilityTest.CLUSTER_SIZE) == 0) {
+
+                node.getNodeTypeSet().add("hub" + cluster);
+
+            } else {
+
+                node.getNodeTypeSet().add("member" + cluster);
+                node.getBeforeNodeTypeMap().put("hub" + cluster, 2L);
+            }
+
+            result.add(node);
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds type-dense layers.
+     *
+     * @param size Node count.
+     * @return Input nodes.
+     */
+    private static List<NodeData> buildTypeDense(final int size) {
+
+        final List<NodeData> result = new ArrayList<>(size);
+
+        for (int ctr = 0; ctr < size; ctr++) {
+
+            final int layer = ctr / NodeUtilScalabilityTest.LAYER_WIDTH;
+
+            final NodeData node = new NodeData("Node" + ctr);
+            node.getNodeTypeSet().add("l" + layer);
+
+            for (int ctr2 = Math.max(0, layer - NodeUtilScalabilityTest.TYPE_DENSE_SPAN); ctr2 < layer; ctr2++) {
+
+                node.getAfterNodeTypeMap().put("l" + ctr2, 1L);
+            }
+
+            result.add(node);
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds input for a given size.
+     */
+    private interface InputBuilder {
+
+        /**
+         * Builds input.
+         *
+         * @param size Node count.
+         * @return Input nodes.
+         */
+        List<NodeData> build(int size);
+    }
+
+    /**
+     * Sorts input.
+     */
+    private interface InputSorter {
+
+        /**
+         * Sorts input.
+         *
+         * @param input  Input nodes.
+         * @param output Target for sorted nodes/ranks.
+         */
+        void sort(List<NodeData> input, Map<Long, Collection<NodeData>> output);
+    }
+
+    /**
+     * Sorts each size of a shape with the default sort, then checks time/allocation growth.
+     *
+     * @param shapeName Shape name (for reporting).
+     * @param builder   Input builder.
+     */
+    private void checkScaling(final String shapeName,
+                              final InputBuilder builder) {
+
+        this.checkScaling(shapeName, builder,
+                (input, output) -> NodeUtil.findNodesSorted(0L, input, output, false));
+    }
+
+    /**
+     * Sorts each size of a shape, then checks time/allocation growth.
+     *
+     * @param shapeName Shape name (for reporting).
+     * @param builder   Input builder.
+     * @param sorter    Sort under test.
+     */
+    private void checkScaling(final String shapeName,
+                              final InputBuilder builder,
+                              final InputSorter sorter) {
+
+        // warm up on the smallest size
+        final List<NodeData> warmupInput = builder.build(NodeUtilScalabilityTest.SIZES[0]);
+
+        for (int ctr = 0; ctr < 5; ctr++) {
+
+            sorter.sort(warmupInput, new TreeMap<>());
+        }
+
+        final double[] nanos = new double[NodeUtilScalabilityTest.SIZES.length];
+        final double[] bytes = new double[NodeUtilScalabilityTest.SIZES.length];
+
+        for (int ctr = 0; ctr < NodeUtilScalabilityTest.SIZES.length; ctr++) {
+
+            final int size = NodeUtilScalabilityTest.SIZES[ctr];
+            final List<NodeData> input = builder.build(size);
+
+            // start each size from a settled heap
+            System.gc();
+
+            final long[] sample = NodeUtilScalabilityTest.measureSort(input, sorter);
+
+            nanos[ctr] = sample[0];
+            bytes[ctr] = sample[1];
+
+            System.out.println("checkScaling() = " + shapeName + ", nodes=" + size
+                    + ", ms=" + (sample[0] / 1000000L)
+                    + ", bytes=" + ((sample[1] < 0L) ? "n/a" : Long.toString(sample[1])));
+
+            if (ctr > 0) {
+
+                // bail before sizes that would take (much) too long to finish
+                final double stepExponent = Math.log(Math.max(1.0, nanos[ctr]) / Math.max(1.0, nanos[ctr - 1]))
+                        / Math.log(((double) size) / NodeUtilScalabilityTest.SIZES[ctr - 1]);
+
+                assertTrue(shapeName + " time grows super-linearly from "
+                                + NodeUtilScalabilityTest.SIZES[ctr - 1] + " to " + size
+                                + " nodes (exponent=" + String.format("%.2f", stepExponent) + ")",
+                        stepExponent <= (NodeUtilScalabilityTest.MAX_EXPONENT
+                                + NodeUtilScalabilityTest.FAIL_FAST_MARGIN));
+            }
+        }
+
+        NodeUtilScalabilityTest.checkExponents(shapeName, nanos, bytes);
+    }
+
+    /**
+     * Checks time/allocation growth across sizes.
+     *
+     * @param shapeName Shape name (for reporting).
+     * @param nanos     Time, per size.
+     * @param bytes     Allocation, per size (negative if unsupported).
+     */
+    private static void checkExponents(final String shapeName,
+                                       final double[] nanos,
+                                       final double[] bytes) {
+
+        final double timeExponent = NodeUtilScalabilityTest.fitExponent(nanos);
+
+        System.out.println("checkExponents() = " + shapeName
+                + ", time exponent=" + String.format("%.2f", timeExponent));
+
+        assertTrue(shapeName + " time grows super-linearly (exponent="
+                        + String.format("%.2f", timeExponent) + ")",
+                timeExponent <= NodeUtilScalabilityTest.MAX_EXPONENT);
+
+        if (bytes[0] >= 0.0) {
+
+            final double allocExponent = NodeUtilScalabilityTest.fitExponent(bytes);
+
+            System.out.println("checkExponents() = " + shapeName
+                    + ", allocation exponent=" + String.format("%.2f", allocExponent));
+
+            assertTrue(shapeName + " allocation grows super-linearly (exponent="
+                            + String.format("%.2f", allocExponent) + ")",
+                    allocExponent <= NodeUtilScalabilityTest.MAX_ALLOC_EXPONENT);
+        }
+    }
+
+    /**
+     * Sorts input, repeating small inputs to get a stable sample.
+     *
+     * @param input  Input nodes.
+     * @param sorter Sort under test.
+     * @return Best nanos per sort, then bytes allocated per sort (-1 if unsupported).
+     */
+    private static long[] measureSort(final List<NodeData> input,
+                                      final InputSorter sorter) {
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final com.sun.management.ThreadMXBean allocBean =
+                ((threadBean instanceof com.sun.management.ThreadMXBean)
+                        ? (com.sun.management.ThreadMXBean) threadBean : null);
+        final long threadId = Thread.currentThread().getId();
+
+        long bestNanos = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        long totalNanos = 0L;
+
+        while (totalNanos < NodeUtilScalabilityTest.MIN_SAMPLE_NANOS) {
+
+            final Map<Long, Collection<NodeData>> output = new TreeMap<>();
+
+            final long startBytes = ((allocBean == null) ? 0L : allocBean.getThreadAllocatedBytes(threadId));
+            final long startNanos = System.nanoTime();
+
+            sorter.sort(input, output);
+
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            final long elapsedBytes = ((allocBean == null) ? -1L
+                    : (allocBean.getThreadAllocatedBytes(threadId) - startBytes));
+
+            int outputSize = 0;
+
+            for (final Collection<NodeData> rankItem : output.values()) {
+
+                outputSize += rankItem.size();
+            }
+
+            assertEquals(input.size(), outputSize);
+
+            bestNanos = Math.min(bestNanos, elapsedNanos);
+            bestBytes = Math.min(bestBytes, elapsedBytes);
+            totalNanos += elapsedNanos;
+        }
+
+        return new long[]{bestNanos, bestBytes};
+    }
+
+    /**
+     * Fits measurements to SIZES by least squares on a log-log scale.
+     *
+     * @param values Measurements, one per size.
+     * @return Fitted exponent (slope).
+     */
+    private static double fitExponent(final double[] values) {
+
+        final int count = values.length;
+
+        double sumX = 0.0;
+        double sumY = 0.0;
+
+        for (int ctr = 0; ctr < count; ctr++) {
+
+            sumX += Math.log(NodeUtilScalabilityTest.SIZES[ctr]);
+            sumY += Math.log(Math.max(1.0, values[ctr]));
+        }
+
+        final double meanX = sumX / count;
+        final double meanY = sumY / count;
+
+        double sumXY = 0.0;
+        double sumXX = 0.0;
+
+        for (int ctr = 0; ctr < count; ctr++) {
+
+            final double deltaX = Math.log(NodeUtilScalabilityTest.SIZES[ctr]) - meanX;
+
+            sumXY += deltaX * (Math.log(Math.max(1.0, values[ctr])) - meanY);
+            sumXX += deltaX * deltaX;
+        }
+
+        return ((sumXX == 0.0) ? 0.0 : (sumXY / sumXX));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.rules.ExpectedException;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
 /**
@@ -203,4 +204,490 @@ public class NodeUtilTest {
 
         fail("testBadSort() should throw IllegalArgumentException.");
     }
+
+    /**
+     * Test transitive reduction on a chain with shortcut edges, e.g.:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3 -> 4
+     *   \___(1)___/    /
+     *    \____(5)____/
+     * </pre>
+     * ...where 1->3 (rank 1) is implied by 1->2->3 and removed, but 1->4 (rank 5) would
+     * raise 4's rank past 1->2->3->4 (rank 3) and is kept.
+     */
+    @Test
+    public void testReducedSort() {
+
+        final List<NodeData> inputList = new ArrayList<>();
+
+        final NodeData firstNode = new NodeData("Node1");
+        inputList.add(firstNode);
+
+        firstNode.getNodeTypeSet().add("one");
+
+        final NodeData secondNode = new NodeData("Node2");
+        inputList.add(secondNode);
+
+        secondNode.getNodeTypeSet().add("two");
+        secondNode.getAfterNodeTypeMap().put("one", 1L);
+
+        final NodeData thirdNode = new NodeData("Node3");
+        inputList.add(thirdNode);
+
+        thirdNode.getNodeTypeSet().add("three");
+        thirdNode.getAfterNodeTypeMap().put("two", 1L);
+        thirdNode.getAfterNodeTypeMap().put("one", 1L);
+
+        final NodeData fourthNode = new NodeData("Node4");
+        inputList.add(fourthNode);
+
+        fourthNode.getNodeTypeSet().add("four");
+        fourthNode.getAfterNodeTypeMap().put("three", 1L);
+        firstNode.getBeforeNodeTypeMap().put("four", 5L);
+
+        final Map<Long, Collection<NodeData>> fullMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, fullMap, false);
+
+        final NodeSortStats stats = new NodeSortStats();
+        final Map<Long, Collection<NodeData>> reducedMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, reducedMap, true, stats, false);
+
+        final String reducedMapText = reducedMap.toString();
+        assertEquals("{0=[Node1], 1=[Node2], 2=[Node3], 5=[Node4]}", reducedMapText);
+        assertEquals(fullMap.toString(), reducedMapText);
+
+        assertEquals(4L, stats.getNodeCount());
+        assertEquals(5L, stats.getEdgeCount());
+        assertEquals(1L, stats.getRemovedEdgeCount());
+
+        System.out.println("testReducedSort() = " + reducedMapText + " (" + stats + ")");
+    }
+
+    /**
+     * Test tracing a chain with a long shortcut edge, a branch and a negative rank, e.g.:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3 -> 4 -(-3)-> 6
+     *   \    \         /
+     *    \    -> 5    /
+     *     \____(5)___/
+     * </pre>
+     * ...where 1->4 (rank 5) sets the makespan, so 2, 3 and 5 have slack, and 6's negative rank
+     * doesn't let 4 (or 1) slip past the makespan.
+     */
+    @Test
+    public void testTracedSort() {
+
+        final List<NodeData> inputList = new ArrayList<>();
+
+        final NodeData firstNode = new NodeData("Node1");
+        inputList.add(firstNode);
+
+        firstNode.getNodeTypeSet().add("one");
+
+        final NodeData secondNode = new NodeData("Node2");
+        inputList.add(secondNode);
+
+        secondNode.getNodeTypeSet().add("two");
+        secondNode.getAfterNodeTypeMap().put("one", 1L);
+
+        final NodeData thirdNode = new NodeData("Node3");
+        inputList.add(thirdNode);
+
+        thirdNode.getNodeTypeSet().add("three");
+        thirdNode.getAfterNodeTypeMap().put("two", 1L);
+
+        final NodeData fourthNode = new NodeData("Node4");
+        inputList.add(fourthNode);
+
+        fourthNode.getNodeTypeSet().add("four");
+        fourthNode.getAfterNodeTypeMap().put("three", 1L);
+        firstNode.getBeforeNodeTypeMap().put("four", 5L);
+
+        final NodeData fifthNode = new NodeData("Node5");
+        inputList.add(fifthNode);
+
+        fifthNode.getAfterNodeTypeMap().put("two", 1L);
+
+        final NodeData sixthNode = new NodeData("Node6");
+        inputList.add(sixthNode);
+
+        sixthNode.getAfterNodeTypeMap().put("four", -3L);
+
+        final NodeRankTrace trace = new NodeRankTrace();
+        final Map<Long, Collection<NodeData>> outputMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, outputMap, false, null, trace, false);
+
+        final List<String> criticalPath = new ArrayList<>();
+        trace.findCriticalPath(criticalPath, false);
+
+        final String criticalPathText = criticalPath.toString();
+        assertEquals("[Node1, Node4]", criticalPathText);
+        assertEquals(5L, (long) trace.getMakespan());
+
+        trace.findCriticalPath("Node3", criticalPath, true);
+        assertEquals("[Node1, Node2, Node3]", criticalPath.toString());
+
+        assertEquals(0L, (long) trace.getSlack("Node1"));
+        assertEquals(2L, (long) trace.getSlack("Node2"));
+        assertEquals(2L, (long) trace.getSlack("Node3"));
+        assertEquals(0L, (long) trace.getSlack("Node4"));
+        assertEquals(3L, (long) trace.getSlack("Node5"));
+        assertEquals(2L, (long) trace.getRank("Node6"));
+        assertEquals(3L, (long) trace.getSlack("Node6"));
+
+        System.out.println("testTracedSort() = " + outputMap + " (critical path: " + criticalPathText + ")");
+    }
+
+    /**
+     * Test pulling buckets lazily from a chain with a long shortcut edge and two branches, e.g.:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3 -> 4
+     *  |\    \        /
+     *  | \    -> 5   /
+     *  |  \___(5)___/
+     *   -(0)-> 6
+     * </pre>
+     * ...with the same buckets as an eager sort, then a negative rank (a node produced in a later
+     * bucket of its own, lower rank), then a cycle (2 <-> 3) only reported once reached, naming just
+     * its own nodes (not 4 or 5, which wait on it).
+     */
+    @Test
+    public void testLazySort() {
+
+        final NodeIndex index = new NodeIndex();
+
+        index.addNodeType("Node1", "one");
+        index.addNodeType("Node2", "two");
+        index.addAfterNodeType("Node2", "one", 1L);
+        index.addNodeType("Node3", "three");
+        index.addAfterNodeType("Node3", "two", 1L);
+        index.addNodeType("Node4", "four");
+        index.addAfterNodeType("Node4", "three", 1L);
+        index.addBeforeNodeType("Node1", "four", 5L);
+        index.addAfterNodeType("Node5", "two", 1L);
+        index.addAfterNodeType("Node6", "one", 0L);
+
+        final Map<Long, Collection<String>> eagerMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, eagerMap, false, null, false);
+
+        final Map<Long, Collection<String>> lazyMap = new TreeMap<>();
+        NodeUtil.streamNodeIdsSorted(0L, index)
+                .forEach(rankItem -> lazyMap.put(rankItem.getKey(), new TreeSet<>(rankItem.getValue())));
+
+        final String lazyMapText = lazyMap.toString();
+        assertEquals("{0=[Node1, Node6], 1=[Node2], 2=[Node3, Node5], 5=[Node4]}", lazyMapText);
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : eagerMap.entrySet()) {
+
+            assertEquals(new TreeSet<>(rankItem.getValue()), lazyMap.get(rankItem.getKey()));
+        }
+
+        // a node ranking below buckets already produced comes later, under its own rank
+        index.addAfterNodeType("Node7", "four", -3L);
+        NodeUtil.findNodeIdsSorted(0L, index, eagerMap, false, null, true);
+
+        final List<Long> lazyRanks = new ArrayList<>();
+        lazyMap.clear();
+
+        NodeUtil.streamNodeIdsSorted(0L, index).forEach(rankItem -> {
+
+            lazyRanks.add(rankItem.getKey());
+            lazyMap.computeIfAbsent(rankItem.getKey(), rank -> new TreeSet<>()).addAll(rankItem.getValue());
+        });
+
+        assertEquals("[0, 1, 2, 5, 2]", lazyRanks.toString());
+        assertEquals(eagerMap.keySet(), lazyMap.keySet());
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : eagerMap.entrySet()) {
+
+            assertEquals(new TreeSet<>(rankItem.getValue()), lazyMap.get(rankItem.getKey()));
+        }
+
+        index.removeNode("Node7");
+
+        // only pulled buckets are sorted, so a cycle further on goes unnoticed until reached
+        index.addAfterNodeType("Node2", "three", 1L);
+
+        final Iterator<Map.Entry<Long, Collection<String>>> lazyIter = NodeUtil.iterateNodeIdsSorted(0L, index);
+        assertEquals("0=[Node1, Node6]", lazyIter.next().toString());
+
+        try {
+
+            lazyIter.next();
+            fail("cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            assertEquals("node order cycle - [Node2, Node3] <-> Node2", ex.getMessage());
+        }
+
+        System.out.println("testLazySort() = " + lazyMapText);
+    }
+
+    /**
+     * Test sorting through a reused workspace, on a chain with a long shortcut edge and two
+     * branches, e.g.:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3 -> 4
+     *  |\    \        /
+     *  | \    -> 5   /
+     *  |  \___(5)___/
+     *   -(0)-> 6
+     * </pre>
+     * ...from base rank 3, with the same buckets as a plain sort, across sorts of a changed
+     * index, then a cycle (2 <-> 3).
+     */
+    @Test
+    public void testWorkspaceSort() {
+
+        final NodeIndex index = new NodeIndex();
+
+        index.addNodeType("Node1", "one");
+        index.addNodeType("Node2", "two");
+        index.addAfterNodeType("Node2", "one", 1L);
+        index.addNodeType("Node3", "three");
+        index.addAfterNodeType("Node3", "two", 1L);
+        index.addNodeType("Node4", "four");
+        index.addAfterNodeType("Node4", "three", 1L);
+        index.addBeforeNodeType("Node1", "four", 5L);
+        index.addAfterNodeType("Node5", "two", 1L);
+        index.addAfterNodeType("Node6", "one", 0L);
+
+        final Map<Long, Collection<String>> eagerMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(3L, index, eagerMap, false, null, false);
+
+        final NodeSortWorkspace workspace = new NodeSortWorkspace();
+
+        // reused across sorts (incl. of a changed index)
+        for (int ctr = 0; ctr < 2; ctr++) {
+
+            NodeUtil.findNodeIdsSorted(3L, index, workspace);
+
+            final Map<Long, Collection<String>> workspaceMap = new TreeMap<>();
+            workspace.findNodeIdsSorted(workspaceMap, false);
+
+            // order within a bucket may differ
+            assertEquals(eagerMap.keySet(), workspaceMap.keySet());
+
+            for (final Map.Entry<Long, Collection<String>> rankItem : eagerMap.entrySet()) {
+
+                assertEquals(new TreeSet<>(rankItem.getValue()), new TreeSet<>(workspaceMap.get(rankItem.getKey())));
+            }
+
+            assertEquals(6, workspace.getNodeCount());
+
+            index.removeNode("Node6");
+            index.addAfterNodeType("Node6", "one", 0L);
+        }
+
+        index.addAfterNodeType("Node2", "three", 1L);
+
+        try {
+
+            NodeUtil.findNodeIdsSorted(3L, index, workspace);
+            fail("cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            // expected
+        }
+
+        System.out.println("testWorkspaceSort() = " + eagerMap);
+    }
+
+    /**
+     * Test scheduling into levels of at most two nodes, six independent nodes beside a chain,
+     * e.g.:
+     * <p>
+     * <pre>
+     *  C1 -> C2 -> C3    1  2  3  4  5  6
+     *    \-(0)-> 7
+     * </pre>
+     * ...where the chain, heading the longest remaining path, goes first so it finishes
+     * alongside the rest; then, wide enough, the same ranks as a plain sort.
+     */
+    @Test
+    public void testScheduledSort() {
+
+        final NodeIndex index = new NodeIndex();
+
+        // six independent nodes, a three-node chain, plus one node that may share its head's rank
+        for (int ctr = 1; ctr <= 6; ctr++) {
+
+            index.addNode("Node" + ctr);
+        }
+
+        index.addNodeType("Chain1", "c1");
+        index.addNodeType("Chain2", "c2");
+        index.addAfterNodeType("Chain2", "c1", 1L);
+        index.addAfterNodeType("Chain3", "c2", 1L);
+        index.addAfterNodeType("Node7", "c1", 0L);
+
+        final Map<Long, Collection<String>> scheduledMap = new TreeMap<>();
+        NodeUtil.findNodeIdsScheduled(0L, index, 2, scheduledMap, false);
+
+        // chain goes first, so it finishes alongside the rest
+        final String scheduledMapText = scheduledMap.toString();
+        assertEquals("{0=[Chain1, Node1], 1=[Chain2, Node2], 2=[Node3, Node4],"
+                + " 3=[Node5, Node6], 4=[Chain3, Node7]}", scheduledMapText);
+
+        final List<NodeOrderViolation> violations = new ArrayList<>();
+        assertFalse(NodeVerifyUtil.findRankViolations(0L, index, scheduledMap, false, violations, false));
+
+        // wide enough, it ranks as a sort does
+        final Map<Long, Collection<String>> sortedMap = new TreeMap<>();
+        NodeUtil.findNodeIdsSorted(0L, index, sortedMap, false, null, false);
+
+        NodeUtil.findNodeIdsScheduled(0L, index, index.getNodeCount(), scheduledMap, true);
+        assertEquals(sortedMap.keySet(), scheduledMap.keySet());
+
+        for (final Map.Entry<Long, Collection<String>> rankItem : sortedMap.entrySet()) {
+
+            assertEquals(new TreeSet<>(rankItem.getValue()), new TreeSet<>(scheduledMap.get(rankItem.getKey())));
+        }
+
+        try {
+
+            NodeUtil.findNodeIdsScheduled(0L, index, 0, scheduledMap, true);
+            fail("width not checked");
+
+        } catch (final IllegalArgumentException ex) {
+
+            assertEquals("non-positive level width - 0", ex.getMessage());
+        }
+
+        System.out.println("testScheduledSort() = " + scheduledMapText);
+    }
+
+    /**
+     * Test collapsing alike nodes, a database with 100 replicated worker/client pairs, e.g.:
+     * <p>
+     * <pre>
+     *  Db -> Worker0..98
+     *  Worker99 -(0)-> Db
+     *  Worker0..99 -(2)-> Client0..99
+     * </pre>
+     * ...where workers (whatever order their types were added in) collapse to one node, as do
+     * clients, but the one worker that differs doesn't; results match a plain sort, and a
+     * collapsed node following itself is still a cycle.
+     */
+    @Test
+    public void testCollapsedSort() {
+
+        final List<NodeData> inputList = new ArrayList<>();
+
+        final NodeData dbNode = new NodeData("Db");
+        inputList.add(dbNode);
+
+        dbNode.getNodeTypeSet().add("db");
+
+        // replicas, alike but for id (and the order their types were added)
+        for (int ctr = 0; ctr < 100; ctr++) {
+
+            final NodeData workerNode = new NodeData("Worker" + ctr);
+            inputList.add(workerNode);
+
+            workerNode.getNodeTypeSet().addAll(((ctr % 2) == 0)
+                    ? Arrays.asList("worker", "service") : Arrays.asList("service", "worker"));
+            workerNode.getAfterNodeTypeMap().put("db", 1L);
+
+            final NodeData clientNode = new NodeData("Client" + ctr);
+            inputList.add(clientNode);
+
+            clientNode.getAfterNodeTypeMap().put("worker", 2L);
+        }
+
+        // one worker that differs
+        inputList.get(inputList.size() - 2).getBeforeNodeTypeMap().put("db", 0L);
+        inputList.get(inputList.size() - 2).getAfterNodeTypeMap().clear();
+
+        final Map<Long, Collection<NodeData>> sortedMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, sortedMap, false);
+
+        final NodeSortStats stats = new NodeSortStats();
+        final Map<Long, Collection<NodeData>> collapsedMap = new TreeMap<>();
+        NodeUtil.findNodesSortedCollapsed(0L, inputList, collapsedMap, false, stats, false);
+
+        assertEquals(sortedMap.keySet(), collapsedMap.keySet());
+
+        for (final Map.Entry<Long, Collection<NodeData>> rankItem : sortedMap.entrySet()) {
+
+            assertEquals(new HashSet<>(rankItem.getValue()), new HashSet<>(collapsedMap.get(rankItem.getKey())));
+        }
+
+        assertEquals(4L, stats.getNodeCount());
+        assertEquals(197L, stats.getCollapsedNodeCount());
+
+        // a class following itself is still a cycle
+        inputList.get(1).getAfterNodeTypeMap().put("service", 0L);
+
+        try {
+
+            NodeUtil.findNodesSortedCollapsed(0L, inputList, collapsedMap, false, null, true);
+            fail("cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            // expected
+        }
+
+        System.out.println("testCollapsedSort() = " + stats);
+    }
+
+    /**
+     * Test sorting unrelated clusters in parallel, e.g., repeated:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3    4 (orphan)
+     * </pre>
+     * ...with results the same as a single-graph sort.
+     */
+    @Test
+    public void testParallelSort() {
+
+        final List<NodeData> inputList = new ArrayList<>();
+
+        for (int ctr = 0; ctr < 100; ctr++) {
+
+            final NodeData firstNode = new NodeData("Node1-" + ctr);
+            inputList.add(firstNode);
+
+            firstNode.getNodeTypeSet().add("one-" + ctr);
+
+            final NodeData secondNode = new NodeData("Node2-" + ctr);
+            inputList.add(secondNode);
+
+            secondNode.getNodeTypeSet().add("two-" + ctr);
+            secondNode.getAfterNodeTypeMap().put("one-" + ctr, (long) (ctr % 3) + 1L);
+
+            final NodeData thirdNode = new NodeData("Node3-" + ctr);
+            inputList.add(thirdNode);
+
+            thirdNode.getNodeTypeSet().add("three-" + ctr);
+            thirdNode.getAfterNodeTypeMap().put("two-" + ctr, 1L);
+            thirdNode.getAfterNodeTypeMap().put("one-" + ctr, 1L);
+
+            final NodeData fourthNode = new NodeData("Node4-" + ctr);
+            inputList.add(fourthNode);
+
+            fourthNode.getNodeTypeSet().add("four-" + ctr);
+        }
+
+        final Map<Long, Collection<NodeData>> serialMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, serialMap, false);
+
+        final NodeSortStats stats = new NodeSortStats();
+        final Map<Long, Collection<NodeData>> parallelMap = new TreeMap<>();
+        NodeUtil.findNodesSortedParallel(0L, inputList, parallelMap, true, stats, false);
+
+        assertEquals(serialMap.toString(), parallelMap.toString());
+        assertEquals(200L, stats.getComponentCount());
+        assertEquals(100L, stats.getRemovedEdgeCount());
+
+        System.out.println("testParallelSort() = " + stats);
+    }
 }
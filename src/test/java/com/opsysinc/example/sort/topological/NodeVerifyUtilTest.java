@@ -0,0 +1,195 @@
+package com.opsysinc.example.sort.topological;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Node verify utilities test.
+ */
+public class NodeVerifyUtilTest {
+
+    /**
+     * Build nodes to sort, a chain with a long shortcut edge, e.g.:
+     * <p>
+     * <pre>
+     *  1 -> 2 -> 3 -> 4
+     *   \____(5)____/
+     * </pre>
+     *
+     * @return Nodes to sort.
+     */
+    private static List<NodeData> buildNodes() {
+
+        final List<NodeData> result = new ArrayList<>();
+
+        final NodeData firstNode = new NodeData("Node1");
+        result.add(firstNode);
+
+        firstNode.getNodeTypeSet().add("one");
+        firstNode.getBeforeNodeTypeMap().put("four", 5L);
+
+        final NodeData secondNode = new NodeData("Node2");
+        result.add(secondNode);
+
+        secondNode.getNodeTypeSet().add("two");
+        secondNode.getAfterNodeTypeMap().put("one", 1L);
+
+        final NodeData thirdNode = new NodeData("Node3");
+        result.add(thirdNode);
+
+        thirdNode.getNodeTypeSet().add("three");
+        thirdNode.getAfterNodeTypeMap().put("two", 1L);
+
+        final NodeData fourthNode = new NodeData("Node4");
+        result.add(fourthNode);
+
+        fourthNode.getNodeTypeSet().add("four");
+        fourthNode.getAfterNodeTypeMap().put("three", 1L);
+
+        return result;
+    }
+
+    /**
+     * Test checking rank maps (see buildNodes()): a sort's own output, then one with a rank too
+     * low and one higher than needed, then one with nodes missing, unknown, proposed twice and
+     * below the starting rank.
+     */
+    @Test
+    public void testRankViolations() {
+
+        final List<NodeData> inputList = NodeVerifyUtilTest.buildNodes();
+
+        final Map<Long, Collection<NodeData>> sortedMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(2L, inputList, sortedMap, false);
+
+        final List<NodeOrderViolation> violations = new ArrayList<>();
+
+        assertFalse(NodeVerifyUtil.findRankViolations(2L, inputList, sortedMap, true, violations, false));
+        assertTrue(violations.isEmpty());
+
+        // Node3 ranked too low (vs. Node2), Node4 higher than needed (fine unless exact)
+        final NodeIndex index = new NodeIndex();
+        NodeUtil.findNodeIndex(inputList, index, false);
+
+        final Map<Long, Collection<String>> proposedMap = new TreeMap<>();
+
+        proposedMap.put(2L, Arrays.asList("Node1", "Node3"));
+        proposedMap.put(3L, Collections.singletonList("Node2"));
+        proposedMap.put(9L, Collections.singletonList("Node4"));
+
+        assertTrue(NodeVerifyUtil.findRankViolations(2L, index, proposedMap, false, violations, true));
+        assertEquals("[RANK Node3 after Node2 (actual=2, required=4)]", violations.toString());
+
+        assertTrue(NodeVerifyUtil.findRankViolations(2L, index, proposedMap, true, violations, true));
+        assertEquals("[RANK Node3 after Node2 (actual=2, required=4),"
+                + " EXCESS_RANK Node4 (actual=9, required=7)]", violations.toString());
+
+        // missing, unknown and duplicate nodes; below starting rank
+        proposedMap.clear();
+
+        proposedMap.put(1L, Arrays.asList("Node1", "Node5"));
+        proposedMap.put(3L, Arrays.asList("Node2", "Node1"));
+        proposedMap.put(5L, Collections.singletonList("Node4"));
+
+        assertTrue(NodeVerifyUtil.findRankViolations(2L, index, proposedMap, false, violations, true));
+        assertEquals("[UNKNOWN_NODE Node5 (actual=1, required=1),"
+                + " DUPLICATE_NODE Node1 (actual=3, required=1),"
+                + " RANK Node1 (actual=1, required=2),"
+                + " MISSING_NODE Node3 (actual=0, required=0),"
+                + " RANK Node4 after Node1 (actual=5, required=6)]", violations.toString());
+
+        System.out.println("testRankViolations() = " + violations);
+    }
+
+    /**
+     * Test checking orders (see buildNodes()): a sort's own output, then one with 4 placed first,
+     * then one where 1 follows itself (a cycle).
+     */
+    @Test
+    public void testOrderViolations() {
+
+        final List<NodeData> inputList = NodeVerifyUtilTest.buildNodes();
+
+        final Map<Long, Collection<NodeData>> sortedMap = new TreeMap<>();
+        NodeUtil.findNodesSorted(0L, inputList, sortedMap, false);
+
+        final List<NodeData> sortedList = new ArrayList<>();
+
+        for (final Collection<NodeData> rankNodes : sortedMap.values()) {
+
+            sortedList.addAll(rankNodes);
+        }
+
+        final List<NodeOrderViolation> violations = new ArrayList<>();
+
+        assertFalse(NodeVerifyUtil.findOrderViolations(inputList, sortedList, violations, false));
+
+        // Node4 placed before Node1 (via Node1's before type) and Node3
+        final List<NodeData> proposedList = Arrays.asList(
+                inputList.get(3), inputList.get(0), inputList.get(1), inputList.get(2));
+
+        assertTrue(NodeVerifyUtil.findOrderViolations(inputList, proposedList, violations, true));
+        assertEquals("[ORDER Node4 after Node1 (actual=0, required=2),"
+                + " ORDER Node4 after Node3 (actual=0, required=4)]", violations.toString());
+
+        // a node following itself is a cycle
+        inputList.get(0).getAfterNodeTypeMap().put("one", 0L);
+
+        assertTrue(NodeVerifyUtil.findOrderViolations(inputList, sortedList, violations, true));
+        assertEquals("[ORDER Node1 after Node1 (actual=0, required=1)]", violations.toString());
+
+        System.out.println("testOrderViolations() = " + violations);
+    }
+
+    /**
+     * Test checking a rank map against a two-node cycle with zero node-to-node ranks, e.g.:
+     * <p>
+     * <pre>
+     *  A -(0)-> B
+     *  A <-(0)- B
+     * </pre>
+     * ...which ranks alone would pass (both at one rank), but which has no valid rank map.
+     */
+    @Test
+    public void testCycleViolations() {
+
+        final NodeIndex index = new NodeIndex();
+
+        index.addNodeType("A", "a");
+        index.addAfterNodeType("A", "b", 0L);
+        index.addNodeType("B", "b");
+        index.addAfterNodeType("B", "a", 0L);
+
+        final Map<Long, Collection<String>> proposedMap = new TreeMap<>();
+        proposedMap.put(0L, Arrays.asList("A", "B"));
+
+        final List<NodeOrderViolation> violations = new ArrayList<>();
+
+        assertTrue(NodeVerifyUtil.findRankViolations(0L, index, proposedMap, true, violations, true));
+        assertEquals("[ORDER A after B (actual=0, required=0),"
+                + " ORDER B after A (actual=0, required=0)]", violations.toString());
+
+        try {
+
+            NodeUtil.findNodeIdsSorted(0L, index, proposedMap, false, null, true);
+            fail("cycle not detected");
+
+        } catch (final IllegalArgumentException ex) {
+
+            // expected
+        }
+
+        // ...as in order, too
+        assertTrue(NodeVerifyUtil.findOrderViolations(index, Arrays.asList("A", "B"), violations, true));
+        assertEquals("[ORDER A after B (actual=0, required=2),"
+                + " ORDER B after A (actual=1, required=1)]", violations.toString());
+
+        System.out.println("testCycleViolations() = " + violations);
+    }
+}